@@ -0,0 +1,586 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class cracks every file of a directory tree, as
+ * {@link FrequencyCryptanalysis#main(String[])} and
+ * {@link VigenereCryptanalysis#main(String[])} do for a single file, and
+ * writes the key of each file to a single JSON Lines or CSV file.
+ *
+ * <p>
+ * Each file is cracked on a thread of its own: a virtual thread if the Java
+ * runtime has them, and otherwise a thread of a fixed pool. The number of
+ * files read and cracked at once is bounded, so that the memory used does not
+ * grow with the number of files. The engines are shared by all the threads
+ * (see {@link VigenereCryptanalysis.Result}), each cryptanalysis running on a
+ * single thread. The results are written in the order of the paths of the
+ * files, whatever the order they are cracked in, with the time taken by each
+ * file; a summary of the throughput is printed at the end.
+ *
+ * <p>
+ * The cipher of each file is either given, or chosen from the index of
+ * coincidence of its letters: the letters of a shift cipher keep the index of
+ * coincidence of the language (about 0.066 in English), while a
+ * Vigen&egrave;re cipher flattens it towards that of random letters (about
+ * 0.038).
+ *
+ * @author Oana Ivanovici
+ */
+public class BatchCryptanalysis {
+
+	/**
+	 * The ciphers the files may be encrypted with.
+	 */
+	public enum Cipher {
+		CAESAR, VIGENERE, AUTOMATIC;
+	}
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The index of coincidence from which a ciphertext is assumed to be
+	 * encrypted with a shift cipher rather than a Vigen&egrave;re cipher
+	 */
+	public static final double CAESAR_INDEX_OF_COINCIDENCE = 0.055;
+
+	/**
+	 * The number of letters a file must have to be cracked, as the index of
+	 * coincidence of fewer letters is undefined
+	 */
+	private static final int MINIMUM_NUMBER_OF_LETTERS = 2;
+
+	/**
+	 * The size of the largest file read, i.e. of the largest array the Java
+	 * runtime allocates
+	 */
+	private static final long MAXIMUM_FILE_SIZE = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The header of the CSV output
+	 */
+	private static final String CSV_HEADER = "file,cipher,key,index_of_coincidence,bytes,letters,time_ms,error";
+
+	/**
+	 * The cryptanalysis of the files encrypted with a shift cipher
+	 */
+	private final FrequencyCryptanalysis frequencyCryptanalysis;
+
+	/**
+	 * The cryptanalysis of the files encrypted with a Vigen&egrave;re cipher
+	 */
+	private final VigenereCryptanalysis vigenereCryptanalysis;
+
+	/**
+	 * The cipher of the files, or AUTOMATIC to choose it for each file
+	 */
+	private final Cipher cipher;
+
+	/**
+	 * The largest number of files cracked at once
+	 */
+	private final int concurrency;
+
+	/**
+	 * Create a batch cryptanalysis with the model of the language of the
+	 * plaintexts.
+	 *
+	 * @param model
+	 *            the language model, or null to use the standard frequencies of
+	 *            the English letters
+	 * @param cipher
+	 *            the cipher of the files, or AUTOMATIC to choose it for each
+	 *            file from its index of coincidence
+	 * @param concurrency
+	 *            the largest number of files cracked at once
+	 */
+	public BatchCryptanalysis(LanguageModel model, Cipher cipher, int concurrency) {
+		if (concurrency < 1) {
+			throw new IllegalArgumentException("Concurrency must be positive");
+		}
+
+		ShiftScorer shiftScorer = model != null ? model.getShiftScorer() : ShiftScorer.ENGLISH;
+		QuadgramScorer quadgramScorer = model != null ? model.getQuadgramScorer() : null;
+		this.frequencyCryptanalysis = new FrequencyCryptanalysis(shiftScorer, quadgramScorer);
+		this.vigenereCryptanalysis = new VigenereCryptanalysis(shiftScorer, quadgramScorer, 1);
+		this.cipher = cipher;
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Crack every regular file of a directory tree, but the output file if it
+	 * is in the tree, and write the results in the order of the paths of the
+	 * files.
+	 *
+	 * @param directory
+	 *            the root of the directory tree
+	 * @param output
+	 *            the output file: CSV if its name ends with .csv, JSON Lines
+	 *            otherwise
+	 * @return the summary of the batch
+	 * @throws IOException
+	 *             something goes wrong walking the tree or writing the output
+	 * @throws InterruptedException
+	 *             the thread is interrupted, in which case the output holds
+	 *             the results written so far
+	 */
+	public Summary run(Path directory, Path output) throws IOException, InterruptedException {
+		boolean csv = output.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(".csv");
+		Path outputFile = output.toAbsolutePath().normalize();
+		List<Path> files;
+
+		// an output file in the tree, e.g. written by an earlier run, is not
+		// a ciphertext
+		try (Stream<Path> paths = Files.walk(directory)) {
+			files = paths.filter(Files::isRegularFile)
+					.filter(path -> !path.toAbsolutePath().normalize().equals(outputFile)).sorted()
+					.collect(Collectors.toList());
+		}
+
+		long start = System.nanoTime();
+		Semaphore permits = new Semaphore(concurrency);
+		Queue<Future<Entry>> pending = new ArrayDeque<>();
+		ExecutorService executor = newExecutor(concurrency);
+		int numberOfFiles = 0;
+		int numberOfFailures = 0;
+		long numberOfBytes = 0;
+
+		try (Writer writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+			if (csv) {
+				writer.write(CSV_HEADER + "\n");
+			}
+
+			for (Path file : files) {
+				// write the results already in order, then wait for a permit
+				// before reading the next file
+				while (!pending.isEmpty() && pending.peek().isDone()) {
+					Entry entry = write(writer, pending.remove(), csv);
+					numberOfFiles++;
+					numberOfFailures += entry.error != null ? 1 : 0;
+					numberOfBytes += entry.numberOfBytes;
+				}
+				permits.acquire();
+
+				Path name = directory.relativize(file);
+				pending.add(executor.submit(() -> {
+					try {
+						return crack(name, file);
+					} finally {
+						permits.release();
+					}
+				}));
+			}
+
+			while (!pending.isEmpty()) {
+				Entry entry = write(writer, pending.remove(), csv);
+				numberOfFiles++;
+				numberOfFailures += entry.error != null ? 1 : 0;
+				numberOfBytes += entry.numberOfBytes;
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return new Summary(numberOfFiles, numberOfFailures, numberOfBytes, System.nanoTime() - start);
+	}
+
+	/**
+	 * Crack a file with the engine of its cipher.
+	 *
+	 * @param name
+	 *            the path of the file in the output
+	 * @param file
+	 *            the file
+	 * @return the result of the file, or the error which stopped it, e.g. too
+	 *         few letters or not enough memory to read it
+	 */
+	private Entry crack(Path name, Path file) {
+		long start = System.nanoTime();
+		long numberOfBytes = 0;
+
+		try {
+			numberOfBytes = Files.size(file);
+			if (numberOfBytes > MAXIMUM_FILE_SIZE) {
+				return new Entry(name, cipher, null, Double.NaN, numberOfBytes, 0, System.nanoTime() - start,
+						"File too large to read: " + numberOfBytes + " bytes");
+			}
+
+			byte[] ciphertext = Files.readAllBytes(file);
+			long[] counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+			long numberOfLetters = FrequencyAnalyser.countOccurrencesOfLetter(ciphertext, 0, ciphertext.length, counts);
+			double indexOfCoincidence = indexOfCoincidence(counts, numberOfLetters);
+			numberOfBytes = ciphertext.length;
+
+			if (numberOfLetters < MINIMUM_NUMBER_OF_LETTERS) {
+				return new Entry(name, cipher, null, Double.NaN, numberOfBytes, numberOfLetters,
+						System.nanoTime() - start, "Too few letters to crack: " + numberOfLetters);
+			}
+
+			Cipher cipherOfFile = cipher;
+			if (cipherOfFile == Cipher.AUTOMATIC) {
+				cipherOfFile = indexOfCoincidence >= CAESAR_INDEX_OF_COINCIDENCE ? Cipher.CAESAR : Cipher.VIGENERE;
+			}
+
+			String key;
+			if (cipherOfFile == Cipher.CAESAR) {
+				key = String.valueOf(frequencyCryptanalysis.cryptanalysis(ciphertext, StandardCharsets.UTF_8).getKey());
+			} else {
+				key = vigenereCryptanalysis.cryptanalysis(ciphertext, StandardCharsets.UTF_8).getKey();
+			}
+
+			return new Entry(name, cipherOfFile, key, indexOfCoincidence, numberOfBytes, numberOfLetters,
+					System.nanoTime() - start, null);
+		} catch (IOException | RuntimeException | OutOfMemoryError e) {
+			// a file too large for the memory left fails on its own, as the
+			// others release theirs
+			return new Entry(name, cipher, null, Double.NaN, numberOfBytes, 0, System.nanoTime() - start,
+					e.toString());
+		}
+	}
+
+	/**
+	 * Wait for the result of a file and write it.
+	 *
+	 * @param writer
+	 *            the output
+	 * @param future
+	 *            the result of the file
+	 * @param csv
+	 *            whether to write CSV or JSON Lines
+	 * @return the result written
+	 * @throws IOException
+	 *             something goes wrong writing the output
+	 * @throws InterruptedException
+	 *             the thread is interrupted while waiting
+	 */
+	private static Entry write(Writer writer, Future<Entry> future, boolean csv)
+			throws IOException, InterruptedException {
+		Entry entry;
+
+		try {
+			entry = future.get();
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+
+		writer.write(csv ? entry.toCsv() : entry.toJson());
+		writer.write('\n');
+		return entry;
+	}
+
+	/**
+	 * Calculate the index of coincidence of letters from their counts.
+	 *
+	 * @param counts
+	 *            the number of occurrences of each letter
+	 * @param numberOfLetters
+	 *            the number of letters
+	 * @return the index of coincidence, or 0 if there are less than 2 letters
+	 */
+	private static double indexOfCoincidence(long[] counts, long numberOfLetters) {
+		if (numberOfLetters < 2) {
+			return 0.0;
+		}
+
+		double coincidences = 0.0;
+		for (long count : counts) {
+			coincidences += count * (count - 1.0);
+		}
+
+		return coincidences / (numberOfLetters * (numberOfLetters - 1.0));
+	}
+
+	/**
+	 * Create an executor running each task on a new virtual thread, if the
+	 * Java runtime has them (Java 21 and later), and on a fixed pool of
+	 * threads otherwise. It is looked up by reflection so that this class
+	 * still compiles and runs on older runtimes.
+	 *
+	 * @param numberOfThreads
+	 *            the number of threads of the fixed pool
+	 * @return the executor
+	 */
+	private static ExecutorService newExecutor(int numberOfThreads) {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(numberOfThreads);
+		}
+	}
+
+	/**
+	 * Quote a string for JSON.
+	 *
+	 * @param value
+	 *            the string, or null
+	 * @return the JSON string, or null
+	 */
+	private static String json(String value) {
+		if (value == null) {
+			return "null";
+		}
+
+		StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			char character = value.charAt(i);
+
+			if (character == '"' || character == '\\') {
+				quoted.append('\\').append(character);
+			} else if (character < 0x20) {
+				quoted.append(String.format("\\u%04x", (int) character));
+			} else {
+				quoted.append(character);
+			}
+		}
+
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * Quote a string for CSV, if needed.
+	 *
+	 * @param value
+	 *            the string, or null
+	 * @return the CSV field, empty for null
+	 */
+	private static String csv(String value) {
+		if (value == null) {
+			return "";
+		} else if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+				&& value.indexOf('\r') < 0) {
+			return value;
+		}
+
+		return '"' + value.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * @param args
+	 *            the directory to crack and the output file, followed by the
+	 *            cipher (caesar, vigenere or auto, by default), the largest
+	 *            number of files cracked at once (by default, the number of
+	 *            available processors) and the language model to use (by
+	 *            default, the standard frequencies of the English letters)
+	 * @throws IOException
+	 *             errors reading from files
+	 * @throws InterruptedException
+	 *             the thread is interrupted
+	 */
+	public static void main(String[] args) throws IOException, InterruptedException {
+		if (args.length < 2) {
+			System.out.println("Usage: BatchCryptanalysis <directory> <output.jsonl|output.csv> "
+					+ "[caesar|vigenere|auto] [concurrency] [model]");
+			return;
+		}
+
+		Path directory = Paths.get(args[0]);
+		Path output = Paths.get(args[1]);
+		Cipher cipher = Cipher.AUTOMATIC;
+		if (2 < args.length && !args[2].equalsIgnoreCase("auto")) {
+			cipher = Cipher.valueOf(args[2].toUpperCase(Locale.ROOT));
+		}
+		int concurrency = 3 < args.length ? Integer.parseInt(args[3]) : Runtime.getRuntime().availableProcessors();
+		LanguageModel model = 4 < args.length ? LanguageModel.load(Paths.get(args[4])) : null;
+
+		Summary summary = new BatchCryptanalysis(model, cipher, concurrency).run(directory, output);
+		System.out.println(summary);
+	}
+
+	/**
+	 * The result of the cryptanalysis of a file.
+	 */
+	private static final class Entry {
+
+		/**
+		 * The path of the file, relative to the root of the tree
+		 */
+		private final Path file;
+
+		/**
+		 * The cipher the file was cracked as
+		 */
+		private final Cipher cipher;
+
+		/**
+		 * The key found, or null if the file could not be cracked
+		 */
+		private final String key;
+
+		/**
+		 * The index of coincidence of the letters of the file
+		 */
+		private final double indexOfCoincidence;
+
+		/**
+		 * The number of bytes of the file
+		 */
+		private final long numberOfBytes;
+
+		/**
+		 * The number of letters of the file
+		 */
+		private final long numberOfLetters;
+
+		/**
+		 * The time taken to read and crack the file, in nanoseconds
+		 */
+		private final long elapsedTime;
+
+		/**
+		 * The error which stopped the cryptanalysis, or null
+		 */
+		private final String error;
+
+		Entry(Path file, Cipher cipher, String key, double indexOfCoincidence, long numberOfBytes,
+				long numberOfLetters, long elapsedTime, String error) {
+			this.file = file;
+			this.cipher = cipher;
+			this.key = key;
+			this.indexOfCoincidence = indexOfCoincidence;
+			this.numberOfBytes = numberOfBytes;
+			this.numberOfLetters = numberOfLetters;
+			this.elapsedTime = elapsedTime;
+			this.error = error;
+		}
+
+		/**
+		 * Format the result as a line of JSON Lines.
+		 *
+		 * @return the JSON object
+		 */
+		String toJson() {
+			return String.format(Locale.ROOT,
+					"{\"file\":%s,\"cipher\":%s,\"key\":%s,\"index_of_coincidence\":%s,\"bytes\":%d,\"letters\":%d,"
+							+ "\"time_ms\":%.3f,\"error\":%s}",
+					json(file.toString()), json(cipher.name().toLowerCase(Locale.ROOT)), json(key),
+					Double.isNaN(indexOfCoincidence) ? "null" : String.format(Locale.ROOT, "%.5f", indexOfCoincidence),
+					numberOfBytes, numberOfLetters, elapsedTime / 1e6, json(error));
+		}
+
+		/**
+		 * Format the result as a line of CSV.
+		 *
+		 * @return the CSV record
+		 */
+		String toCsv() {
+			return String.format(Locale.ROOT, "%s,%s,%s,%s,%d,%d,%.3f,%s", csv(file.toString()),
+					cipher.name().toLowerCase(Locale.ROOT), csv(key),
+					Double.isNaN(indexOfCoincidence) ? "" : String.format(Locale.ROOT, "%.5f", indexOfCoincidence),
+					numberOfBytes, numberOfLetters, elapsedTime / 1e6, csv(error));
+		}
+	}
+
+	/**
+	 * The summary of a batch: the number of files cracked, and how fast.
+	 */
+	public static final class Summary {
+
+		/**
+		 * The number of files whose result was written
+		 */
+		private final int numberOfFiles;
+
+		/**
+		 * The number of files which could not be cracked
+		 */
+		private final int numberOfFailures;
+
+		/**
+		 * The number of bytes read
+		 */
+		private final long numberOfBytes;
+
+		/**
+		 * The time taken by the whole batch, in nanoseconds
+		 */
+		private final long elapsedTime;
+
+		Summary(int numberOfFiles, int numberOfFailures, long numberOfBytes, long elapsedTime) {
+			this.numberOfFiles = numberOfFiles;
+			this.numberOfFailures = numberOfFailures;
+			this.numberOfBytes = numberOfBytes;
+			this.elapsedTime = elapsedTime;
+		}
+
+		/**
+		 * Get the number of files whose result was written, cracked or not.
+		 *
+		 * @return the number of files
+		 */
+		public int getNumberOfFiles() {
+			return numberOfFiles;
+		}
+
+		/**
+		 * Get the number of files which could not be cracked, e.g. because
+		 * they could not be read or have too few letters.
+		 *
+		 * @return the number of failures
+		 */
+		public int getNumberOfFailures() {
+			return numberOfFailures;
+		}
+
+		/**
+		 * Get the number of bytes read.
+		 *
+		 * @return the number of bytes
+		 */
+		public long getNumberOfBytes() {
+			return numberOfBytes;
+		}
+
+		/**
+		 * Get the time taken by the whole batch.
+		 *
+		 * @return the time, in nanoseconds
+		 */
+		public long getElapsedTime() {
+			return elapsedTime;
+		}
+
+		/**
+		 * Get the number of files cracked per second.
+		 *
+		 * @return the throughput, in files per second
+		 */
+		public double getFilesPerSecond() {
+			return numberOfFiles / (elapsedTime / 1e9);
+		}
+
+		/**
+		 * Get the number of megabytes cracked per second.
+		 *
+		 * @return the throughput, in MB per second
+		 */
+		public double getMegabytesPerSecond() {
+			return numberOfBytes / 1e6 / (elapsedTime / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(Locale.ROOT, "%d files (%d failed), %.1f MB in %.2f s: %.1f files/s, %.2f MB/s",
+					numberOfFiles, numberOfFailures, numberOfBytes / 1e6, elapsedTime / 1e9, getFilesPerSecond(),
+					getMegabytesPerSecond());
+		}
+	}
+}
@@ -0,0 +1,495 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * This class measures the throughput of the analyses on a given file, so that
+ * the effect of a change (or of a different number of threads) can be
+ * compared on the same input.
+ *
+ * @author Oana Ivanovici
+ */
+public class Benchmark {
+
+	/**
+	 * Number of runs discarded before measuring, so that the measured runs are
+	 * not affected by the JIT compiler warming up
+	 */
+	private static final int WARM_UP_RUNS = 3;
+
+	/**
+	 * Number of measured runs, of which the fastest is reported
+	 */
+	private static final int MEASURED_RUNS = 5;
+
+	/**
+	 * Number of runs of the kernels shifting letters before measuring them,
+	 * as the Vector API is only fast once the JIT compiler has compiled it
+	 * into vector instructions
+	 */
+	private static final int KERNEL_WARM_UP_RUNS = 200;
+
+	/**
+	 * This method runs a task several times and returns the time of the
+	 * fastest run.
+	 *
+	 * @param task
+	 *            the task to measure
+	 * @return the time of the fastest run in nanoseconds
+	 * @throws Exception
+	 *             the task fails
+	 */
+	static long measure(Callable<?> task) throws Exception {
+		long fastest = Long.MAX_VALUE;
+
+		for (int i = 0; i < WARM_UP_RUNS + MEASURED_RUNS; i++) {
+			long start = System.nanoTime();
+			task.call();
+			long elapsed = System.nanoTime() - start;
+
+			if (i >= WARM_UP_RUNS) {
+				fastest = Math.min(fastest, elapsed);
+			}
+		}
+
+		return fastest;
+	}
+
+	/**
+	 * This method prints the time and the throughput of a measured task.
+	 *
+	 * @param name
+	 *            what was measured
+	 * @param nanos
+	 *            the time taken
+	 * @param units
+	 *            the number of units (e.g. bytes, characters) processed
+	 * @param unitName
+	 *            the name of the units
+	 */
+	static void report(String name, long nanos, long units, String unitName) {
+		double seconds = nanos / 1e9;
+		System.out.printf("%-40s %10.2f ms %14.0f %s/s%n", name, nanos / 1e6, units / seconds, unitName);
+	}
+
+	/**
+	 * Measure the sequential and the parallel analysis of a file, with a number
+	 * of threads doubling up to the given maximum, and print the speedup over
+	 * a single thread.
+	 *
+	 * @param path
+	 *            the file to analyse
+	 * @param maxThreads
+	 *            the maximum number of threads
+	 * @throws Exception
+	 *             something goes wrong reading the file
+	 */
+	private static void benchmarkAnalysis(Path path, int maxThreads) throws Exception {
+		long size = Files.size(path);
+
+		// the counting kernel on its own, on the text and on a single letter
+		// repeated, where the increments of a single histogram would wait for
+		// each other
+		byte[] text = Files.readAllBytes(path);
+		byte[] repeated = new byte[text.length];
+		Arrays.fill(repeated, (byte) 'e');
+		for (byte[] bytes : new byte[][] { text, repeated }) {
+			long nanos = measure(() -> FrequencyAnalyser.countOccurrencesOfLetter(bytes, 0, bytes.length,
+					new long[26]));
+
+			report(bytes == text ? "countOccurrencesOfLetter(byte[])" : "countOccurrencesOfLetter(byte[] 'e')",
+					nanos, bytes.length, "bytes");
+			System.out.printf("%-40s %10.2f GB/s%n", "  throughput", bytes.length / (double) nanos);
+		}
+
+		report("analyse(InputStream)", measure(() -> {
+			try (InputStream in = Files.newInputStream(path)) {
+				return FrequencyAnalyser.analyse(in);
+			}
+		}), size, "bytes");
+
+		long singleThread = 0;
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			final int parallelism = threads;
+			long nanos = measure(() -> FrequencyAnalyser.analyse(path, parallelism));
+
+			if (threads == 1) {
+				singleThread = nanos;
+			}
+			report("analyse(Path, " + threads + ")", nanos, size, "bytes");
+			System.out.printf("%-40s %10.2fx%n", "  speedup", singleThread / (double) nanos);
+		}
+	}
+
+	/**
+	 * Measure counting the n-grams up to order 4 of a file from a stream, and
+	 * concurrently with a number of threads doubling up to the given maximum.
+	 *
+	 * @param path
+	 *            the file to analyse
+	 * @param maxThreads
+	 *            the maximum number of threads
+	 * @throws Exception
+	 *             something goes wrong reading the file
+	 */
+	private static void benchmarkNGrams(Path path, int maxThreads) throws Exception {
+		long size = Files.size(path);
+
+		report("NGramAnalyser.add(InputStream)", measure(() -> {
+			try (InputStream in = Files.newInputStream(path)) {
+				return new NGramAnalyser(NGramAnalyser.MAXIMUM_ORDER).add(in);
+			}
+		}), size, "bytes");
+
+		for (int threads = 1; threads <= maxThreads; threads *= 2) {
+			final int parallelism = threads;
+			report("ConcurrentNGramAnalyser.add(Path, " + threads + ")", measure(
+					() -> new ConcurrentNGramAnalyser(NGramAnalyser.MAXIMUM_ORDER).add(path, parallelism)), size,
+					"bytes");
+		}
+	}
+
+	/**
+	 * Measure the encryption of a file with the streaming cipher and with the
+	 * parallel cipher, with a number of threads doubling up to the given
+	 * maximum.
+	 *
+	 * @param path
+	 *            the file to encrypt
+	 * @param maxThreads
+	 *            the maximum number of threads
+	 * @throws Exception
+	 *             something goes wrong reading or writing the files
+	 */
+	private static void benchmarkFileCipher(Path path, int maxThreads) throws Exception {
+		long size = Files.size(path);
+		Path destination = Files.createTempFile("benchmark", ".txt");
+
+		try {
+			report("VigenereStreamCipher.transfer", measure(() -> {
+				try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ);
+						FileChannel out = FileChannel.open(destination, StandardOpenOption.WRITE,
+								StandardOpenOption.TRUNCATE_EXISTING)) {
+					return new VigenereStreamCipher("KEY", VigenereStreamCipher.ENCRYPT).transfer(in, out);
+				}
+			}), size, "bytes");
+
+			for (int threads = 1; threads <= maxThreads; threads *= 2) {
+				final int parallelism = threads;
+				report("ParallelVigenereCipher.encrypt(" + threads + ")", measure(() -> {
+					ParallelVigenereCipher.encrypt(path, destination, "KEY", parallelism);
+					return null;
+				}), size, "bytes");
+			}
+		} finally {
+			Files.delete(destination);
+		}
+	}
+
+	/**
+	 * Measure the call sites that classify every character of a text as a
+	 * letter or not.
+	 *
+	 * @param text
+	 *            the text to process
+	 * @throws Exception
+	 *             errors in the measured tasks
+	 */
+	private static void benchmarkClassification(String text) throws Exception {
+		String ciphertext = VigenereCipher.encrypt(text, "KEY");
+
+		report("countOccurrencesOfLetter(String)", measure(() -> FrequencyAnalyser.countOccurrencesOfLetter(text)),
+				text.length(), "chars");
+		report("SlidingWindowAnalyser.append", measure(() -> {
+			SlidingWindowAnalyser window = new SlidingWindowAnalyser(1000);
+			window.append(text);
+			return window.indexOfCoincidence() + window.chiSquared();
+		}), text.length(), "chars");
+		report("VigenereCipher.encrypt", measure(() -> VigenereCipher.encrypt(text, "KEY")), text.length(), "chars");
+		report("VigenereCipher.decrypt", measure(() -> VigenereCipher.decrypt(ciphertext, "KEY")),
+				ciphertext.length(), "chars");
+		report("FrequencyCryptanalysis.decrypt", measure(() -> FrequencyCryptanalysis.decrypt(ciphertext, 10)),
+				ciphertext.length(), "chars");
+	}
+
+	/**
+	 * Measure the plain Java kernel shifting letters and, if the Java runtime
+	 * has the Vector API, the vectorised one (see {@link VigenereCipher#KERNEL}),
+	 * on the bytes of the encryption of a text and on its letters only.
+	 *
+	 * @param text
+	 *            the text to encrypt and shift
+	 * @throws Exception
+	 *             errors in the measured tasks
+	 */
+	private static void benchmarkShiftKernels(String text) throws Exception {
+		byte[] bytes = VigenereCipher.encrypt(text, "LEMONADE").getBytes(StandardCharsets.ISO_8859_1);
+		byte[] letters = Util.toLetterIndexes(bytes);
+		byte[] shifted = new byte[bytes.length];
+		int[] shifts = VigenereCipher.decryptionShifts("LEMONADE");
+		ShiftKernel[] kernels = VigenereCipher.KERNEL == VigenereCipher.SCALAR_KERNEL
+				? new ShiftKernel[] { VigenereCipher.SCALAR_KERNEL }
+				: new ShiftKernel[] { VigenereCipher.SCALAR_KERNEL, VigenereCipher.KERNEL };
+
+		for (ShiftKernel kernel : kernels) {
+			String name = kernel.getClass().getSimpleName();
+			for (int i = 0; i < KERNEL_WARM_UP_RUNS; i++) {
+				kernel.transform(bytes, 0, shifted, 0, bytes.length, shifts, 0);
+				kernel.shiftLetters(letters, 0, shifted, 0, letters.length, shifts, 0);
+			}
+			report(name + ".transform", measure(() -> kernel.transform(bytes, 0, shifted, 0, bytes.length, shifts, 0)),
+					bytes.length, "bytes");
+			report(name + ".shiftLetters",
+					measure(() -> kernel.shiftLetters(letters, 0, shifted, 0, letters.length, shifts, 0)),
+					letters.length, "letters");
+		}
+	}
+
+	/**
+	 * Measure the quadgram scorer built from a text, on the text itself and
+	 * on its encryption shifted back by the key.
+	 *
+	 * @param text
+	 *            the text to build the scorer from and score
+	 * @throws Exception
+	 *             errors in the measured tasks
+	 */
+	private static void benchmarkQuadgrams(String text) throws Exception {
+		QuadgramScorer quadgramScorer = QuadgramScorer.build(text);
+		byte[] letters = Util.toLetterIndexes(text);
+		byte[] ciphertext = Util.toLetterIndexes(VigenereCipher.encrypt(text, "LEMONADE"));
+		int[] shifts = VigenereCipher.decryptionShifts("LEMONADE");
+
+		report("QuadgramScorer.build", measure(() -> QuadgramScorer.build(text)), text.length(), "chars");
+		report("QuadgramScorer.score", measure(() -> quadgramScorer.score(letters, 0, letters.length)),
+				letters.length, "quadgrams");
+		report("QuadgramScorer.score (shifted)",
+				measure(() -> quadgramScorer.score(ciphertext, 0, ciphertext.length, shifts, 0)), ciphertext.length,
+				"quadgrams");
+		byte[] sample = Arrays.copyOf(ciphertext, Math.min(ciphertext.length, 20000));
+		report("VigenereKeyRefiner.refine (from AAAAAAAA)",
+				measure(() -> new VigenereKeyRefiner(quadgramScorer, 1, 1, 60000)
+						.refine(sample, new int[shifts.length])),
+				sample.length, "letters");
+	}
+
+	/**
+	 * Measure building the language model of a text, which the crackers used
+	 * to do at every start, against loading its snapshot.
+	 *
+	 * @param text
+	 *            the text to build the model from
+	 * @throws Exception
+	 *             errors in the measured tasks
+	 */
+	private static void benchmarkLanguageModel(String text) throws Exception {
+		Path snapshot = Files.createTempFile("benchmark", ".model");
+
+		try {
+			LanguageModel model = new LanguageModel.Builder(LanguageModel.MAXIMUM_ORDER).add(text).build();
+			model.save(snapshot);
+
+			report("LanguageModel.Builder", measure(() -> new LanguageModel.Builder(LanguageModel.MAXIMUM_ORDER)
+					.add(text).build()), text.length(), "chars");
+			report("LanguageModel.load", measure(() -> LanguageModel.load(snapshot)), Files.size(snapshot),
+					"bytes");
+		} finally {
+			Files.delete(snapshot);
+		}
+	}
+
+	/**
+	 * Measure the cryptanalysis of the Caesar cipher on the encryption of a
+	 * text, analysing the whole ciphertext and sampling it until the key is
+	 * certain enough.
+	 *
+	 * @param text
+	 *            the text to encrypt and cryptanalyse
+	 * @throws Exception
+	 *             errors in the measured tasks
+	 */
+	private static void benchmarkCaesarCryptanalysis(String text) throws Exception {
+		String ciphertext = VigenereCipher.encrypt(text, "K");
+
+		FrequencyCryptanalysis cryptanalysis = new FrequencyCryptanalysis();
+		report("FrequencyCryptanalysis.cryptanalysis", measure(() -> cryptanalysis.cryptanalysis(ciphertext)),
+				ciphertext.length(), "chars");
+		report("FrequencyCryptanalysis.sampled", measure(() -> cryptanalysis.sampledCryptanalysis(ciphertext)),
+				ciphertext.length(), "chars");
+		System.out.printf("%-40s %s%n", "  estimate", cryptanalysis.sampledCryptanalysis(ciphertext));
+	}
+
+	/**
+	 * Measure the cryptanalysis of the substitution cipher on the encryption
+	 * of the beginning of a text, with a search per thread. The searches take
+	 * seconds, so the cryptanalysis runs once (after a warm up run), and the
+	 * number of moves tried per second and the time the key was found are
+	 * printed.
+	 *
+	 * @param text
+	 *            the text to encrypt and cryptanalyse, and to build the
+	 *            quadgram scorer from
+	 * @param maxThreads
+	 *            the number of threads
+	 */
+	private static void benchmarkSubstitutionCryptanalysis(String text, int maxThreads) {
+		String key = "QWERTYUIOPASDFGHJKLZXCVBNM";
+		String plaintext = text.substring(0, Math.min(text.length(), 2000));
+		String ciphertext = SubstitutionCipher.encrypt(plaintext, key);
+		SubstitutionCryptanalysis cryptanalysis = new SubstitutionCryptanalysis(QuadgramScorer.build(text),
+				maxThreads, maxThreads);
+
+		cryptanalysis.cryptanalysis(ciphertext);
+		SubstitutionCryptanalysis.Result result = cryptanalysis.cryptanalysis(ciphertext);
+
+		report("SubstitutionCryptanalysis", result.getElapsedTime(), result.getNumberOfIterations(), "iterations");
+		System.out.printf("%-40s %10.2f ms (%s)%n", "SubstitutionCryptanalysis solution",
+				result.getTimeToSolution() / 1e6,
+				result.getPlaintext().equals(plaintext.toUpperCase()) ? "correct" : "incorrect");
+	}
+
+	/**
+	 * Measure the cryptanalysis of the Vigen&egrave;re cipher, and the search
+	 * of the key length on its own, on the encryption of a text.
+	 *
+	 * @param text
+	 *            the text to encrypt and cryptanalyse
+	 * @throws Exception
+	 *             errors in the measured tasks
+	 */
+	private static void benchmarkVigenereCryptanalysis(String text) throws Exception {
+		String ciphertext = VigenereCipher.encrypt(text, "LEMONADE");
+
+		report("ColumnHistogram.add", measure(() -> {
+			ColumnHistogram columnHistogram = new ColumnHistogram(19);
+			columnHistogram.add(ciphertext);
+			return columnHistogram;
+		}), ciphertext.length(), "chars");
+		byte[] letters = Util.toLetterIndexes(ciphertext);
+		report("KasiskiExamination.rankKeyLengths", measure(() -> new KasiskiExamination(19).rankKeyLengths(letters)),
+				letters.length, "letters");
+		report("ColumnHistogram IoC scan", measure(() -> {
+			ColumnHistogram columnHistogram = new ColumnHistogram(19);
+			columnHistogram.add(letters, 0, letters.length);
+			double[] averages = new double[20];
+			for (int h = 2; h < averages.length; h++) {
+				averages[h] = columnHistogram.averageIndexOfCoincidence(h);
+			}
+			return averages;
+		}), letters.length, "letters");
+		report("KasiskiExamination (200)", measure(() -> new KasiskiExamination(200).rankKeyLengths(letters)),
+				letters.length, "letters");
+		report("PeriodDetector.rankPeriods (5000)", measure(() -> new PeriodDetector(5000).rankPeriods(letters)),
+				Math.min(letters.length, PeriodDetector.MAXIMUM_SAMPLE_LENGTH), "letters");
+		report("ColumnHistogram full scan (40)", measure(() -> {
+			ColumnHistogram columnHistogram = new ColumnHistogram(40);
+			columnHistogram.add(letters, 0, letters.length);
+			return columnHistogram.countCoincidences(8);
+		}), letters.length, "letters");
+		KeyLengthScorer keyLengthScorer = new KeyLengthScorer(40, Runtime.getRuntime().availableProcessors());
+		report("KeyLengthScorer.rank (40)", measure(() -> keyLengthScorer.rank(letters)), letters.length, "letters");
+		report("OnlineVigenereCryptanalysis (40, 10000)", measure(() -> {
+			OnlineVigenereCryptanalysis online = new OnlineVigenereCryptanalysis(40);
+			online.setUpdateInterval(10000);
+			return online.appendLetters(letters, 0, letters.length).getEstimate();
+		}), letters.length, "letters");
+		KeyLengthEstimator estimator = new KeyLengthEstimator(40);
+		report("KeyLengthEstimator.estimate (40)", measure(() -> estimator.estimate(ciphertext)), ciphertext.length(),
+				"chars");
+		System.out.printf("%-40s %s%n", "  estimate", estimator.estimate(ciphertext));
+		VigenereCryptanalysis cryptanalysis = new VigenereCryptanalysis();
+		report("VigenereCryptanalysis.sampled", measure(() -> cryptanalysis.sampledCryptanalysis(ciphertext)),
+				ciphertext.length(), "chars");
+		report("VigenereCryptanalysis.cryptanalysis", measure(() -> cryptanalysis.cryptanalysis(ciphertext)),
+				ciphertext.length(), "chars");
+		System.out.printf("%-40s %s%n", "  result", cryptanalysis.cryptanalysis(ciphertext));
+	}
+
+	/**
+	 * Measure how often the cryptanalysis of the Vigen&egrave;re cipher finds
+	 * the key, without and with a language model built from the text, on
+	 * random extracts of it encrypted with random keys. The seed is fixed so
+	 * that a change is compared on the same cases: twelve keys for each
+	 * length of extract and model, the last two longer than the key lengths
+	 * assumed. The keys missed and the average time are printed.
+	 *
+	 * @param text
+	 *            the text to take the extracts from, and to build the
+	 *            language model from
+	 */
+	private static void benchmarkVigenereKeyRecovery(String text) {
+		Random random = new Random(7);
+		VigenereCryptanalysis[] cryptanalyses = { new VigenereCryptanalysis(),
+				new VigenereCryptanalysis(new LanguageModel.Builder(LanguageModel.MAXIMUM_ORDER).add(text).build()) };
+		int misses = 0;
+		int total = 0;
+		long nanos = 0;
+
+		for (int length : new int[] { 600, 2000, 20000, 200000 }) {
+			length = Math.min(length, text.length());
+
+			for (VigenereCryptanalysis cryptanalysis : cryptanalyses) {
+				for (int k = 0; k < 12; k++) {
+					StringBuilder key = new StringBuilder();
+					for (int i = 1 + random.nextInt(k < 10 ? 40 : 120); i > 0; i--) {
+						key.append((char) ('A' + random.nextInt(26)));
+					}
+					int offset = random.nextInt(text.length() - length + 1);
+					String ciphertext = VigenereCipher.encrypt(text.substring(offset, offset + length),
+							key.toString());
+
+					VigenereCryptanalysis.Result result = cryptanalysis.cryptanalysis(ciphertext);
+					nanos += result.getElapsedTime();
+					total++;
+					if (!result.getKey().equals(key.toString())) {
+						misses++;
+						System.out.printf("%-40s %s -> %s%n", "  missed (" + length + " chars)", key,
+								result.getKey());
+					}
+				}
+			}
+		}
+
+		System.out.printf("%-40s %d/%d missed, %10.2f ms on average%n", "VigenereCryptanalysis key recovery", misses,
+				total, nanos / 1e6 / total);
+	}
+
+	/**
+	 * @param args
+	 *            the file to analyse, followed by the maximum number of threads
+	 *            (by default, the number of available processors)
+	 * @throws Exception
+	 *             errors reading from files or in the measured tasks
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1) {
+			System.out.println("Usage: Benchmark <file> [maxThreads]");
+			return;
+		}
+
+		Path path = Paths.get(args[0]);
+		int maxThreads = 1 < args.length ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		benchmarkAnalysis(path, maxThreads);
+		benchmarkNGrams(path, maxThreads);
+		benchmarkFileCipher(path, maxThreads);
+		String text = Util.readFileToBuffer(args[0]);
+		benchmarkClassification(text);
+		benchmarkShiftKernels(text);
+		benchmarkQuadgrams(text);
+		benchmarkLanguageModel(text);
+		benchmarkCaesarCryptanalysis(text);
+		benchmarkVigenereCryptanalysis(text);
+		benchmarkVigenereKeyRecovery(text);
+		benchmarkSubstitutionCryptanalysis(text, maxThreads);
+	}
+}
@@ -0,0 +1,329 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.Arrays;
+
+/**
+ * An instance of this class counts the occurrences of each letter in the
+ * columns of a text, for every key length in a range at once.
+ *
+ * <p>
+ * For a key length h, the column c of a text is made of the letters whose
+ * position (counting letters only) modulo h is c, i.e. the letters encrypted
+ * with the same letter of a key of length h. Every letter added updates one
+ * column for each key length, so a single pass over a text is enough to know
+ * the histograms of the columns of all candidate key lengths, and the indexes
+ * of coincidence and chi squared can be computed from the counts alone.
+ *
+ * @author Oana Ivanovici
+ */
+public class ColumnHistogram {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The smallest key length whose columns are counted
+	 */
+	private final int minKeyLength;
+
+	/**
+	 * The largest key length whose columns are counted
+	 */
+	private final int maxKeyLength;
+
+	/**
+	 * The counts of all the columns of all the key lengths, in a single array:
+	 * the count of the letter i in the column c for the key length h is at
+	 * <code>offsets[h - minKeyLength] + c * 26 + i</code>.
+	 */
+	private final long[] counts;
+
+	/**
+	 * The index in counts of the first column of each key length
+	 */
+	private final int[] offsets;
+
+	/**
+	 * The column of each key length the next letter belongs to
+	 */
+	private final int[] nextColumns;
+
+	/**
+	 * The number of letters added so far
+	 */
+	private long numberOfLetters;
+
+	/**
+	 * Create an empty histogram of the columns of the key lengths from 1 to
+	 * maxKeyLength.
+	 *
+	 * @param maxKeyLength
+	 *            the largest key length whose columns are counted
+	 */
+	public ColumnHistogram(int maxKeyLength) {
+		this(1, maxKeyLength);
+	}
+
+	/**
+	 * Create an empty histogram of the columns of the key lengths from
+	 * minKeyLength to maxKeyLength. A single key length, however long, can be
+	 * counted giving it as both bounds.
+	 *
+	 * @param minKeyLength
+	 *            the smallest key length whose columns are counted
+	 * @param maxKeyLength
+	 *            the largest key length whose columns are counted
+	 */
+	public ColumnHistogram(int minKeyLength, int maxKeyLength) {
+		if (minKeyLength < 1 || maxKeyLength < minKeyLength) {
+			throw new IllegalArgumentException("Key lengths must be positive and in increasing order");
+		}
+
+		int numberOfKeyLengths = maxKeyLength - minKeyLength + 1;
+		int numberOfColumns = 0;
+
+		this.minKeyLength = minKeyLength;
+		this.maxKeyLength = maxKeyLength;
+		this.offsets = new int[numberOfKeyLengths];
+		this.nextColumns = new int[numberOfKeyLengths];
+
+		// the key length h has h columns, after the columns of the shorter
+		// key lengths
+		for (int h = minKeyLength; h <= maxKeyLength; h++) {
+			offsets[h - minKeyLength] = NUMBER_OF_LETTERS_IN_ALPHABET * numberOfColumns;
+			numberOfColumns += h;
+		}
+		this.counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET * numberOfColumns];
+	}
+
+	/**
+	 * Get the smallest key length whose columns are counted.
+	 *
+	 * @return the smallest key length
+	 */
+	public int getMinKeyLength() {
+		return minKeyLength;
+	}
+
+	/**
+	 * Get the largest key length whose columns are counted.
+	 *
+	 * @return the largest key length
+	 */
+	public int getMaxKeyLength() {
+		return maxKeyLength;
+	}
+
+	/**
+	 * Get the number of letters added so far.
+	 *
+	 * @return the number of letters added
+	 */
+	public long getNumberOfLetters() {
+		return numberOfLetters;
+	}
+
+	/**
+	 * Add the next letter of the text.
+	 *
+	 * @param indexOfLetter
+	 *            the index in the alphabet of the letter, between 0 and 25
+	 */
+	public void add(int indexOfLetter) {
+		for (int i = 0; i < offsets.length; i++) {
+			int column = nextColumns[i];
+
+			counts[offsets[i] + column * NUMBER_OF_LETTERS_IN_ALPHABET + indexOfLetter] += 1;
+			nextColumns[i] = column + 1 < minKeyLength + i ? column + 1 : 0;
+		}
+
+		numberOfLetters += 1;
+	}
+
+	/**
+	 * Add the letters of a text, skipping any other character.
+	 *
+	 * @param text
+	 *            the text to add
+	 */
+	public void add(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			int indexOfLetter = Util.letterIndex(text.charAt(i));
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				add(indexOfLetter);
+			}
+		}
+	}
+
+	/**
+	 * Add a range of letters given as indexes in the alphabet.
+	 *
+	 * @param letters
+	 *            the indexes of the letters, all between 0 and 25
+	 * @param offset
+	 *            the index of the first letter to add
+	 * @param length
+	 *            the number of letters to add
+	 */
+	public void add(byte[] letters, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			add(letters[i]);
+		}
+	}
+
+	/**
+	 * Get the number of occurrences of each letter in a column.
+	 *
+	 * @param keyLength
+	 *            the key length, between the minimum and the maximum key
+	 *            length
+	 * @param column
+	 *            the column, between 0 and keyLength - 1
+	 * @return a copy of the counts of the letters in the column
+	 */
+	public long[] getCounts(int keyLength, int column) {
+		long[] countsOfColumn = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+		System.arraycopy(counts, indexOf(keyLength, column), countsOfColumn, 0, NUMBER_OF_LETTERS_IN_ALPHABET);
+
+		return countsOfColumn;
+	}
+
+	/**
+	 * Get the number of letters in a column.
+	 *
+	 * @param keyLength
+	 *            the key length, between the minimum and the maximum key
+	 *            length
+	 * @param column
+	 *            the column, between 0 and keyLength - 1
+	 * @return the number of letters in the column
+	 */
+	public long getNumberOfLetters(int keyLength, int column) {
+		indexOf(keyLength, column);
+
+		return numberOfLetters / keyLength + (column < numberOfLetters % keyLength ? 1 : 0);
+	}
+
+	/**
+	 * Calculate the index of coincidence of a column, i.e. the probability
+	 * that two letters drawn from the column are the same:
+	 * sum (count i * (count i - 1)) / (n * (n - 1)).
+	 *
+	 * @param keyLength
+	 *            the key length, between the minimum and the maximum key
+	 *            length
+	 * @param column
+	 *            the column, between 0 and keyLength - 1
+	 * @return the index of coincidence of the column, or 0 if it has fewer
+	 *         than two letters
+	 */
+	public double indexOfCoincidence(int keyLength, int column) {
+		int index = indexOf(keyLength, column);
+		double lettersInColumn = getNumberOfLetters(keyLength, column);
+
+		if (lettersInColumn < 2) {
+			return 0.0;
+		}
+
+		double sumOfOccurrences = 0.0;
+		for (int i = index; i < index + NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			sumOfOccurrences += counts[i] * (counts[i] - 1.0);
+		}
+
+		return sumOfOccurrences / (lettersInColumn * (lettersInColumn - 1.0));
+	}
+
+	/**
+	 * Calculate the average of the indexes of coincidence of the columns of a
+	 * key length.
+	 *
+	 * @param keyLength
+	 *            the key length, between the minimum and the maximum key
+	 *            length
+	 * @return the average index of coincidence of the columns
+	 */
+	public double averageIndexOfCoincidence(int keyLength) {
+		double sumOfCoincidences = 0.0;
+
+		for (int column = 0; column < keyLength; column++) {
+			sumOfCoincidences += indexOfCoincidence(keyLength, column);
+		}
+
+		return sumOfCoincidences / keyLength;
+	}
+
+	/**
+	 * Count the pairs of equal letters in the same column, over all the
+	 * columns of a key length: sum over the columns of sum (count i * (count
+	 * i - 1)) / 2. Unlike the average index of coincidence, these counts can
+	 * be added up over several texts, e.g. samples of a longer text.
+	 *
+	 * @param keyLength
+	 *            the key length, between the minimum and the maximum key
+	 *            length
+	 * @return the number of pairs of equal letters
+	 */
+	public long countCoincidences(int keyLength) {
+		int start = indexOf(keyLength, 0);
+		long coincidences = 0;
+
+		for (int i = start; i < start + keyLength * NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			coincidences += counts[i] * (counts[i] - 1) / 2;
+		}
+
+		return coincidences;
+	}
+
+	/**
+	 * Count the pairs of letters in the same column, over all the columns of
+	 * a key length: sum over the columns of n * (n - 1) / 2.
+	 *
+	 * @param keyLength
+	 *            the key length, between the minimum and the maximum key
+	 *            length
+	 * @return the number of pairs of letters
+	 */
+	public long countPairs(int keyLength) {
+		long pairs = 0;
+
+		for (int column = 0; column < keyLength; column++) {
+			long lettersInColumn = getNumberOfLetters(keyLength, column);
+			pairs += lettersInColumn * (lettersInColumn - 1) / 2;
+		}
+
+		return pairs;
+	}
+
+	/**
+	 * Remove all the letters added so far.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		Arrays.fill(nextColumns, 0);
+		numberOfLetters = 0;
+	}
+
+	/**
+	 * Find the index in counts of the first letter of a column, checking that
+	 * the column exists.
+	 *
+	 * @param keyLength
+	 *            the key length
+	 * @param column
+	 *            the column
+	 * @return the index of the count of 'A' in the column
+	 */
+	private int indexOf(int keyLength, int column) {
+		if (keyLength < minKeyLength || keyLength > maxKeyLength) {
+			throw new IllegalArgumentException("Key length must be between " + minKeyLength + " and " + maxKeyLength);
+		} else if (column < 0 || column >= keyLength) {
+			throw new IllegalArgumentException("Column must be between 0 and " + (keyLength - 1));
+		}
+
+		return offsets[keyLength - minKeyLength] + column * NUMBER_OF_LETTERS_IN_ALPHABET;
+	}
+}
@@ -0,0 +1,258 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * An instance of this class counts the n-grams of texts fed by many threads at
+ * once, as {@link NGramAnalyser} does for a single thread.
+ *
+ * <p>
+ * Each thread counts into its own {@link NGramAnalyser}, so the threads share
+ * nothing while counting: no lock, and no cache line bouncing between cores as
+ * with shared atomic counters. The sub-tables are only summed when the counts
+ * are read, which is exact once the threads feeding the analyser have
+ * finished, e.g. they have been joined. A sub-table holds about 4 MB at order
+ * 4, so the memory used grows with the number of threads, not with the size
+ * of the corpus.
+ *
+ * <p>
+ * Each call to {@link #add(CharSequence)} is a separate text: its n-grams do
+ * not span two calls, which may come from different threads. A whole file is
+ * counted by {@link #add(Path, int)} in memory-mapped segments in parallel,
+ * and then the n-grams spanning two segments are counted too.
+ *
+ * @author Oana Ivanovici
+ */
+public class ConcurrentNGramAnalyser {
+
+	/**
+	 * Size of the segments of a file that are memory-mapped and counted by a
+	 * single task
+	 */
+	private static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * Size of the chunks copied at a time from a memory-mapped segment
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The length of the longest n-grams counted
+	 */
+	private final int order;
+
+	/**
+	 * The sub-tables of all the threads which have fed the analyser
+	 */
+	private final Queue<NGramAnalyser> subTables = new ConcurrentLinkedQueue<>();
+
+	/**
+	 * The sub-table of the current thread, created the first time it feeds the
+	 * analyser
+	 */
+	private final ThreadLocal<NGramAnalyser> subTable;
+
+	/**
+	 * Create an analyser of the n-grams up to an order.
+	 *
+	 * @param order
+	 *            the length of the longest n-grams counted, between 1 and 4
+	 */
+	public ConcurrentNGramAnalyser(int order) {
+		if (order < 1 || order > NGramAnalyser.MAXIMUM_ORDER) {
+			throw new IllegalArgumentException("Order must be between 1 and " + NGramAnalyser.MAXIMUM_ORDER);
+		}
+
+		this.order = order;
+		this.subTable = ThreadLocal.withInitial(() -> {
+			NGramAnalyser analyser = new NGramAnalyser(order);
+			subTables.add(analyser);
+			return analyser;
+		});
+	}
+
+	/**
+	 * Get the order of the analyser, i.e. the length of the longest n-grams
+	 * counted.
+	 *
+	 * @return the order, between 1 and 4
+	 */
+	public int getOrder() {
+		return order;
+	}
+
+	/**
+	 * Count the n-grams of a text. This method can be called by many threads
+	 * at once.
+	 *
+	 * @param text
+	 *            the text to count
+	 * @return this analyser
+	 */
+	public ConcurrentNGramAnalyser add(CharSequence text) {
+		subTable.get().add(text).endOfText();
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams of a text given as bytes, in an ASCII-compatible
+	 * encoding (see {@link NGramAnalyser#add(byte[], int, int)}). This method
+	 * can be called by many threads at once.
+	 *
+	 * @param text
+	 *            the bytes of the text
+	 * @param offset
+	 *            the index of the first byte to count
+	 * @param length
+	 *            the number of bytes to count
+	 * @return this analyser
+	 */
+	public ConcurrentNGramAnalyser add(byte[] text, int offset, int length) {
+		subTable.get().add(text, offset, length).endOfText();
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams of a file, as a single text, with the same assumption
+	 * on the encoding as {@link #add(byte[], int, int)}. The file is split
+	 * into segments which are memory-mapped and counted in parallel; each task
+	 * then reads past the end of its segment to count the n-grams spanning
+	 * into the next one. The threads of the call count into tables of their
+	 * own, which are merged into the sub-table of the calling thread at the
+	 * end, so that no sub-table is left behind by the threads of the call.
+	 *
+	 * @param path
+	 *            the file to analyse
+	 * @param parallelism
+	 *            the number of threads to count the segments with
+	 * @return this analyser
+	 * @throws IOException
+	 *             something goes wrong mapping or reading the file
+	 */
+	public ConcurrentNGramAnalyser add(Path path, int parallelism) throws IOException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+
+		Queue<NGramAnalyser> tablesOfFile = new ConcurrentLinkedQueue<>();
+		ThreadLocal<NGramAnalyser> tableOfFile = ThreadLocal.withInitial(() -> {
+			NGramAnalyser analyser = new NGramAnalyser(order);
+			tablesOfFile.add(analyser);
+			return analyser;
+		});
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			List<Callable<Void>> tasks = new ArrayList<>();
+
+			for (long start = 0; start < size; start += SEGMENT_SIZE) {
+				long segmentStart = start;
+				tasks.add(() -> {
+					countSegment(tableOfFile.get(), channel, segmentStart, Math.min(size, segmentStart + SEGMENT_SIZE));
+					return null;
+				});
+			}
+
+			for (Future<Void> future : pool.invokeAll(tasks)) {
+				future.get();
+			}
+
+			NGramAnalyser analyser = subTable.get();
+			for (NGramAnalyser tableOfThread : tablesOfFile) {
+				analyser.merge(tableOfThread);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while analysing the file", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			pool.shutdown();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams ending in a segment of a file, and those starting in
+	 * it and ending in the rest of the file.
+	 *
+	 * @param analyser
+	 *            the table to count into
+	 * @param channel
+	 *            the channel of the file
+	 * @param start
+	 *            the position of the first byte of the segment
+	 * @param end
+	 *            the position after the last byte of the segment
+	 * @throws IOException
+	 *             something goes wrong mapping the file
+	 */
+	private static void countSegment(NGramAnalyser analyser, FileChannel channel, long start, long end)
+			throws IOException {
+		byte[] chunk = new byte[BUFFER_SIZE];
+		MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+
+		while (segment.hasRemaining()) {
+			int length = Math.min(chunk.length, segment.remaining());
+			segment.get(chunk, 0, length);
+			analyser.add(chunk, 0, length);
+		}
+
+		// the last n-grams of the segment end in the next ones, after at most
+		// order - 1 letters
+		boolean complete = false;
+		for (long position = end; !complete && position < channel.size(); position += BUFFER_SIZE) {
+			MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, position,
+					Math.min(BUFFER_SIZE, channel.size() - position));
+			int length = tail.remaining();
+			tail.get(chunk, 0, length);
+			complete = analyser.addTail(chunk, 0, length);
+		}
+		analyser.endOfText();
+	}
+
+	/**
+	 * Get the counts of the n-grams of an order, summed over all the threads.
+	 *
+	 * @param order
+	 *            the length of the n-grams, between 1 and the order of the
+	 *            analyser
+	 * @return the number of occurrences of each n-gram, indexed by its value
+	 *         in base 26
+	 */
+	public long[] getCounts(int order) {
+		if (order < 1 || order > this.order) {
+			throw new IllegalArgumentException("Order must be between 1 and " + this.order);
+		}
+
+		long[] counts = new long[NGramAnalyser.numberOfNGrams(order)];
+		for (NGramAnalyser analyser : subTables) {
+			long[] countsOfThread = analyser.getCounts(order);
+
+			for (int i = 0; i < counts.length; i++) {
+				counts[i] += countsOfThread[i];
+			}
+		}
+
+		return counts;
+	}
+}
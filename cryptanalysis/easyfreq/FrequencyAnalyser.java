@@ -1,6 +1,17 @@
 package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * This class is to compute a frequency table of a texts.
@@ -22,6 +33,50 @@ public class FrequencyAnalyser {
 	 */
 	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
 
+	/**
+	 * Size of the chunks read at a time when analysing a stream, so that the
+	 * memory used does not depend on the size of the input
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Size of the segments of a file that are memory-mapped and counted by a
+	 * single task in the parallel analysis
+	 */
+	private static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * Number of histograms the consecutive characters are counted into in
+	 * turn, so that a letter repeated in a row increments different memory
+	 * locations, and the increments do not wait for each other
+	 */
+	private static final int NUMBER_OF_HISTOGRAMS = 8;
+
+	/**
+	 * Number of entries between the starts of two histograms, more than the
+	 * number of bins so that each histogram starts on its own cache line
+	 */
+	private static final int HISTOGRAM_STRIDE = 32;
+
+	/**
+	 * Bin in which the characters that are not letters are counted, and then
+	 * ignored, so that counting does not branch on the character
+	 */
+	private static final int NOT_A_LETTER_BIN = NUMBER_OF_LETTERS_IN_ALPHABET;
+
+	/**
+	 * The bin of each 8-bit character: the index of the letter, upper and
+	 * lower case folded, or NOT_A_LETTER_BIN
+	 */
+	private static final byte[] BINS = new byte[256];
+
+	static {
+		for (int i = 0; i < BINS.length; i++) {
+			int indexOfLetter = Util.letterIndex((char) i);
+			BINS[i] = (byte) (indexOfLetter == Util.NOT_A_LETTER ? NOT_A_LETTER_BIN : indexOfLetter);
+		}
+	}
+
 	/**
 	 * Get the text to analyse.
 	 *
@@ -57,27 +112,12 @@ public class FrequencyAnalyser {
 		// below!">
 
 		// Count the number of occurrences of each letter, put them into array
-		// numberOfOccurrencesOfEachLetter.
-		// Count the total number of valid letters
-		FrequencyTable frequencyTable = new FrequencyTable();
-		int totalNumberOfValidLetters = 0;
-		int[] numberOfOccurrencesOfEachLetter = countOccurrencesOfLetter(text);
+		// numberOfOccurrencesOfEachLetter, and the total number of valid
+		// letters in the same pass.
+		long[] numberOfOccurrencesOfEachLetter = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		long totalNumberOfValidLetters = countOccurrencesOfLetter(text, numberOfOccurrencesOfEachLetter);
 
-		for (int i = 0; i < text.length(); i++) {
-			if (Util.isValidLetter(text.charAt(i))) {
-				totalNumberOfValidLetters += 1;
-			}
-		}
-
-		// Divide the number of occurrences of the letter by the total number of
-		// valid letters in the text.
-		// Set the frequency of each letter
-		for (int i = 0; i < numberOfOccurrencesOfEachLetter.length; i++) {
-			double newFrequencyOfLetter = numberOfOccurrencesOfEachLetter[i] / (double) totalNumberOfValidLetters;
-			frequencyTable.setFrequency(Util.indexToChar(i), newFrequencyOfLetter);
-		}
-
-		return frequencyTable;
+		return toFrequencyTable(numberOfOccurrencesOfEachLetter, totalNumberOfValidLetters);
 
 		// </editor-fold> // END OF YOUR CODE
 	}
@@ -92,18 +132,442 @@ public class FrequencyAnalyser {
 	 * @return array of ints outlining the number of occurrences of each letter
 	 */
 	public static int[] countOccurrencesOfLetter(String text) {
+		long[] counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
 		int[] numberOfOccurrencesOfEachLetter = new int[NUMBER_OF_LETTERS_IN_ALPHABET];
 
-		for (int i = 0; i < text.length(); i++) {
-			char letter = text.charAt(i);
+		countOccurrencesOfLetter(text, counts);
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			numberOfOccurrencesOfEachLetter[i] = (int) counts[i];
+		}
 
-			if (Util.isValidLetter(letter)) {
-				int indexOfCurrentLetter = Util.charToIndex(letter);
-				numberOfOccurrencesOfEachLetter[indexOfCurrentLetter] += 1;
-			}
+		return numberOfOccurrencesOfEachLetter;
+	}
+
+	/**
+	 * This method adds the occurrences of each letter in a text to the given
+	 * counts, copying the text a chunk at a time.
+	 *
+	 * @param text
+	 *            the text to count
+	 * @param numberOfOccurrencesOfEachLetter
+	 *            the counts to update
+	 * @return the number of letters counted
+	 */
+	private static long countOccurrencesOfLetter(String text, long[] numberOfOccurrencesOfEachLetter) {
+		char[] chunk = new char[Math.min(BUFFER_SIZE, text.length())];
+		long numberOfLetters = 0;
+
+		for (int start = 0; start < text.length(); start += chunk.length) {
+			int end = Math.min(text.length(), start + chunk.length);
+			text.getChars(start, end, chunk, 0);
+			numberOfLetters += countOccurrencesOfLetter(chunk, 0, end - start, numberOfOccurrencesOfEachLetter);
+		}
+
+		return numberOfLetters;
+	}
+
+	/**
+	 * This method returns a frequency table as a result of the analysis of the
+	 * characters read from the given reader. The reader is consumed in chunks
+	 * of fixed size, so texts larger than the available memory can be analysed.
+	 * The reader is not closed.
+	 *
+	 * @param reader
+	 *            the reader to read the text from
+	 * @return frequency table as a result of the analysis of the text, equal to
+	 *         the one returned by {@link #analyse()} on the same text
+	 * @throws IOException
+	 *             something goes wrong reading from the reader
+	 */
+	public static FrequencyTable analyse(Reader reader) throws IOException {
+		return toFrequencyTable(countOccurrencesOfLetter(reader));
+	}
+
+	/**
+	 * This method returns a frequency table as a result of the analysis of the
+	 * bytes read from the given stream. The text is assumed to be in an
+	 * ASCII-compatible encoding (e.g. UTF-8 or ISO-8859-1), where the English
+	 * letters are single bytes. The stream is not closed.
+	 *
+	 * @param in
+	 *            the stream to read the text from
+	 * @return frequency table as a result of the analysis of the text
+	 * @throws IOException
+	 *             something goes wrong reading from the stream
+	 */
+	public static FrequencyTable analyse(InputStream in) throws IOException {
+		return toFrequencyTable(countOccurrencesOfLetter(in));
+	}
+
+	/**
+	 * This method returns a frequency table as a result of the analysis of the
+	 * bytes read from the given channel. The same assumption on the encoding
+	 * as {@link #analyse(InputStream)} holds. The channel is not closed.
+	 *
+	 * @param channel
+	 *            the channel to read the text from
+	 * @return frequency table as a result of the analysis of the text
+	 * @throws IOException
+	 *             something goes wrong reading from the channel
+	 */
+	public static FrequencyTable analyse(ReadableByteChannel channel) throws IOException {
+		return toFrequencyTable(countOccurrencesOfLetter(channel));
+	}
+
+	/**
+	 * This method counts the occurrences of each letter in the characters read
+	 * from the given reader, a chunk at a time.
+	 *
+	 * @param reader
+	 *            the reader to read the text from
+	 * @return array of longs outlining the number of occurrences of each letter
+	 * @throws IOException
+	 *             something goes wrong reading from the reader
+	 */
+	public static long[] countOccurrencesOfLetter(Reader reader) throws IOException {
+		long[] numberOfOccurrencesOfEachLetter = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		char[] buffer = new char[BUFFER_SIZE];
+		int read;
+
+		while ((read = reader.read(buffer)) != -1) {
+			countOccurrencesOfLetter(buffer, 0, read, numberOfOccurrencesOfEachLetter);
+		}
+
+		return numberOfOccurrencesOfEachLetter;
+	}
+
+	/**
+	 * This method counts the occurrences of each letter in the bytes read from
+	 * the given stream, a chunk at a time.
+	 *
+	 * @param in
+	 *            the stream to read the text from
+	 * @return array of longs outlining the number of occurrences of each letter
+	 * @throws IOException
+	 *             something goes wrong reading from the stream
+	 */
+	public static long[] countOccurrencesOfLetter(InputStream in) throws IOException {
+		long[] numberOfOccurrencesOfEachLetter = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+
+		while ((read = in.read(buffer)) != -1) {
+			countOccurrencesOfLetter(buffer, 0, read, numberOfOccurrencesOfEachLetter);
+		}
+
+		return numberOfOccurrencesOfEachLetter;
+	}
+
+	/**
+	 * This method counts the occurrences of each letter in the bytes read from
+	 * the given channel, a chunk at a time.
+	 *
+	 * @param channel
+	 *            the channel to read the text from
+	 * @return array of longs outlining the number of occurrences of each letter
+	 * @throws IOException
+	 *             something goes wrong reading from the channel
+	 */
+	public static long[] countOccurrencesOfLetter(ReadableByteChannel channel) throws IOException {
+		long[] numberOfOccurrencesOfEachLetter = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		while (channel.read(buffer) != -1) {
+			buffer.flip();
+			countOccurrencesOfLetter(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining(),
+					numberOfOccurrencesOfEachLetter);
+			buffer.clear();
+		}
+
+		return numberOfOccurrencesOfEachLetter;
+	}
+
+	/**
+	 * This method returns a frequency table as a result of the analysis of a
+	 * file. The file is memory-mapped and split into segments whose letters
+	 * are counted in parallel, then the counts of the segments are merged. The
+	 * same assumption on the encoding as {@link #analyse(InputStream)} holds.
+	 *
+	 * @param path
+	 *            the file to analyse
+	 * @param parallelism
+	 *            the number of threads to count the segments with
+	 * @return frequency table as a result of the analysis of the file
+	 * @throws IOException
+	 *             something goes wrong mapping or reading the file
+	 */
+	public static FrequencyTable analyse(Path path, int parallelism) throws IOException {
+		return toFrequencyTable(countOccurrencesOfLetter(path, parallelism));
+	}
+
+	/**
+	 * This method counts the occurrences of each letter in a file, counting
+	 * memory-mapped segments of it in parallel.
+	 *
+	 * @param path
+	 *            the file to analyse
+	 * @param parallelism
+	 *            the number of threads to count the segments with
+	 * @return array of longs outlining the number of occurrences of each letter
+	 * @throws IOException
+	 *             something goes wrong mapping or reading the file
+	 */
+	public static long[] countOccurrencesOfLetter(Path path, int parallelism) throws IOException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return pool.invoke(new SegmentCountingTask(channel, 0, channel.size()));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * This method counts the occurrences of each letter in the remaining bytes
+	 * of a buffer, e.g. a memory-mapped segment of a file. The position of the
+	 * buffer is not changed.
+	 *
+	 * @param buffer
+	 *            the bytes to count
+	 * @return array of longs outlining the number of occurrences of each letter
+	 */
+	public static long[] countOccurrencesOfLetter(ByteBuffer buffer) {
+		long[] numberOfOccurrencesOfEachLetter = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		ByteBuffer source = buffer.duplicate();
+		byte[] chunk = new byte[BUFFER_SIZE];
+
+		while (source.hasRemaining()) {
+			int length = Math.min(chunk.length, source.remaining());
+			source.get(chunk, 0, length);
+			countOccurrencesOfLetter(chunk, 0, length, numberOfOccurrencesOfEachLetter);
 		}
 
 		return numberOfOccurrencesOfEachLetter;
 	}
 
+	/**
+	 * This method adds the occurrences of each letter in a chunk of characters
+	 * to the given counts. The characters are counted in turn into several
+	 * histograms (see {@link #countOccurrencesOfLetter(byte[], int, int, long[])}).
+	 *
+	 * @param chunk
+	 *            the characters to count
+	 * @param offset
+	 *            the index of the first character to count
+	 * @param length
+	 *            the number of characters to count
+	 * @param numberOfOccurrencesOfEachLetter
+	 *            the counts to update
+	 * @return the number of letters counted
+	 */
+	static long countOccurrencesOfLetter(char[] chunk, int offset, int length,
+			long[] numberOfOccurrencesOfEachLetter) {
+		int[] histograms = new int[NUMBER_OF_HISTOGRAMS * HISTOGRAM_STRIDE];
+		int end = offset + length;
+		int i = offset;
+
+		for (; i + NUMBER_OF_HISTOGRAMS <= end; i += NUMBER_OF_HISTOGRAMS) {
+			histograms[bin(chunk[i])] += 1;
+			histograms[HISTOGRAM_STRIDE + bin(chunk[i + 1])] += 1;
+			histograms[2 * HISTOGRAM_STRIDE + bin(chunk[i + 2])] += 1;
+			histograms[3 * HISTOGRAM_STRIDE + bin(chunk[i + 3])] += 1;
+			histograms[4 * HISTOGRAM_STRIDE + bin(chunk[i + 4])] += 1;
+			histograms[5 * HISTOGRAM_STRIDE + bin(chunk[i + 5])] += 1;
+			histograms[6 * HISTOGRAM_STRIDE + bin(chunk[i + 6])] += 1;
+			histograms[7 * HISTOGRAM_STRIDE + bin(chunk[i + 7])] += 1;
+		}
+		for (; i < end; i++) {
+			histograms[bin(chunk[i])] += 1;
+		}
+
+		return addHistograms(histograms, numberOfOccurrencesOfEachLetter);
+	}
+
+	/**
+	 * This method adds the occurrences of each letter in a chunk of bytes to
+	 * the given counts, and counts the letters in the same pass.
+	 *
+	 * <p>
+	 * Incrementing a single histogram, the increment of a letter has to wait
+	 * for the increment of the same letter just before it to be stored, which
+	 * happens all the time in a text (double letters, spaces, a letter
+	 * occurring every few characters). So the bytes are counted in turn into
+	 * eight histograms, summed at the end, and the characters that are not
+	 * letters are counted too, into a bin which is ignored, so the loop has no
+	 * branch to mispredict.
+	 *
+	 * @param chunk
+	 *            the bytes to count
+	 * @param offset
+	 *            the index of the first byte to count
+	 * @param length
+	 *            the number of bytes to count
+	 * @param numberOfOccurrencesOfEachLetter
+	 *            the counts to update
+	 * @return the number of letters counted
+	 */
+	static long countOccurrencesOfLetter(byte[] chunk, int offset, int length,
+			long[] numberOfOccurrencesOfEachLetter) {
+		int[] histograms = new int[NUMBER_OF_HISTOGRAMS * HISTOGRAM_STRIDE];
+		int end = offset + length;
+		int i = offset;
+
+		for (; i + NUMBER_OF_HISTOGRAMS <= end; i += NUMBER_OF_HISTOGRAMS) {
+			histograms[BINS[chunk[i] & 0xFF]] += 1;
+			histograms[HISTOGRAM_STRIDE + BINS[chunk[i + 1] & 0xFF]] += 1;
+			histograms[2 * HISTOGRAM_STRIDE + BINS[chunk[i + 2] & 0xFF]] += 1;
+			histograms[3 * HISTOGRAM_STRIDE + BINS[chunk[i + 3] & 0xFF]] += 1;
+			histograms[4 * HISTOGRAM_STRIDE + BINS[chunk[i + 4] & 0xFF]] += 1;
+			histograms[5 * HISTOGRAM_STRIDE + BINS[chunk[i + 5] & 0xFF]] += 1;
+			histograms[6 * HISTOGRAM_STRIDE + BINS[chunk[i + 6] & 0xFF]] += 1;
+			histograms[7 * HISTOGRAM_STRIDE + BINS[chunk[i + 7] & 0xFF]] += 1;
+		}
+		for (; i < end; i++) {
+			histograms[BINS[chunk[i] & 0xFF]] += 1;
+		}
+
+		return addHistograms(histograms, numberOfOccurrencesOfEachLetter);
+	}
+
+	/**
+	 * This method finds the bin of a character.
+	 *
+	 * @param character
+	 *            the character
+	 * @return the index of the letter, or NOT_A_LETTER_BIN
+	 */
+	private static int bin(char character) {
+		return character < BINS.length ? BINS[character] : NOT_A_LETTER_BIN;
+	}
+
+	/**
+	 * This method adds the histograms of the letters to the given counts.
+	 *
+	 * @param histograms
+	 *            the histograms, HISTOGRAM_STRIDE entries apart
+	 * @param numberOfOccurrencesOfEachLetter
+	 *            the counts to update
+	 * @return the number of letters in the histograms
+	 */
+	private static long addHistograms(int[] histograms, long[] numberOfOccurrencesOfEachLetter) {
+		long numberOfLetters = 0;
+
+		for (int letter = 0; letter < NUMBER_OF_LETTERS_IN_ALPHABET; letter++) {
+			long count = 0;
+			for (int h = letter; h < histograms.length; h += HISTOGRAM_STRIDE) {
+				count += histograms[h];
+			}
+			numberOfOccurrencesOfEachLetter[letter] += count;
+			numberOfLetters += count;
+		}
+
+		return numberOfLetters;
+	}
+
+	/**
+	 * This method turns the number of occurrences of each letter into a
+	 * frequency table, dividing each of them by the total number of valid
+	 * letters.
+	 *
+	 * @param numberOfOccurrencesOfEachLetter
+	 *            the number of occurrences of each letter
+	 * @return frequency table of the letters
+	 */
+	public static FrequencyTable toFrequencyTable(long[] numberOfOccurrencesOfEachLetter) {
+		long totalNumberOfValidLetters = 0;
+
+		for (int i = 0; i < numberOfOccurrencesOfEachLetter.length; i++) {
+			totalNumberOfValidLetters += numberOfOccurrencesOfEachLetter[i];
+		}
+
+		return toFrequencyTable(numberOfOccurrencesOfEachLetter, totalNumberOfValidLetters);
+	}
+
+	/**
+	 * This method turns the number of occurrences of each letter into a
+	 * frequency table, given the total number of valid letters.
+	 *
+	 * @param numberOfOccurrencesOfEachLetter
+	 *            the number of occurrences of each letter
+	 * @param totalNumberOfValidLetters
+	 *            the sum of the number of occurrences
+	 * @return frequency table of the letters
+	 */
+	private static FrequencyTable toFrequencyTable(long[] numberOfOccurrencesOfEachLetter,
+			long totalNumberOfValidLetters) {
+		FrequencyTable frequencyTable = new FrequencyTable();
+
+		// Divide the number of occurrences of the letter by the total number of
+		// valid letters in the text.
+		// Set the frequency of each letter
+		for (int i = 0; i < numberOfOccurrencesOfEachLetter.length; i++) {
+			double newFrequencyOfLetter = numberOfOccurrencesOfEachLetter[i] / (double) totalNumberOfValidLetters;
+			frequencyTable.setFrequency(Util.indexToChar(i), newFrequencyOfLetter);
+		}
+
+		return frequencyTable;
+	}
+
+	/**
+	 * This task counts the occurrences of each letter in a range of a file. It
+	 * splits the range in halves until it is not larger than a segment, which
+	 * is then memory-mapped and counted directly.
+	 */
+	private static class SegmentCountingTask extends RecursiveTask<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		/**
+		 * The channel of the file to count
+		 */
+		private final transient FileChannel channel;
+
+		/**
+		 * The position of the first byte of the range
+		 */
+		private final long start;
+
+		/**
+		 * The position after the last byte of the range
+		 */
+		private final long end;
+
+		SegmentCountingTask(FileChannel channel, long start, long end) {
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected long[] compute() {
+			if (end - start <= SEGMENT_SIZE) {
+				try {
+					return countOccurrencesOfLetter(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+
+			long middle = start + (end - start) / 2;
+			SegmentCountingTask left = new SegmentCountingTask(channel, start, middle);
+			SegmentCountingTask right = new SegmentCountingTask(channel, middle, end);
+			left.fork();
+			long[] numberOfOccurrencesOfEachLetter = right.compute();
+			long[] numberOfOccurrencesInLeft = left.join();
+
+			// merge the histograms of the two halves
+			for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+				numberOfOccurrencesOfEachLetter[i] += numberOfOccurrencesInLeft[i];
+			}
+
+			return numberOfOccurrencesOfEachLetter;
+		}
+	}
+
 }
@@ -3,12 +3,20 @@ package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
 import java.io.File;
 import java.io.IOException;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.nio.file.Paths;
+import java.util.function.IntFunction;
 
 /**
  * This class is for frequency cryptanalysis of ciphertext when the key is an
  * integer.
  *
+ * <p>
+ * An instance only holds the model of the language of the plaintext: each
+ * cryptanalysis takes its ciphertext and returns its own immutable result, so
+ * a single instance can crack many ciphertexts at once from different threads.
+ * Manual adjustment of the key is done by {@link InteractiveCryptanalysis}.
+ *
  * @author Changyu Dong
  * @author Roberto Metere
  * @author Oana Ivanovici
@@ -16,251 +24,294 @@ import java.nio.file.Paths;
 public class FrequencyCryptanalysis {
 
 	/**
-	 * The ciphertext (encryption of the plaintext).
+	 * This variable denotes the total number of letters in the English alphabet
+	 * and will be used in the modulus operation
 	 */
-	private String ciphertext;
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
 
 	/**
-	 * The plaintext (readable content).
+	 * The number of letters at the beginning of the ciphertext scored with
+	 * the quadgrams
 	 */
-	private String plaintext;
+	private static final int QUADGRAM_SAMPLE_LENGTH = 10000;
 
 	/**
-	 * The key such that the encryption of the plaintext with such key gives the
-	 * ciphertext.
+	 * The number of letters of the first sample of the sampling
+	 * cryptanalysis, which then doubles
 	 */
-	private int key;
+	private static final int INITIAL_SAMPLE_LENGTH = 16;
 
 	/**
-	 * Frequency table (of the ciphertext).
+	 * The default posterior probability of the best key at which the sampling
+	 * cryptanalysis stops
 	 */
-	private FrequencyTable table;
+	public static final double DEFAULT_CONFIDENCE = 0.999999;
 
 	/**
-	 * INTERACTIVE means that you can manually tune the analysis and/or the
-	 * result.
+	 * The scorer of the shifts against the frequencies of the letters of the
+	 * plaintext.
 	 */
-	public static final boolean INTERACTIVE = true;
+	private final ShiftScorer shiftScorer;
 
 	/**
-	 * AUTOMATIC means that the analysis will not ask any further information.
+	 * The scorer of the quadgrams of the plaintext, if any.
 	 */
-	public static final boolean AUTOMATIC = false;
+	private final QuadgramScorer quadgramScorer;
 
 	/**
-	 * This variable is just to run the script interactive, that is with manual
-	 * tunes.
+	 * Create an new class to cryptanalyze texts, with the standard
+	 * frequencies of the English letters.
 	 */
-	private boolean interactive = AUTOMATIC;
-
-	/**
-	 * This variable denotes the total number of letters in the English alphabet
-	 * and will be used in the modulus operation
-	 */
-	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+	public FrequencyCryptanalysis() {
+		this(ShiftScorer.ENGLISH, null);
+	}
 
 	/**
-	 * Set the ciphertext to analyse.
+	 * Create an new class to cryptanalyze texts with the model of the language
+	 * of the plaintext, whose letter frequencies and quadgrams (if any) are
+	 * used to choose the key.
 	 *
-	 * @param text
-	 *            the text to set as ciphertext
+	 * @param model
+	 *            the language model
 	 */
-	public void setCiphertext(String text) {
-		this.ciphertext = text;
+	public FrequencyCryptanalysis(LanguageModel model) {
+		this(model.getShiftScorer(), model.getQuadgramScorer());
 	}
 
 	/**
 	 * Create an new class to cryptanalyze texts.
+	 *
+	 * @param shiftScorer
+	 *            the scorer of the shifts against the frequencies of the
+	 *            letters of the plaintext
+	 * @param quadgramScorer
+	 *            the scorer of the quadgrams of the plaintext, or null to use
+	 *            the chi squared of the letters only
 	 */
-	public FrequencyCryptanalysis() {
+	public FrequencyCryptanalysis(ShiftScorer shiftScorer, QuadgramScorer quadgramScorer) {
+		this.shiftScorer = shiftScorer;
+		this.quadgramScorer = quadgramScorer;
 	}
 
 	/**
-	 * Constructor with interactive choice.
+	 * This method conducts cryptanalysis of the frequency of letters in the
+	 * ciphertext to retrieve the encryption key.
 	 *
-	 * @param interactive
-	 *            whether it should ask for manual tuning or not
+	 * @param ciphertext
+	 *            the ciphertext, with at least a letter
+	 * @return the key and the plaintext as result of the cryptanalysis
 	 */
-	public FrequencyCryptanalysis(boolean interactive) {
-		this.interactive = interactive;
+	public Result cryptanalysis(CharSequence ciphertext) {
+		String text = ciphertext.toString();
+
+		return cryptanalysis(Util.toLetterIndexes(text), key -> decrypt(text, key));
 	}
 
 	/**
-	 * This method is to allow you to manually set the key can be used as a
-	 * subroutine in your cryptanalysis for manual adjustment
+	 * This method conducts cryptanalysis of the frequency of letters in a
+	 * ciphertext given as bytes, in an ASCII-compatible encoding. The
+	 * ciphertext must not be changed while the plaintext of the result may be
+	 * asked for.
+	 *
+	 * @param ciphertext
+	 *            the bytes of the ciphertext, with at least a letter
+	 * @param charset
+	 *            the encoding of the ciphertext, which must be
+	 *            ASCII-compatible, e.g. UTF-8, to decode the plaintext with
+	 * @return the key and the plaintext as result of the cryptanalysis
 	 */
-	private void manualAdjustment() {
-		int i;
-
-		System.out.println("Enter the key (0-25): ");
-		i = Util.reader.nextInt(); // Scans the next token of the input as an
-									// int.
-		if (i >= 0 && i <= 25) {
-			this.key = i;
-			System.out.println("The key is set to " + this.key);
-		} else {
-			System.out.println("The key is invalid (must be an integer between 0 and 25 included).");
-		}
+	public Result cryptanalysis(byte[] ciphertext, Charset charset) {
+		return cryptanalysis(Util.toLetterIndexes(ciphertext), key -> {
+			byte[] plaintext = ciphertext.clone();
+			int[] shifts = { Math.floorMod(-key, NUMBER_OF_LETTERS_IN_ALPHABET) };
+
+			VigenereCipher.transform(plaintext, 0, plaintext, 0, plaintext.length, shifts, 0);
+			return new String(plaintext, charset);
+		});
 	}
 
 	/**
 	 * This method conducts cryptanalysis of the frequency of letters in the
 	 * ciphertext to retrieve the encryption key.
 	 *
-	 * <p>
-	 * TODO:
-	 * <ul>
-	 * <li>Conduct a frequency analysis of the internal buffer.
-	 * <li>Find the key. You should try your best to find the key based on your
-	 * analysis.
-	 * <li>Store the key in the class variable <code>this.key</code>.
-	 * </ul>
-	 *
-	 * <p>
-	 * Manual adjustment in the method is allowed but needs to be justified in
-	 * your report. You can create methods as you like.
-	 *
-	 * @return the key as the result of the cryptanalysis
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param decryption
+	 *            the decryption of the ciphertext with a key
+	 * @return the key and the plaintext as result of the cryptanalysis
 	 */
-	public int cryptanalysis() {
+	private Result cryptanalysis(byte[] letters, IntFunction<String> decryption) {
 		// Please, do not remove the editor-fold comments.
 		// <editor-fold defaultstate="collapsed" desc="Write your code here
 		// below!">
 
-		// Conduct frequency analysis of the ciphertext
-		FrequencyAnalyser ciphertextFrequencyAnalyser = new FrequencyAnalyser();
-		ciphertextFrequencyAnalyser.setText(ciphertext);
-		FrequencyTable ciphertextFrequencyTable = ciphertextFrequencyAnalyser.analyse();
-
-		// Get the index of the element with the highest frequency
-		int largestFrequencyOfCiphertext = findHighestFrequency(ciphertextFrequencyTable);
-
-		// ASSUME the letter with the highest frequency in the alphabet is E -
-		// index 4
-		int largestFrequencyOfPlaintext = 4;
-
-		// Subtract the index of largestFrequencyOfPlaintext from the
-		// largestFrequencyOfCiphertext to get the key
-		this.key = largestFrequencyOfCiphertext - largestFrequencyOfPlaintext;
-
-		// </editor-fold> // END OF YOUR CODE
-		// The following code allows you to manually adjust your result.
-		if (this.interactive) {
-			String answer;
-			do {
-
-				do {
-					System.out.println("Do you want to see the plaintext (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
-
-				if (answer.equals("Y")) {
-					this.decrypt();
-					System.out.println(this.plaintext);
-				}
-
-				do {
-					System.out.println("Do you want to see the key (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
-
-				if (answer.equals("Y")) {
-					System.out.println(this.key);
-				}
+		long start = System.nanoTime();
+		if (letters.length == 0) {
+			throw new IllegalArgumentException("Ciphertext must contain at least a letter");
+		}
 
-				do {
-					System.out.println("Do you want to change the key (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
+		// Count the letters of the ciphertext
+		long[] counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		for (byte letter : letters) {
+			counts[letter] += 1;
+		}
 
-				if (answer.equals("Y")) {
-					this.manualAdjustment();
+		// Decrypting with a key only rotates the counts of the letters, so
+		// every key (0-25) is scored against the frequencies of the English
+		// letters without decrypting: the key is the one whose plaintext has
+		// the smallest chi squared
+		double[] chiSquared = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
+		shiftScorer.chiSquared(counts, chiSquared);
+		int key = shiftScorer.bestShiftByChiSquared(counts);
+		double fitness = Double.NaN;
+
+		// If there is a quadgram scorer and at least a quadgram, choose
+		// instead the key whose plaintext has the best quadgrams, which is
+		// reliable on much shorter ciphertexts; the beginning of a long
+		// ciphertext is enough
+		int length = Math.min(letters.length, QUADGRAM_SAMPLE_LENGTH);
+		if (quadgramScorer != null && length >= 4) {
+			double bestScore = Double.NEGATIVE_INFINITY;
+
+			for (int shift = 0; shift < NUMBER_OF_LETTERS_IN_ALPHABET; shift++) {
+				int[] shifts = { Math.floorMod(-shift, NUMBER_OF_LETTERS_IN_ALPHABET) };
+				double score = quadgramScorer.score(letters, 0, length, shifts, 0);
+
+				if (score > bestScore) {
+					bestScore = score;
+					key = shift;
 				}
+			}
+			fitness = bestScore / length;
+		}
 
-				do {
-					System.out.println("Do you want to stop (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
+		// </editor-fold> // END OF YOUR CODE
 
-			} while (!answer.equals("Y"));
-		}
+		return new Result(key, chiSquared[key], fitness, letters.length, System.nanoTime() - start, decryption);
+	}
 
-		return this.key;
+	/**
+	 * This method finds the key from a prefix of the ciphertext, as short as
+	 * possible, with the default confidence and no limit on its length.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext, with at least a letter
+	 * @return the key, its confidence and the number of letters read
+	 * @see #sampledCryptanalysis(CharSequence, double, int)
+	 */
+	public KeyEstimate sampledCryptanalysis(CharSequence ciphertext) {
+		return sampledCryptanalysis(ciphertext, DEFAULT_CONFIDENCE, Integer.MAX_VALUE);
 	}
 
 	/**
-	 * This method is used for finding the index of the letter that has the
-	 * higest frequency in the analysis
-	 * 
-	 * @param textFreqTbl
-	 * @return index of the highest frequency letter
+	 * This method finds the key from a prefix of the ciphertext, as short as
+	 * possible, so that the time taken does not depend on the length of the
+	 * ciphertext.
+	 *
+	 * <p>
+	 * The letters are counted from the beginning of the ciphertext, in samples
+	 * doubling in length. After each sample, the 26 keys are scored by the
+	 * log-likelihood of their plaintext under the reference distribution (see
+	 * {@link ShiftScorer#logLikelihood(long[], double[])}), which gives the
+	 * posterior probability of each key. The analysis stops as soon as the
+	 * best key is more probable than the given confidence, or when the
+	 * ciphertext or the maximum sample length is exhausted. On English, a few
+	 * dozen letters are usually enough.
+	 *
+	 * <p>
+	 * The confidence assumes that the letters of the plaintext are drawn
+	 * independently from the reference distribution, which makes it somewhat
+	 * optimistic, hence the high default. It means nothing if the ciphertext
+	 * is not a shift of the language, e.g. a Vigen&egrave;re ciphertext.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext, with at least a letter
+	 * @param confidence
+	 *            the posterior probability of the best key to reach, lower
+	 *            than 1
+	 * @param maximumSampleLength
+	 *            the maximum number of letters to read
+	 * @return the key, its confidence and the number of letters read
 	 */
-	private int findHighestFrequency(FrequencyTable textFreqTbl) {
+	public KeyEstimate sampledCryptanalysis(CharSequence ciphertext, double confidence, int maximumSampleLength) {
+		if (!(confidence > 0.0 && confidence < 1.0)) {
+			throw new IllegalArgumentException("Confidence must be between 0 and 1 excluded");
+		} else if (maximumSampleLength < 1) {
+			throw new IllegalArgumentException("Maximum sample length must be positive");
+		}
+
+		long[] counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		double[] logLikelihoods = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
+		int numberOfLetters = 0;
+		int position = 0;
+		int sampleLength = Math.min(INITIAL_SAMPLE_LENGTH, maximumSampleLength);
+		double posterior = 1.0 / NUMBER_OF_LETTERS_IN_ALPHABET;
+		int bestKey = 0;
+
+		while (true) {
+			// count the letters up to the length of the sample
+			while (numberOfLetters < sampleLength && position < ciphertext.length()) {
+				int indexOfLetter = Util.letterIndex(ciphertext.charAt(position));
+
+				if (indexOfLetter != Util.NOT_A_LETTER) {
+					counts[indexOfLetter] += 1;
+					numberOfLetters += 1;
+				}
+				position += 1;
+			}
+			if (numberOfLetters == 0) {
+				throw new IllegalArgumentException("Ciphertext must contain at least a letter");
+			}
 
-		double[] freqTable = textFreqTbl.getTable();
-		double highestFrequency = freqTable[0];
-		int indexOfHighestFrequencyLetter = 0;
+			// the posterior of the best key is 1 / sum exp(log-likelihood of
+			// key - log-likelihood of the best key)
+			shiftScorer.logLikelihood(counts, logLikelihoods);
+			bestKey = 0;
+			for (int key = 1; key < NUMBER_OF_LETTERS_IN_ALPHABET; key++) {
+				if (logLikelihoods[key] > logLikelihoods[bestKey]) {
+					bestKey = key;
+				}
+			}
+			double sum = 0.0;
+			for (int key = 0; key < NUMBER_OF_LETTERS_IN_ALPHABET; key++) {
+				sum += Math.exp(logLikelihoods[key] - logLikelihoods[bestKey]);
+			}
+			posterior = 1.0 / sum;
 
-		for (int i = 1; i < freqTable.length; i++) {
-			if (freqTable[i] > highestFrequency) {
-				highestFrequency = freqTable[i];
-				indexOfHighestFrequencyLetter = i;
+			if (posterior >= confidence || position == ciphertext.length() || sampleLength == maximumSampleLength) {
+				break;
 			}
+			sampleLength = (int) Math.min(2L * sampleLength, maximumSampleLength);
 		}
 
-		return indexOfHighestFrequencyLetter;
+		return new KeyEstimate(bestKey, posterior, numberOfLetters);
 	}
 
 	/**
 	 * This method reconstructs the plaintext from the ciphertext with the key.
 	 *
-	 * <p>
-	 * TODO:
-	 * <ul>
-	 * <li>After finding the key, use the key to decrypt the ciphertext
-	 * <li>Store the plaintext in the class variable
-	 * <code>this.plaintext</code>.
-	 * </ul>
+	 * @param ciphertext
+	 *            the ciphertext
+	 * @param key
+	 *            the key, between 0 and 25
+	 * @return the plaintext
 	 */
-	public void decrypt() {
+	public static String decrypt(CharSequence ciphertext, int key) {
 		// Please, do not remove the editor-fold comments.
 		// <editor-fold defaultstate="collapsed" desc="Write your code here
 		// below!">
 
-		// initialise to an empty string to concatenate plaintext to it after
-		// decryption
-		plaintext = "";
-
-		for (int i = 0; i < ciphertext.length(); i++) {
+		// a Caesar cipher is a Vigenere cipher with a key of a single letter:
+		// decrypt by adding the shift that undoes the key
+		char[] decryptedCharacters = ciphertext.toString().toCharArray();
+		int[] shifts = { Math.floorMod(-key, NUMBER_OF_LETTERS_IN_ALPHABET) };
 
-			char encryptedCharacter = ciphertext.charAt(i);
-
-			if (Util.isValidLetter(encryptedCharacter)) {
-				// floorMod calculates the floor modulus of the difference
-				// between the encrypted letter
-				// and the key with NUMBER_OF_LETTERS_IN_ALPHABET (26), which
-				// gives the decrypted letter
-				char decryptedLetter = Util.indexToChar(
-						Math.floorMod(Util.charToIndex(encryptedCharacter) - this.key, NUMBER_OF_LETTERS_IN_ALPHABET));
-				plaintext += decryptedLetter;
-			} else { // maintain non-letters characters
-				plaintext += encryptedCharacter;
-			}
-		}
+		VigenereCipher.transform(decryptedCharacters, 0, decryptedCharacters, 0, decryptedCharacters.length, shifts, 0);
+		return new String(decryptedCharacters);
 
 		// </editor-fold> // END OF YOUR CODE
 	}
 
-	/**
-	 * Show the results of the complete analysis.
-	 */
-	public void showResult() {
-		System.out.println("The key is " + this.key);
-		this.decrypt();
-		System.out.println("The plaintext is:");
-		System.out.println(this.plaintext);
-	}
-
 	/**
 	 * @param args
 	 *            the command line arguments
@@ -270,49 +321,235 @@ public class FrequencyCryptanalysis {
 	 *             Errors in retrieving resources
 	 */
 	public static void main(String[] args) throws IOException, URISyntaxException {
-		String mainPath, plaintextFilePath, ciphertextFilePath, plaintext, ciphertext;
-		FrequencyAnalyser frequencyAnalyser;
+		String mainPath, plaintextFilePath, ciphertextFilePath, modelFilePath, ciphertext, plaintext;
+		int key;
+		LanguageModel model;
 		FrequencyTable frequencyTable;
 		FrequencyCryptanalysis cryptanalysis;
 		File solutionDirectory;
 		String solutionFrequencyFilePath, solutionKeyFilePath, solutionPlaintextFilePath;
 
-		// Add argument -i at run to enable interactive mode (and disable
-		// automatic mode)
-		if (0 < args.length && args[0].equals("-i")) {
-			cryptanalysis = new FrequencyCryptanalysis(INTERACTIVE);
-		} else {
-			cryptanalysis = new FrequencyCryptanalysis(AUTOMATIC);
-		}
-
 		// Get resources
 		mainPath = Paths.get(FrequencyCryptanalysis.class.getResource("/").toURI()).toString();
 		plaintextFilePath = mainPath + "/res/pg1661.txt";
 		ciphertextFilePath = mainPath + "/res/Exercise1Ciphertext.txt";
+		modelFilePath = mainPath + "/res/english.model";
 		solutionDirectory = new File(mainPath + "/solution1");
 		solutionFrequencyFilePath = solutionDirectory + "/frequency.txt";
 		solutionKeyFilePath = solutionDirectory + "/key.txt";
 		solutionPlaintextFilePath = solutionDirectory + "/plaintext.txt";
 
-		// Analyse the readable text
-		plaintext = Util.readFileToBuffer(plaintextFilePath);
-		frequencyAnalyser = new FrequencyAnalyser();
-		frequencyAnalyser.setText(plaintext);
-		frequencyTable = frequencyAnalyser.analyse();
+		// Load the model of the readable text, which is only analysed the
+		// first time, and use it to crack the ciphertext
+		model = LanguageModel.loadOrBuild(Paths.get(modelFilePath), Paths.get(plaintextFilePath));
+		frequencyTable = model.getFrequencyTable();
 		frequencyTable.print();
+		cryptanalysis = new FrequencyCryptanalysis(model);
 
 		// Crack the ciphertext
 		ciphertext = Util.readFileToBuffer(ciphertextFilePath);
-		cryptanalysis.setCiphertext(ciphertext);
-		cryptanalysis.cryptanalysis();
-		cryptanalysis.showResult();
+		key = cryptanalysis.cryptanalysis(ciphertext).getKey();
+
+		// Add argument -i at run to enable interactive mode, that is with
+		// manual tunes of the key
+		if (InteractiveCryptanalysis.isInteractive(args)) {
+			key = InteractiveCryptanalysis.adjustKey(ciphertext, key);
+		}
+		plaintext = decrypt(ciphertext, key);
+		InteractiveCryptanalysis.showResult(key, plaintext);
 
 		// Write solution in res path
 		if (!solutionDirectory.exists()) {
 			solutionDirectory.mkdir();
 		}
 		Util.printBufferToFile(frequencyTable.toString(), solutionFrequencyFilePath);
-		Util.printBufferToFile(Integer.toString(cryptanalysis.key), solutionKeyFilePath);
-		Util.printBufferToFile(cryptanalysis.plaintext, solutionPlaintextFilePath);
+		Util.printBufferToFile(Integer.toString(key), solutionKeyFilePath);
+		Util.printBufferToFile(plaintext, solutionPlaintextFilePath);
+	}
+
+	/**
+	 * The result of a cryptanalysis: the key, how it was scored and how long
+	 * it took to find it. The plaintext is only decrypted the first time it
+	 * is asked for.
+	 */
+	public static final class Result {
+
+		/**
+		 * The key found
+		 */
+		private final int key;
+
+		/**
+		 * The chi squared of the letters of the plaintext
+		 */
+		private final double chiSquared;
+
+		/**
+		 * The fitness per letter of the quadgrams of the beginning of the
+		 * plaintext, or NaN if there is no quadgram scorer or no quadgram
+		 */
+		private final double fitness;
+
+		/**
+		 * The number of letters of the ciphertext read
+		 */
+		private final long lettersRead;
+
+		/**
+		 * The time taken to find the key, in nanoseconds
+		 */
+		private final long elapsedTime;
+
+		/**
+		 * The decryption of the ciphertext with a key
+		 */
+		private final IntFunction<String> decryption;
+
+		/**
+		 * The plaintext, once decrypted
+		 */
+		private volatile String plaintext;
+
+		Result(int key, double chiSquared, double fitness, long lettersRead, long elapsedTime,
+				IntFunction<String> decryption) {
+			this.key = key;
+			this.chiSquared = chiSquared;
+			this.fitness = fitness;
+			this.lettersRead = lettersRead;
+			this.elapsedTime = elapsedTime;
+			this.decryption = decryption;
+		}
+
+		/**
+		 * Get the key found.
+		 *
+		 * @return the key, between 0 and 25
+		 */
+		public int getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the plaintext, i.e. the ciphertext decrypted with the key found.
+		 *
+		 * @return the plaintext
+		 */
+		public String getPlaintext() {
+			String decrypted = plaintext;
+
+			if (decrypted == null) {
+				decrypted = decryption.apply(key);
+				plaintext = decrypted;
+			}
+
+			return decrypted;
+		}
+
+		/**
+		 * Get the chi squared of the letters of the plaintext against the
+		 * frequencies of the letters of the language.
+		 *
+		 * @return the chi squared, the lower the better
+		 */
+		public double getChiSquared() {
+			return chiSquared;
+		}
+
+		/**
+		 * Get how well the quadgrams of the beginning of the plaintext fit the
+		 * language, per letter.
+		 *
+		 * @return the fitness, the higher the better, or NaN if there is no
+		 *         quadgram scorer or no quadgram
+		 */
+		public double getFitness() {
+			return fitness;
+		}
+
+		/**
+		 * Get the number of letters of the ciphertext read.
+		 *
+		 * @return the number of letters
+		 */
+		public long getLettersRead() {
+			return lettersRead;
+		}
+
+		/**
+		 * Get the time taken by the cryptanalysis, without decrypting the
+		 * plaintext.
+		 *
+		 * @return the time, in nanoseconds
+		 */
+		public long getElapsedTime() {
+			return elapsedTime;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("key %d (chi squared %.1f, fitness %.3f, %d letters read, %.1f ms)", key, chiSquared,
+					fitness, lettersRead, elapsedTime / 1e6);
+		}
+	}
+
+	/**
+	 * The result of the sampling cryptanalysis: the key, how likely it is and
+	 * how many letters it took to find it.
+	 */
+	public static final class KeyEstimate {
+
+		/**
+		 * The key found
+		 */
+		private final int key;
+
+		/**
+		 * The posterior probability of the key
+		 */
+		private final double confidence;
+
+		/**
+		 * The number of letters of the ciphertext read
+		 */
+		private final int lettersConsumed;
+
+		KeyEstimate(int key, double confidence, int lettersConsumed) {
+			this.key = key;
+			this.confidence = confidence;
+			this.lettersConsumed = lettersConsumed;
+		}
+
+		/**
+		 * Get the key found.
+		 *
+		 * @return the key, between 0 and 25
+		 */
+		public int getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the posterior probability of the key, given the letters read and
+		 * a uniform prior on the keys.
+		 *
+		 * @return the confidence, between 0 and 1
+		 */
+		public double getConfidence() {
+			return confidence;
+		}
+
+		/**
+		 * Get the number of letters of the ciphertext read to find the key.
+		 *
+		 * @return the number of letters
+		 */
+		public int getLettersConsumed() {
+			return lettersConsumed;
+		}
+
+		@Override
+		public String toString() {
+			return "key " + key + " (confidence " + confidence + ", " + lettersConsumed + " letters)";
+		}
 	}
 }
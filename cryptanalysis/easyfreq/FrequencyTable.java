@@ -1,6 +1,8 @@
 package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.io.UncheckedIOException;
 import java.util.Arrays;
 
 /**
@@ -71,7 +73,43 @@ public class FrequencyTable {
      * that has not been set.
      */
     public void print() {
-        System.out.print(this);
+        print(System.out);
+    }
+
+    /**
+     * Print out the current frequency table to a stream, as {@link #print()}
+     * does to the standard output.
+     *
+     * @param out the stream to print to
+     */
+    public void print(PrintStream out) {
+        try {
+            appendTo(out);
+        } catch (IOException e) {
+            // a print stream never throws, it sets its error flag instead
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Write the current frequency table to a character sink, one line
+     * "(letter, frequency)" per letter, with NA for any frequency entry that
+     * has not been set. The output is streamed: no string of the whole table
+     * is built.
+     *
+     * @param <A> the type of the sink
+     * @param out the sink to write to, e.g. a writer or a string builder
+     * @return the sink
+     * @throws IOException something goes wrong writing to the sink
+     */
+    public <A extends Appendable> A appendTo(A out) throws IOException {
+        for (int i = 0; i < 26; i++) {
+            out.append('(').append((char) (Util.OFFSET + i)).append(", ");
+            out.append(isFrequencyIncomplete(table[i]) ? "NA" : String.valueOf(table[i]));
+            out.append(")\n");
+        }
+
+        return out;
     }
 
     /**
@@ -177,14 +215,12 @@ public class FrequencyTable {
 
     @Override
     public String toString() {
-        String res = "";
-        
-        for (int i = 0; i < 26; i++) {
-            char letter = (char) (Util.OFFSET + i);
-            res += "(" + letter + ", " + ((table[i] < 0.0d) ? "NA" : table[i]) + ")\n";
+        try {
+            return appendTo(new StringBuilder(26 * 28)).toString();
+        } catch (IOException e) {
+            // a string builder never throws
+            throw new UncheckedIOException(e);
         }
-        
-        return res;
     }
 
 }
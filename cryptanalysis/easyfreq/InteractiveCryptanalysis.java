@@ -0,0 +1,209 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+/**
+ * This class is the front end of the cryptanalyses on the console: it lets the
+ * user see the plaintext and tune the key found by {@link FrequencyCryptanalysis}
+ * or {@link VigenereCryptanalysis} by hand. The cryptanalyses themselves never
+ * read the standard input, so that they can run unattended and from many
+ * threads at once.
+ *
+ * @author Oana Ivanovici
+ */
+public class InteractiveCryptanalysis {
+
+	/**
+	 * The command line argument which enables the interactive mode, that is
+	 * with manual tunes of the key.
+	 */
+	public static final String INTERACTIVE_ARGUMENT = "-i";
+
+	/**
+	 * This class only has static methods.
+	 */
+	private InteractiveCryptanalysis() {
+	}
+
+	/**
+	 * Tell whether the command line arguments ask for the interactive mode.
+	 *
+	 * @param args
+	 *            the command line arguments
+	 * @return <code>true</code> if the first argument is -i
+	 */
+	public static boolean isInteractive(String[] args) {
+		return 0 < args.length && args[0].equals(INTERACTIVE_ARGUMENT);
+	}
+
+	/**
+	 * Let the user see the plaintext and the key of a shift cipher, and change
+	 * the key, until they want to stop.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext
+	 * @param key
+	 *            the key found by the cryptanalysis, between 0 and 25
+	 * @return the key, as adjusted by the user
+	 */
+	public static int adjustKey(CharSequence ciphertext, int key) {
+		do {
+			if (ask("Do you want to see the plaintext (Y/N)? ")) {
+				System.out.println(FrequencyCryptanalysis.decrypt(ciphertext, key));
+			}
+
+			if (ask("Do you want to see the key (Y/N)? ")) {
+				System.out.println(key);
+			}
+
+			if (ask("Do you want to change the key (Y/N)? ")) {
+				key = manualAdjustment(key);
+			}
+		} while (!ask("Do you want to stop (Y/N)? "));
+
+		return key;
+	}
+
+	/**
+	 * Let the user see the plaintext and the key of a Vigen&egrave;re cipher,
+	 * and change the key, until they want to stop.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext
+	 * @param key
+	 *            the key found by the cryptanalysis
+	 * @return the key, as adjusted by the user
+	 */
+	public static String adjustKey(CharSequence ciphertext, String key) {
+		StringBuilder adjustedKey = new StringBuilder(key);
+
+		do {
+			if (ask("Do you want to see the plaintext (Y/N)? ")) {
+				System.out.println(VigenereCipher.decrypt(ciphertext.toString(), adjustedKey.toString()));
+			}
+
+			if (ask("Do you want to see the key (Y/N)? ")) {
+				System.out.println(adjustedKey);
+			}
+
+			if (ask("Do you want to change the key (Y/N)? ")) {
+				manualAdjustment(adjustedKey);
+			}
+		} while (!ask("Do you want to stop (Y/N)? "));
+
+		return adjustedKey.toString();
+	}
+
+	/**
+	 * Show the results of the complete analysis.
+	 *
+	 * @param key
+	 *            the key
+	 * @param plaintext
+	 *            the plaintext
+	 */
+	public static void showResult(Object key, String plaintext) {
+		System.out.println("The key is " + key);
+		System.out.println("The plaintext is:");
+		System.out.println(plaintext);
+	}
+
+	/**
+	 * Ask the user a yes or no question until they answer Y or N.
+	 *
+	 * @param question
+	 *            the question
+	 * @return <code>true</code> if the answer is yes
+	 */
+	private static boolean ask(String question) {
+		String answer;
+
+		do {
+			System.out.println(question);
+			answer = Util.reader.next().toUpperCase();
+		} while (!(answer.equals("Y") || answer.equals("N")));
+
+		return answer.equals("Y");
+	}
+
+	/**
+	 * This method allows you to manually set the key of a shift cipher.
+	 *
+	 * @param key
+	 *            the current key
+	 * @return the key entered, or the current key if it is invalid
+	 */
+	private static int manualAdjustment(int key) {
+		int i;
+
+		System.out.println("Enter the key (0-25): ");
+		i = Util.reader.nextInt(); // Scans the next token of the input as an
+									// int.
+		if (i >= 0 && i <= 25) {
+			System.out.println("The key is set to " + i);
+			return i;
+		}
+
+		System.out.println("The key is invalid (must be an integer between 0 and 25 included).");
+		return key;
+	}
+
+	/**
+	 * This method allows you to manually insert, replace or delete a letter of
+	 * the key of a Vigen&egrave;re cipher.
+	 *
+	 * @param key
+	 *            the key, which is changed in place
+	 */
+	private static void manualAdjustment(StringBuilder key) {
+		int answer;
+		int index;
+		char letter;
+
+		do {
+			System.out.println("How do you want to change the key (1: insert, 2:replace, 3:delete, 4:nothing)? ");
+			answer = Util.reader.nextInt();
+		} while (answer < 1 || answer > 4);
+
+		switch (answer) {
+		case 1:
+			System.out.println("Enter the index where you want to insert the key charater");
+			index = Util.reader.nextInt();
+			System.out.println("Enter the letter you want to insert");
+			letter = Util.reader.next().charAt(0);
+			if (index < 0 || index > key.length()) {
+				System.out.println("Index out of range");
+			} else if (!Util.isValidLetter(letter)) {
+				System.out.println("key character must be a letter");
+			} else {
+				key.insert(index, letter);
+			}
+			break;
+
+		case 2:
+			System.out.println("Enter the index of the character you want to replace");
+			index = Util.reader.nextInt();
+			System.out.println("Enter the new character");
+			letter = Util.reader.next().charAt(0);
+			if (index < 0 || index >= key.length()) {
+				System.out.println("Index out of range");
+			} else if (!Util.isValidLetter(letter)) {
+				System.out.println("key character must be a letter");
+			} else {
+				key.setCharAt(index, letter);
+			}
+			break;
+
+		case 3:
+			System.out.println("Enter the index of the character you want to delete");
+			index = Util.reader.nextInt();
+			if (index < 0 || index >= key.length()) {
+				System.out.println("Index out of range");
+			} else {
+				key.deleteCharAt(index);
+			}
+			break;
+
+		default:
+			break;
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.Arrays;
+
+/**
+ * This class finds the likely key lengths of a Vigen&egrave;re ciphertext with
+ * the Kasiski examination.
+ *
+ * <p>
+ * When the same n-gram of the plaintext is encrypted with the same letters of
+ * the key, the same n-gram appears in the ciphertext, at a distance multiple
+ * of the key length. The examination finds every repeated n-gram of the
+ * ciphertext (letters only), and counts, for each candidate key length, how
+ * many of the distances between consecutive occurrences it divides: this is
+ * the histogram of the common divisors of the distances. Distances between
+ * repeats due to chance are divided by a length f about once in f, so each
+ * count is compared with that expectation, and the key lengths are ranked by
+ * their excess of divisible distances. The true key length has a larger
+ * excess than both its divisors and its multiples.
+ *
+ * <p>
+ * The n-grams are indexed by their value in base 26, computed with a rolling
+ * update, in a hash table of primitive arrays mapping each n-gram to its last
+ * position. The distances are counted in a single pass over the ciphertext,
+ * then each key length adds up the counts of its multiples.
+ *
+ * @author Oana Ivanovici
+ */
+public class KasiskiExamination {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The length of the repeated sequences looked for by default.
+	 */
+	public static final int DEFAULT_NGRAM_LENGTH = 4;
+
+	/**
+	 * The longest n-gram whose value in base 26 fits in a long.
+	 */
+	private static final int MAXIMUM_NGRAM_LENGTH = 13;
+
+	/**
+	 * The longest distance between two occurrences of an n-gram counted in an
+	 * array at first, and at most; the array grows up to the longest distance
+	 * found, and the divisors of longer distances are enumerated one by one.
+	 */
+	private static final int INITIAL_COUNTED_DISTANCE = 1 << 10;
+
+	private static final int MAXIMUM_COUNTED_DISTANCE = 1 << 20;
+
+	/**
+	 * The smallest key length considered
+	 */
+	private static final int MINIMUM_KEY_LENGTH = 2;
+
+	/**
+	 * The length of the repeated sequences looked for
+	 */
+	private final int ngramLength;
+
+	/**
+	 * The largest key length considered
+	 */
+	private final int maxKeyLength;
+
+	/**
+	 * Create an examination of the key lengths from 2 to maxKeyLength with
+	 * repeated n-grams of the default length.
+	 *
+	 * @param maxKeyLength
+	 *            the largest key length considered
+	 */
+	public KasiskiExamination(int maxKeyLength) {
+		this(DEFAULT_NGRAM_LENGTH, maxKeyLength);
+	}
+
+	/**
+	 * Create an examination of the key lengths from 2 to maxKeyLength.
+	 *
+	 * @param ngramLength
+	 *            the length of the repeated sequences looked for, between 2
+	 *            and 13
+	 * @param maxKeyLength
+	 *            the largest key length considered
+	 */
+	public KasiskiExamination(int ngramLength, int maxKeyLength) {
+		if (ngramLength < 2 || ngramLength > MAXIMUM_NGRAM_LENGTH) {
+			throw new IllegalArgumentException("N-gram length must be between 2 and " + MAXIMUM_NGRAM_LENGTH);
+		} else if (maxKeyLength < MINIMUM_KEY_LENGTH) {
+			throw new IllegalArgumentException("Maximum key length must be at least " + MINIMUM_KEY_LENGTH);
+		}
+
+		this.ngramLength = ngramLength;
+		this.maxKeyLength = maxKeyLength;
+	}
+
+	/**
+	 * This method counts, for each candidate key length, the distances between
+	 * consecutive occurrences of the same n-gram that it divides.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters (see
+	 *            {@link Util#toLetterIndexes(CharSequence)})
+	 * @return the number of distances divided by each key length, at the index
+	 *         of the key length; the element at index 0 is the total number
+	 *         of distances
+	 */
+	public long[] countDivisibleDistances(byte[] letters) {
+		long[] divisibleDistances = new long[maxKeyLength + 1];
+		// the number of times each distance occurs, for the distances short
+		// enough to be counted in an array, which only grows as far as the
+		// longest of them
+		int[] occurrencesOfDistance = new int[INITIAL_COUNTED_DISTANCE + 1];
+		NGramPositions lastPositions = new NGramPositions();
+		long power = 1;
+		long ngram = 0;
+
+		for (int i = 1; i < ngramLength; i++) {
+			power *= NUMBER_OF_LETTERS_IN_ALPHABET;
+		}
+
+		for (int i = 0; i < letters.length; i++) {
+			// drop the first letter of the previous n-gram and append the new
+			// one
+			if (i >= ngramLength) {
+				ngram -= letters[i - ngramLength] * power;
+			}
+			ngram = ngram * NUMBER_OF_LETTERS_IN_ALPHABET + letters[i];
+
+			if (i >= ngramLength - 1) {
+				int lastPosition = lastPositions.put(ngram, i);
+
+				if (lastPosition >= 0) {
+					int distance = i - lastPosition;
+
+					divisibleDistances[0] += 1;
+					if (distance <= MAXIMUM_COUNTED_DISTANCE) {
+						if (distance >= occurrencesOfDistance.length) {
+							int longest = Math.max(2 * occurrencesOfDistance.length, distance);
+							occurrencesOfDistance = Arrays.copyOf(occurrencesOfDistance,
+									Math.min(MAXIMUM_COUNTED_DISTANCE, longest) + 1);
+						}
+						occurrencesOfDistance[distance] += 1;
+					} else {
+						countDivisors(distance, divisibleDistances);
+					}
+				}
+			}
+		}
+
+		// a key length divides the distances that are its multiples: sieve
+		// the counted distances, in (length of the array) * ln(maxKeyLength)
+		for (int f = MINIMUM_KEY_LENGTH; f <= maxKeyLength; f++) {
+			for (int multiple = f; multiple < occurrencesOfDistance.length; multiple += f) {
+				divisibleDistances[f] += occurrencesOfDistance[multiple];
+			}
+		}
+
+		return divisibleDistances;
+	}
+
+	/**
+	 * This method ranks the candidate key lengths from the most to the least
+	 * likely. Only the key lengths dividing more distances than expected by
+	 * chance are returned.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @return the likely key lengths, the most likely first
+	 */
+	public int[] rankKeyLengths(byte[] letters) {
+		long[] divisibleDistances = countDivisibleDistances(letters);
+		double[] excess = new double[maxKeyLength + 1];
+		Integer[] keyLengths = new Integer[maxKeyLength + 1 - MINIMUM_KEY_LENGTH];
+		int numberOfCandidates = 0;
+
+		for (int f = MINIMUM_KEY_LENGTH; f <= maxKeyLength; f++) {
+			excess[f] = divisibleDistances[f] - divisibleDistances[0] / (double) f;
+
+			if (excess[f] > 0.0) {
+				keyLengths[numberOfCandidates++] = f;
+			}
+		}
+
+		Integer[] candidates = Arrays.copyOf(keyLengths, numberOfCandidates);
+		Arrays.sort(candidates, (a, b) -> Double.compare(excess[b], excess[a]));
+
+		int[] ranking = new int[numberOfCandidates];
+		for (int i = 0; i < numberOfCandidates; i++) {
+			ranking[i] = candidates[i];
+		}
+
+		return ranking;
+	}
+
+	/**
+	 * Add one to the count of each divisor of a long distance between 2 and
+	 * the largest key length. The divisors are enumerated in pairs up to the
+	 * square root of the distance, or directly if the largest key length is
+	 * smaller.
+	 *
+	 * @param distance
+	 *            the distance between two occurrences of an n-gram
+	 * @param divisibleDistances
+	 *            the counts to update
+	 */
+	private void countDivisors(int distance, long[] divisibleDistances) {
+		if ((long) maxKeyLength * maxKeyLength <= distance) {
+			for (int f = MINIMUM_KEY_LENGTH; f <= maxKeyLength; f++) {
+				if (distance % f == 0) {
+					divisibleDistances[f] += 1;
+				}
+			}
+			return;
+		}
+
+		for (int f = 1; f * f <= distance; f++) {
+			if (distance % f == 0) {
+				int pairedDivisor = distance / f;
+
+				if (f >= MINIMUM_KEY_LENGTH) {
+					divisibleDistances[f] += 1;
+				}
+				if (pairedDivisor != f && pairedDivisor <= maxKeyLength) {
+					divisibleDistances[pairedDivisor] += 1;
+				}
+			}
+		}
+	}
+
+	/**
+	 * A hash table with open addressing mapping the value of an n-gram to the
+	 * position where it was last seen, in two primitive arrays so that no
+	 * object is created per n-gram.
+	 */
+	private static class NGramPositions {
+
+		private static final long EMPTY = -1L;
+
+		private static final int INITIAL_CAPACITY = 1 << 12;
+
+		private long[] ngrams = newKeys(INITIAL_CAPACITY);
+
+		private int[] positions = new int[INITIAL_CAPACITY];
+
+		private int size;
+
+		/**
+		 * Record the position of an n-gram.
+		 *
+		 * @param ngram
+		 *            the value of the n-gram
+		 * @param position
+		 *            the position where it was seen
+		 * @return the previous position of the n-gram, or -1 if it was never
+		 *         seen
+		 */
+		int put(long ngram, int position) {
+			int slot = find(ngrams, ngram);
+
+			if (ngrams[slot] == ngram) {
+				int lastPosition = positions[slot];
+				positions[slot] = position;
+				return lastPosition;
+			}
+
+			ngrams[slot] = ngram;
+			positions[slot] = position;
+			size += 1;
+
+			// keep the table at most half full
+			if (2 * size > ngrams.length) {
+				grow();
+			}
+
+			return -1;
+		}
+
+		private void grow() {
+			long[] oldNgrams = ngrams;
+			int[] oldPositions = positions;
+
+			ngrams = newKeys(2 * oldNgrams.length);
+			positions = new int[2 * oldPositions.length];
+
+			for (int i = 0; i < oldNgrams.length; i++) {
+				if (oldNgrams[i] != EMPTY) {
+					int slot = find(ngrams, oldNgrams[i]);
+					ngrams[slot] = oldNgrams[i];
+					positions[slot] = oldPositions[i];
+				}
+			}
+		}
+
+		/**
+		 * Find the slot of an n-gram, or the empty slot where it would go.
+		 */
+		private static int find(long[] ngrams, long ngram) {
+			int mask = ngrams.length - 1;
+			int slot = (int) (mix(ngram) & mask);
+
+			while (ngrams[slot] != EMPTY && ngrams[slot] != ngram) {
+				slot = (slot + 1) & mask;
+			}
+
+			return slot;
+		}
+
+		/**
+		 * Spread the bits of the value of an n-gram, whose low bits alone
+		 * would cluster in the table.
+		 */
+		private static long mix(long value) {
+			value *= 0x9E3779B97F4A7C15L;
+			return value ^ (value >>> 32);
+		}
+
+		private static long[] newKeys(int capacity) {
+			long[] keys = new long[capacity];
+			Arrays.fill(keys, EMPTY);
+			return keys;
+		}
+	}
+}
@@ -0,0 +1,508 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * An instance of this class estimates the key length of a Vigen&egrave;re
+ * ciphertext from samples of it, without reading the whole of it.
+ *
+ * <p>
+ * The ciphertext is sampled in blocks of consecutive letters spread evenly
+ * over it. Within a block, the columns of a key length are the letters whose
+ * position in the block modulo the key length are the same, so the pairs of
+ * letters in a column were encrypted with the same letter of the key whatever
+ * the position of the block in the text: the coincidences of the blocks can
+ * be pooled (see {@link ColumnHistogram#countCoincidences(int)}). For the key
+ * length and its multiples the pooled index of coincidence is the one of the
+ * language, around 0.067 for English, and for the other lengths it is lower,
+ * down to 0.038.
+ *
+ * <p>
+ * The number of blocks doubles, new blocks falling between the ones before,
+ * until the key length chosen is the same for two samples in a row and is
+ * significantly better than the best other length: the blocks are taken as
+ * independent replicates, and the difference between the index of
+ * coincidence of the key length and of its rival in each block gives a
+ * one-sided confidence that the key length is the better one. The time taken
+ * then depends on how hard the ciphertext is, not on its length.
+ *
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Oana Ivanovici
+ */
+public class KeyLengthEstimator {
+
+	/**
+	 * The index of coincidence of uniformly random letters
+	 */
+	private static final double RANDOM_INDEX_OF_COINCIDENCE = 1.0 / 26.0;
+
+	/**
+	 * The share of the excess over random of the index of coincidence of the
+	 * best length that a divisor must reach to be chosen instead
+	 */
+	private static final double DIVISOR_SHARE = 0.9;
+
+	/**
+	 * The number of letters of a block, at least
+	 */
+	private static final int MINIMUM_BLOCK_LENGTH = 2048;
+
+	/**
+	 * The number of letters per column of the longest key length in a block,
+	 * at least
+	 */
+	private static final int LETTERS_PER_COLUMN = 32;
+
+	/**
+	 * The number of blocks of the first sample
+	 */
+	private static final int INITIAL_NUMBER_OF_BLOCKS = 4;
+
+	/**
+	 * The default confidence that the key length is better than its rival
+	 */
+	public static final double DEFAULT_CONFIDENCE = 0.999;
+
+	/**
+	 * The longest key length considered
+	 */
+	private final int maxKeyLength;
+
+	/**
+	 * The confidence to reach before stopping
+	 */
+	private final double confidence;
+
+	/**
+	 * The number of letters of a block
+	 */
+	private final int blockLength;
+
+	/**
+	 * Create an estimator of key lengths from 1 to maxKeyLength, with the
+	 * default confidence.
+	 *
+	 * @param maxKeyLength
+	 *            the longest key length considered
+	 */
+	public KeyLengthEstimator(int maxKeyLength) {
+		this(maxKeyLength, DEFAULT_CONFIDENCE);
+	}
+
+	/**
+	 * Create an estimator of key lengths from 1 to maxKeyLength.
+	 *
+	 * @param maxKeyLength
+	 *            the longest key length considered
+	 * @param confidence
+	 *            the confidence that the key length chosen is better than any
+	 *            other (but its multiples) to reach before stopping, between 0
+	 *            and 1 excluded
+	 */
+	public KeyLengthEstimator(int maxKeyLength, double confidence) {
+		if (maxKeyLength < 2) {
+			throw new IllegalArgumentException("Maximum key length must be at least 2");
+		} else if (!(confidence > 0.0 && confidence < 1.0)) {
+			throw new IllegalArgumentException("Confidence must be between 0 and 1 excluded");
+		}
+
+		this.maxKeyLength = maxKeyLength;
+		this.confidence = confidence;
+		this.blockLength = Math.max(MINIMUM_BLOCK_LENGTH, LETTERS_PER_COLUMN * maxKeyLength);
+	}
+
+	/**
+	 * Estimate the key length of a ciphertext given as indexes of its letters.
+	 *
+	 * @param letters
+	 *            the indexes of the letters, all between 0 and 25
+	 * @return the estimate
+	 */
+	public Estimate estimate(byte[] letters) {
+		return estimate(letters.length, (start, end, block) -> {
+			System.arraycopy(letters, (int) start, block, 0, (int) (end - start));
+			return (int) (end - start);
+		});
+	}
+
+	/**
+	 * Estimate the key length of a ciphertext, reading only the blocks sampled
+	 * and skipping the characters that are not letters.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext
+	 * @return the estimate
+	 */
+	public Estimate estimate(CharSequence ciphertext) {
+		// blocks are ranges of characters, and hold the letters of the range;
+		// the letters of a block are consecutive in the ciphertext as the key
+		// only moves on letters
+		return estimate(ciphertext.length(), (start, end, block) -> {
+			int length = 0;
+
+			for (int i = (int) start; i < end; i++) {
+				int indexOfLetter = Util.letterIndex(ciphertext.charAt(i));
+
+				if (indexOfLetter != Util.NOT_A_LETTER) {
+					block[length++] = (byte) indexOfLetter;
+				}
+			}
+
+			return length;
+		});
+	}
+
+	/**
+	 * Estimate the key length of a text read by blocks.
+	 *
+	 * @param size
+	 *            the size of the text, in the unit of the positions of the
+	 *            blocks
+	 * @param reader
+	 *            the reader of the blocks
+	 * @return the estimate
+	 */
+	private Estimate estimate(long size, BlockReader reader) {
+		ColumnHistogram columnHistogram = new ColumnHistogram(maxKeyLength);
+		byte[] block = new byte[blockLength];
+		long[] coincidences = new long[maxKeyLength + 1];
+		long[] pairs = new long[maxKeyLength + 1];
+		List<double[]> indexesOfBlocks = new ArrayList<>();
+		long lettersRead = 0;
+		int previousKeyLength = 0;
+		Estimate estimate = null;
+
+		for (int numberOfBlocks = INITIAL_NUMBER_OF_BLOCKS;; numberOfBlocks *= 2) {
+			// when the blocks would cover the text, read the whole of it
+			// instead, once and for all
+			boolean whole = (long) numberOfBlocks * blockLength >= size;
+			if (whole) {
+				Arrays.fill(coincidences, 0);
+				Arrays.fill(pairs, 0);
+				indexesOfBlocks.clear();
+			}
+
+			int first = whole ? 0 : indexesOfBlocks.size();
+			int last = whole ? (int) ((size + blockLength - 1) / blockLength) : numberOfBlocks;
+			for (int k = first; k < last; k++) {
+				long start = whole ? (long) k * blockLength : blockStart(k, size);
+				int length = reader.read(start, Math.min(size, start + blockLength), block);
+
+				columnHistogram.clear();
+				columnHistogram.add(block, 0, length);
+				lettersRead += length;
+
+				double[] indexes = new double[maxKeyLength + 1];
+				for (int h = 1; h <= maxKeyLength; h++) {
+					long blockCoincidences = columnHistogram.countCoincidences(h);
+					long blockPairs = columnHistogram.countPairs(h);
+
+					coincidences[h] += blockCoincidences;
+					pairs[h] += blockPairs;
+					indexes[h] = blockPairs == 0 ? 0.0 : blockCoincidences / (double) blockPairs;
+				}
+				indexesOfBlocks.add(indexes);
+			}
+
+			estimate = choose(coincidences, pairs, indexesOfBlocks, lettersRead);
+			if (whole || (estimate.keyLength == previousKeyLength && estimate.confidence >= confidence)) {
+				return estimate;
+			}
+			previousKeyLength = estimate.keyLength;
+		}
+	}
+
+	/**
+	 * Choose the key length from the coincidences counted so far.
+	 *
+	 * @param coincidences
+	 *            the pairs of equal letters in the same column, for each key
+	 *            length
+	 * @param pairs
+	 *            the pairs of letters in the same column, for each key length
+	 * @param indexesOfBlocks
+	 *            the index of coincidence of each block, for each key length
+	 * @param lettersRead
+	 *            the number of letters read
+	 * @return the estimate
+	 */
+	private Estimate choose(long[] coincidences, long[] pairs, List<double[]> indexesOfBlocks, long lettersRead) {
+		double[] indexes = new double[maxKeyLength + 1];
+		boolean counted = false;
+		int best = 1;
+
+		for (int h = 1; h <= maxKeyLength; h++) {
+			counted |= pairs[h] != 0;
+			indexes[h] = pairs[h] == 0 ? 0.0 : coincidences[h] / (double) pairs[h];
+			if (indexes[h] > indexes[best]) {
+				best = h;
+			}
+		}
+
+		// the multiples of the key length are as good as it: take the
+		// shortest divisor of the best length that is nearly as good
+		int keyLength = best;
+		for (int d = 1; d < best; d++) {
+			if (best % d == 0 && indexes[d] - RANDOM_INDEX_OF_COINCIDENCE >= DIVISOR_SHARE
+					* (indexes[best] - RANDOM_INDEX_OF_COINCIDENCE)) {
+				keyLength = d;
+				break;
+			}
+		}
+
+		// the rival is the best length that is not a multiple of it; as every
+		// length is a multiple of 1, 1 is instead tested against the best
+		// other length the way it was chosen, as nearly as good as it
+		int rival = 0;
+		for (int h = 1; h <= maxKeyLength; h++) {
+			if (h != keyLength && (keyLength == 1 || h % keyLength != 0)
+					&& (rival == 0 || indexes[h] > indexes[rival])) {
+				rival = h;
+			}
+		}
+		double share = keyLength == 1 ? DIVISOR_SHARE : 1.0;
+
+		// without a pair of letters in a column, nothing tells the lengths
+		// apart
+		return new Estimate(keyLength, indexes,
+				counted ? confidence(indexesOfBlocks, keyLength, rival, share) : 0.0, lettersRead);
+	}
+
+	/**
+	 * Calculate the confidence that the excess over random of the index of
+	 * coincidence of a key length is higher than a share of the one of
+	 * another, from the paired differences in each block, with the normal
+	 * approximation.
+	 *
+	 * @param indexesOfBlocks
+	 *            the index of coincidence of each block, for each key length
+	 * @param keyLength
+	 *            the key length
+	 * @param rival
+	 *            the other key length
+	 * @param share
+	 *            the share of the excess of the other key length, 1 to
+	 *            compare the indexes themselves
+	 * @return the one-sided confidence, between 0 and 1
+	 */
+	private static double confidence(List<double[]> indexesOfBlocks, int keyLength, int rival, double share) {
+		int n = indexesOfBlocks.size();
+		if (n < 2) {
+			return 0.0;
+		}
+
+		double mean = 0.0;
+		for (double[] indexes : indexesOfBlocks) {
+			mean += difference(indexes, keyLength, rival, share);
+		}
+		mean /= n;
+
+		double variance = 0.0;
+		for (double[] indexes : indexesOfBlocks) {
+			double deviation = difference(indexes, keyLength, rival, share) - mean;
+			variance += deviation * deviation;
+		}
+		variance /= n - 1;
+
+		if (variance == 0.0) {
+			return mean > 0.0 ? 1.0 : 0.0;
+		}
+
+		return normalDistribution(mean / Math.sqrt(variance / n));
+	}
+
+	/**
+	 * Calculate by how much the excess over random of the index of coincidence
+	 * of a key length exceeds a share of the one of another, in a block.
+	 *
+	 * @param indexes
+	 *            the index of coincidence of the block, for each key length
+	 * @param keyLength
+	 *            the key length
+	 * @param rival
+	 *            the other key length
+	 * @param share
+	 *            the share of the excess of the other key length
+	 * @return the difference
+	 */
+	private static double difference(double[] indexes, int keyLength, int rival, double share) {
+		return indexes[keyLength] - RANDOM_INDEX_OF_COINCIDENCE
+				- share * (indexes[rival] - RANDOM_INDEX_OF_COINCIDENCE);
+	}
+
+	/**
+	 * Calculate the cumulative distribution function of the standard normal
+	 * distribution, with a fractional error lower than 1.2e-7.
+	 *
+	 * @param z
+	 *            the value
+	 * @return the probability that a standard normal variable is lower than z
+	 */
+	private static double normalDistribution(double z) {
+		// complementary error function of |z| / sqrt(2) (Numerical Recipes)
+		double x = Math.abs(z) / Math.sqrt(2.0);
+		double t = 1.0 / (1.0 + 0.5 * x);
+		double erfc = t * Math.exp(-x * x - 1.26551223 + t * (1.00002368 + t * (0.37409196 + t * (0.09678418
+				+ t * (-0.18628806 + t * (0.27886807 + t * (-1.13520398 + t * (1.48851587 + t * (-0.82215223
+						+ t * 0.17087277)))))))));
+
+		return z >= 0 ? 1.0 - erfc / 2.0 : erfc / 2.0;
+	}
+
+	/**
+	 * Find the position of a block, so that the first 2^k blocks are spread
+	 * evenly over the text whatever k: the fraction of the text before the
+	 * block k is k written in binary backwards after the point (the van der
+	 * Corput sequence), e.g. 0, 1/2, 1/4, 3/4, 1/8...
+	 *
+	 * @param k
+	 *            the index of the block
+	 * @param size
+	 *            the size of the text
+	 * @return the position of the start of the block
+	 */
+	private long blockStart(int k, long size) {
+		double fraction = 0.0;
+		double weight = 0.5;
+
+		for (int bits = k; bits != 0; bits >>>= 1) {
+			if ((bits & 1) != 0) {
+				fraction += weight;
+			}
+			weight /= 2.0;
+		}
+
+		return (long) (fraction * Math.max(0, size - blockLength));
+	}
+
+	/**
+	 * A reader of the letters of a block of a text.
+	 */
+	private interface BlockReader {
+
+		/**
+		 * Read the letters of a block.
+		 *
+		 * @param start
+		 *            the position of the start of the block
+		 * @param end
+		 *            the position after the end of the block, at most the
+		 *            length of a block after its start
+		 * @param block
+		 *            the array to read the indexes of the letters into
+		 * @return the number of letters read
+		 */
+		int read(long start, long end, byte[] block);
+	}
+
+	/**
+	 * The result of an estimation: the key length chosen, the pooled index of
+	 * coincidence of every key length, the confidence in the choice and the
+	 * number of letters read.
+	 */
+	public static final class Estimate {
+
+		/**
+		 * The key length chosen
+		 */
+		private final int keyLength;
+
+		/**
+		 * The pooled index of coincidence of each key length, at its index
+		 */
+		private final double[] indexesOfCoincidence;
+
+		/**
+		 * The confidence that the key length is better than any other but its
+		 * multiples
+		 */
+		private final double confidence;
+
+		/**
+		 * The number of letters read
+		 */
+		private final long lettersRead;
+
+		Estimate(int keyLength, double[] indexesOfCoincidence, double confidence, long lettersRead) {
+			this.keyLength = keyLength;
+			this.indexesOfCoincidence = indexesOfCoincidence;
+			this.confidence = confidence;
+			this.lettersRead = lettersRead;
+		}
+
+		/**
+		 * Get the key length chosen.
+		 *
+		 * @return the key length, 1 if the ciphertext looks like a shift
+		 *         cipher
+		 */
+		public int getKeyLength() {
+			return keyLength;
+		}
+
+		/**
+		 * Get the pooled index of coincidence of the columns of a key length.
+		 *
+		 * @param keyLength
+		 *            the key length, between 1 and the maximum key length
+		 * @return the index of coincidence
+		 */
+		public double getIndexOfCoincidence(int keyLength) {
+			if (keyLength < 1 || keyLength >= indexesOfCoincidence.length) {
+				throw new IllegalArgumentException(
+						"Key length must be between 1 and " + (indexesOfCoincidence.length - 1));
+			}
+
+			return indexesOfCoincidence[keyLength];
+		}
+
+		/**
+		 * Rank the key lengths by their pooled index of coincidence.
+		 *
+		 * @return the key lengths, the highest index of coincidence first
+		 */
+		public int[] getRanking() {
+			Integer[] keyLengths = new Integer[indexesOfCoincidence.length - 1];
+			for (int h = 1; h < indexesOfCoincidence.length; h++) {
+				keyLengths[h - 1] = h;
+			}
+			Arrays.sort(keyLengths, (a, b) -> Double.compare(indexesOfCoincidence[b], indexesOfCoincidence[a]));
+
+			int[] ranking = new int[keyLengths.length];
+			for (int i = 0; i < keyLengths.length; i++) {
+				ranking[i] = keyLengths[i];
+			}
+
+			return ranking;
+		}
+
+		/**
+		 * Get the confidence that the key length is better than any other
+		 * but its multiples.
+		 *
+		 * @return the confidence, between 0 and 1
+		 */
+		public double getConfidence() {
+			return confidence;
+		}
+
+		/**
+		 * Get the number of letters of the ciphertext read, counting again the
+		 * letters of the samples read before the whole of it.
+		 *
+		 * @return the number of letters
+		 */
+		public long getLettersRead() {
+			return lettersRead;
+		}
+
+		@Override
+		public String toString() {
+			return "key length " + keyLength + " (confidence " + confidence + ", " + lettersRead + " letters read)";
+		}
+	}
+}
@@ -0,0 +1,430 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+
+/**
+ * An instance of this class scores every candidate key length of a
+ * Vigen&egrave;re ciphertext by the index of coincidence of its columns, and
+ * ranks them all, rather than stopping at the first one that looks like
+ * English.
+ *
+ * <p>
+ * The candidates are all the key lengths up to a maximum, and any longer key
+ * lengths suggested by other means (e.g. a {@link KasiskiExamination}) with
+ * their divisors and their doubles. Each key length is scored by the index of
+ * coincidence of its columns pooled together, i.e. the share of the pairs of
+ * letters in the same column which are equal: about 0.067 for the true key
+ * length of an English plaintext and its multiples, and 1/26 for the others.
+ * The score is how many standard deviations the equal pairs exceed those of
+ * random letters by, so that long key lengths with few letters per column do
+ * not score well by chance. Only the beginning of the ciphertext is counted,
+ * with enough letters per column for the index to be accurate. The key
+ * lengths are split into ranges with about the same number of columns to
+ * count, which are counted in parallel on a fork/join pool, or in the calling
+ * thread with a parallelism of 1.
+ *
+ * <p>
+ * A multiple of the key length has as high an index of coincidence as the key
+ * length, with a lower score. The ranking also puts a key length after all the
+ * others when one of its divisors keeps most of its excess over random: the
+ * best candidates are then the key length and the other lengths unrelated to
+ * it.
+ *
+ * @author Oana Ivanovici
+ */
+public class KeyLengthScorer {
+
+	/**
+	 * The index of coincidence of uniformly random letters
+	 */
+	private static final double RANDOM_INDEX_OF_COINCIDENCE = 1.0 / 26.0;
+
+
+	/**
+	 * The share of the excess over random of the index of coincidence of a
+	 * key length that a divisor must keep to be ranked before it
+	 */
+	private static final double DIVISOR_SHARE = 0.9;
+
+	/**
+	 * The number of letters per column of the maximum key length, or of a
+	 * longer key length, counted from the beginning of the ciphertext
+	 */
+	private static final int LETTERS_PER_COLUMN = 2000;
+
+	/**
+	 * The largest key length scored in any case
+	 */
+	private final int maxKeyLength;
+
+	/**
+	 * The number of threads the key lengths are counted on
+	 */
+	private final int parallelism;
+
+	/**
+	 * Create a scorer of the key lengths from 1 to a maximum.
+	 *
+	 * @param maxKeyLength
+	 *            the largest key length scored in any case
+	 * @param parallelism
+	 *            the number of threads the key lengths are counted on
+	 */
+	public KeyLengthScorer(int maxKeyLength, int parallelism) {
+		if (maxKeyLength < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Maximum key length and parallelism must be positive");
+		}
+
+		this.maxKeyLength = maxKeyLength;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * This method scores and ranks the key lengths up to the maximum.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters (see
+	 *            {@link Util#toLetterIndexes(CharSequence)})
+	 * @return the candidates, the most likely first
+	 */
+	public List<Candidate> rank(byte[] letters) {
+		return rank(letters, new int[0]);
+	}
+
+	/**
+	 * This method scores and ranks the key lengths up to the maximum, and
+	 * other candidate key lengths with their divisors and their doubles.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters (see
+	 *            {@link Util#toLetterIndexes(CharSequence)})
+	 * @param otherKeyLengths
+	 *            other candidate key lengths, e.g. ranked by
+	 *            {@link KasiskiExamination#rankKeyLengths(byte[])}
+	 * @return the candidates, the most likely first
+	 */
+	public List<Candidate> rank(byte[] letters, int[] otherKeyLengths) {
+		TreeSet<Integer> longerKeyLengths = new TreeSet<>();
+
+		for (int keyLength : otherKeyLengths) {
+			if (keyLength < 1) {
+				throw new IllegalArgumentException("Key lengths must be positive");
+			}
+			for (int d = 1; d <= keyLength; d++) {
+				if (keyLength % d == 0 && d > maxKeyLength) {
+					longerKeyLengths.add(d);
+				}
+			}
+			if (2 * keyLength > maxKeyLength) {
+				longerKeyLengths.add(2 * keyLength);
+			}
+		}
+
+		int longestKeyLength = longerKeyLengths.isEmpty() ? maxKeyLength : longerKeyLengths.last();
+		long[] coincidences = new long[longestKeyLength + 1];
+		long[] pairs = new long[longestKeyLength + 1];
+		score(letters, longerKeyLengths, coincidences, pairs);
+
+		// the significance grows with the number of letters counted, which is
+		// larger for the longer key lengths
+		double[] weights = new double[longestKeyLength + 1];
+		for (int h = 1; h <= longestKeyLength; h++) {
+			if (h <= maxKeyLength || longerKeyLengths.contains(h)) {
+				weights[h] = Math.max(1.0, lettersCounted(letters, maxKeyLength))
+						/ Math.max(1.0, lettersCounted(letters, h));
+			}
+		}
+
+		return rank(coincidences, pairs, weights);
+	}
+
+	/**
+	 * This method scores and ranks the key lengths of a histogram of columns
+	 * from its counts, e.g. of a text which is still being added to.
+	 *
+	 * @param columnHistogram
+	 *            the histogram of the columns of the key lengths
+	 * @return the candidates, the most likely first
+	 */
+	public static List<Candidate> rank(ColumnHistogram columnHistogram) {
+		int longestKeyLength = columnHistogram.getMaxKeyLength();
+		long[] coincidences = new long[longestKeyLength + 1];
+		long[] pairs = new long[longestKeyLength + 1];
+		double[] weights = new double[longestKeyLength + 1];
+
+		for (int h = columnHistogram.getMinKeyLength(); h <= longestKeyLength; h++) {
+			coincidences[h] = columnHistogram.countCoincidences(h);
+			pairs[h] = columnHistogram.countPairs(h);
+			weights[h] = 1.0;
+		}
+
+		return rank(coincidences, pairs, weights);
+	}
+
+	/**
+	 * Score and rank the key lengths from the pairs of letters in their
+	 * columns.
+	 *
+	 * @param coincidences
+	 *            the number of pairs of equal letters of each key length, at
+	 *            its index
+	 * @param pairs
+	 *            the number of pairs of letters of each key length, at its
+	 *            index
+	 * @param weights
+	 *            the factor of the significance of each key length, at its
+	 *            index, or 0 if the key length is not a candidate
+	 * @return the candidates, the most likely first
+	 */
+	private static List<Candidate> rank(long[] coincidences, long[] pairs, double[] weights) {
+		double[] indexes = new double[pairs.length];
+		for (int h = 1; h < pairs.length; h++) {
+			indexes[h] = pairs[h] == 0 ? 0.0 : (double) coincidences[h] / pairs[h];
+		}
+
+		List<Candidate> candidates = new ArrayList<>();
+		for (int h = 1; h < pairs.length; h++) {
+			if (weights[h] > 0.0) {
+				double score = significance(coincidences[h], pairs[h]) * weights[h];
+				candidates.add(new Candidate(h, indexes[h], score, shortestDivisor(indexes, h)));
+			}
+		}
+
+		// the key lengths which cannot be reduced to a divisor first, then
+		// the others, each by decreasing score
+		candidates.sort((a, b) -> a.isReducible() != b.isReducible()
+				? Boolean.compare(a.isReducible(), b.isReducible())
+				: Double.compare(b.score, a.score));
+
+		return candidates;
+	}
+
+	/**
+	 * Count the pairs of letters in the same column and the equal ones of
+	 * every key length up to the maximum and of the longer key lengths, in
+	 * parallel.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param longerKeyLengths
+	 *            the key lengths longer than the maximum to score
+	 * @param coincidences
+	 *            the array to write the number of pairs of equal letters of
+	 *            each key length to, at its index
+	 * @param pairs
+	 *            the array to write the number of pairs of letters of each key
+	 *            length to, at its index
+	 */
+	private void score(byte[] letters, TreeSet<Integer> longerKeyLengths, long[] coincidences, long[] pairs) {
+		List<Callable<Void>> tasks = new ArrayList<>();
+
+		// split the key lengths up to the maximum into ranges with about the
+		// same number of columns, i.e. of counts updated per letter
+		int numberOfLetters = lettersCounted(letters, maxKeyLength);
+		double columnsPerRange = maxKeyLength * (maxKeyLength + 1) / 2.0 / parallelism;
+		int minKeyLength = 1;
+		for (int h = 1; h <= maxKeyLength; h++) {
+			if (h == maxKeyLength || (h * (h + 1) / 2.0) >= columnsPerRange * (tasks.size() + 1)) {
+				int first = minKeyLength;
+				int last = h;
+				tasks.add(() -> count(letters, numberOfLetters, first, last, coincidences, pairs));
+				minKeyLength = h + 1;
+			}
+		}
+		for (int keyLength : longerKeyLengths) {
+			int lettersOfKeyLength = lettersCounted(letters, keyLength);
+			tasks.add(() -> count(letters, lettersOfKeyLength, keyLength, keyLength, coincidences, pairs));
+		}
+
+		Util.invokeAll(tasks, parallelism, "scoring the key lengths");
+	}
+
+	/**
+	 * Count the columns of a range of key lengths over the beginning of the
+	 * ciphertext, and write their pairs of letters and of equal letters.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param numberOfLetters
+	 *            the number of letters to count
+	 * @param minKeyLength
+	 *            the smallest key length of the range
+	 * @param maxKeyLength
+	 *            the largest key length of the range
+	 * @param coincidences
+	 *            the array to write the number of pairs of equal letters of
+	 *            each key length to, at its index
+	 * @param pairs
+	 *            the array to write the number of pairs of letters of each key
+	 *            length to, at its index
+	 * @return nothing
+	 */
+	private static Void count(byte[] letters, int numberOfLetters, int minKeyLength, int maxKeyLength,
+			long[] coincidences, long[] pairs) {
+		ColumnHistogram columnHistogram = new ColumnHistogram(minKeyLength, maxKeyLength);
+		columnHistogram.add(letters, 0, numberOfLetters);
+
+		for (int h = minKeyLength; h <= maxKeyLength; h++) {
+			coincidences[h] = columnHistogram.countCoincidences(h);
+			pairs[h] = columnHistogram.countPairs(h);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Calculate the number of letters counted from the beginning of the
+	 * ciphertext to score a key length: enough letters per column for the
+	 * longest of the key length and the maximum.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param keyLength
+	 *            the key length
+	 * @return the number of letters counted
+	 */
+	private int lettersCounted(byte[] letters, int keyLength) {
+		return (int) Math.min(letters.length, (long) LETTERS_PER_COLUMN * Math.max(keyLength, maxKeyLength));
+	}
+
+	/**
+	 * Calculate the number of standard deviations by which the pairs of equal
+	 * letters exceed those expected of random letters, each pair being equal
+	 * with a probability of 1/26. Unlike the index of coincidence alone, it
+	 * grows with the number of pairs, so a long key length whose few letters
+	 * per column happen to coincide does not score as well as the key length,
+	 * and a multiple of the key length, with fewer pairs, scores less.
+	 *
+	 * @param coincidences
+	 *            the number of pairs of equal letters
+	 * @param pairs
+	 *            the number of pairs of letters
+	 * @return the excess of coincidences, in standard deviations
+	 */
+	private static double significance(long coincidences, long pairs) {
+		if (pairs == 0) {
+			return 0.0;
+		}
+
+		return (coincidences - pairs * RANDOM_INDEX_OF_COINCIDENCE)
+				/ Math.sqrt(pairs * RANDOM_INDEX_OF_COINCIDENCE * (1.0 - RANDOM_INDEX_OF_COINCIDENCE));
+	}
+
+	/**
+	 * Find the shortest divisor of a key length which keeps most of its excess
+	 * of the index of coincidence over random.
+	 *
+	 * @param indexes
+	 *            the index of coincidence of each key length scored, at its
+	 *            index, or 0 if it was not scored
+	 * @param keyLength
+	 *            the key length
+	 * @return the shortest such divisor, or the key length itself
+	 */
+	private static int shortestDivisor(double[] indexes, int keyLength) {
+		double excess = indexes[keyLength] - RANDOM_INDEX_OF_COINCIDENCE;
+
+		for (int d = 1; d < keyLength; d++) {
+			if (keyLength % d == 0 && excess > 0.0
+					&& indexes[d] - RANDOM_INDEX_OF_COINCIDENCE >= DIVISOR_SHARE * excess) {
+				return d;
+			}
+		}
+
+		return keyLength;
+	}
+
+	/**
+	 * A candidate key length and its score.
+	 */
+	public static final class Candidate {
+
+		/**
+		 * The key length
+		 */
+		private final int keyLength;
+
+		/**
+		 * The pooled index of coincidence of its columns
+		 */
+		private final double indexOfCoincidence;
+
+		/**
+		 * The excess of coincidences of its columns over random, in standard
+		 * deviations
+		 */
+		private final double score;
+
+		/**
+		 * The shortest divisor which keeps most of its excess over random
+		 */
+		private final int divisor;
+
+		Candidate(int keyLength, double indexOfCoincidence, double score, int divisor) {
+			this.keyLength = keyLength;
+			this.indexOfCoincidence = indexOfCoincidence;
+			this.score = score;
+			this.divisor = divisor;
+		}
+
+		/**
+		 * Get the key length.
+		 *
+		 * @return the key length
+		 */
+		public int getKeyLength() {
+			return keyLength;
+		}
+
+		/**
+		 * Get the pooled index of coincidence of the columns of the key
+		 * length.
+		 *
+		 * @return the index of coincidence, about 0.067 for the key length of
+		 *         an English plaintext
+		 */
+		public double getIndexOfCoincidence() {
+			return indexOfCoincidence;
+		}
+
+		/**
+		 * Get the score of the key length, i.e. the excess of the pairs of
+		 * equal letters in its columns over those of random letters, in
+		 * standard deviations.
+		 *
+		 * @return the score, the higher the more likely
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * Get the shortest divisor of the key length which keeps most of its
+		 * excess of the index of coincidence over random.
+		 *
+		 * @return the divisor, or the key length itself
+		 */
+		public int getDivisor() {
+			return divisor;
+		}
+
+		/**
+		 * Check whether the key length is most likely a multiple of a shorter
+		 * key length.
+		 *
+		 * @return true if a divisor keeps most of its excess over random
+		 */
+		public boolean isReducible() {
+			return divisor != keyLength;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%d (index of coincidence %.4f, score %.1f%s)", keyLength, indexOfCoincidence,
+					score, isReducible() ? ", multiple of " + divisor : "");
+		}
+	}
+}
@@ -0,0 +1,362 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * An instance of this class is a reference model of a language: the counts of
+ * the letters of a corpus, and optionally of its bigrams, trigrams and
+ * quadgrams, i.e. its n-grams up to an order.
+ *
+ * <p>
+ * A model is built from any corpus with a {@link Builder}, and saved to a
+ * binary snapshot which loads by memory-mapping in a few milliseconds, instead
+ * of reading and analysing the corpus again. The snapshot is made of
+ * <ul>
+ * <li>the magic number "LMOD" and the version of the format,
+ * <li>the order of the model,
+ * <li>for each n from 1 to the order, the 26^n counts of the n-grams indexed by
+ * their value in base 26,
+ * <li>the CRC32 of everything before it,
+ * </ul>
+ * all in big-endian order.
+ *
+ * <p>
+ * Models are immutable and can be shared between threads, and between the
+ * crackers: they give the frequency table of the letters, the
+ * {@link ShiftScorer} of the letters and, from order 4, the
+ * {@link QuadgramScorer}.
+ *
+ * @author Oana Ivanovici
+ */
+public class LanguageModel {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The highest order of the n-grams counted
+	 */
+	public static final int MAXIMUM_ORDER = NGramAnalyser.MAXIMUM_ORDER;
+
+	/**
+	 * The number written at the start of a snapshot, to recognise it ("LMOD"
+	 * in ASCII)
+	 */
+	private static final int MAGIC_NUMBER = 0x4C4D4F44;
+
+	/**
+	 * The version of the format of the snapshots written
+	 */
+	private static final int VERSION = 1;
+
+	/**
+	 * The size of the magic number, the version and the order
+	 */
+	private static final int HEADER_SIZE = 3 * Integer.BYTES;
+
+	/**
+	 * The count given to the letters that never occur in the corpus, so that
+	 * the shift scorer can expect them
+	 */
+	private static final double FLOOR_COUNT = 0.01;
+
+	/**
+	 * The counts of the n-grams of each order, at the index order - 1
+	 */
+	private final long[][] counts;
+
+	/**
+	 * The scorer of the shifts against the frequencies of the letters
+	 */
+	private final ShiftScorer shiftScorer;
+
+	/**
+	 * The scorer of the quadgrams, or null if the order is lower than 4
+	 */
+	private final QuadgramScorer quadgramScorer;
+
+	/**
+	 * Create a model from the counts of its n-grams.
+	 *
+	 * @param counts
+	 *            the counts of the n-grams of each order, which are not copied
+	 */
+	private LanguageModel(long[][] counts) {
+		this.counts = counts;
+
+		double[] frequencies = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			frequencies[i] = counts[0][i] == 0 ? FLOOR_COUNT : counts[0][i];
+		}
+		this.shiftScorer = new ShiftScorer(frequencies);
+		this.quadgramScorer = counts.length >= 4 ? QuadgramScorer.fromCounts(counts[3]) : null;
+	}
+
+	/**
+	 * Get the order of the model, i.e. the length of the longest n-grams
+	 * counted.
+	 *
+	 * @return the order, between 1 and 4
+	 */
+	public int getOrder() {
+		return counts.length;
+	}
+
+	/**
+	 * Get the number of letters of the corpus.
+	 *
+	 * @return the number of letters
+	 */
+	public long getNumberOfLetters() {
+		long numberOfLetters = 0;
+
+		for (long count : counts[0]) {
+			numberOfLetters += count;
+		}
+
+		return numberOfLetters;
+	}
+
+	/**
+	 * Get the counts of the n-grams of an order.
+	 *
+	 * @param order
+	 *            the length of the n-grams, between 1 and the order of the
+	 *            model
+	 * @return a copy of the number of occurrences of each n-gram, indexed by
+	 *         its value in base 26
+	 */
+	public long[] getCounts(int order) {
+		if (order < 1 || order > counts.length) {
+			throw new IllegalArgumentException("Order must be between 1 and " + counts.length);
+		}
+
+		return counts[order - 1].clone();
+	}
+
+	/**
+	 * Get the frequency table of the letters of the corpus.
+	 *
+	 * @return a new frequency table
+	 */
+	public FrequencyTable getFrequencyTable() {
+		return FrequencyAnalyser.toFrequencyTable(counts[0]);
+	}
+
+	/**
+	 * Get the scorer of the shifts against the frequencies of the letters.
+	 *
+	 * @return the shift scorer
+	 */
+	public ShiftScorer getShiftScorer() {
+		return shiftScorer;
+	}
+
+	/**
+	 * Get the scorer of the quadgrams.
+	 *
+	 * @return the quadgram scorer, or null if the order of the model is lower
+	 *         than 4
+	 */
+	public QuadgramScorer getQuadgramScorer() {
+		return quadgramScorer;
+	}
+
+	/**
+	 * Load a model from a snapshot written by {@link #save(Path)}.
+	 *
+	 * @param path
+	 *            the snapshot
+	 * @return the model
+	 * @throws IOException
+	 *             the file cannot be read, is not a snapshot of a supported
+	 *             version, or is corrupted
+	 */
+	public static LanguageModel load(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (channel.size() < HEADER_SIZE + Integer.BYTES) {
+				throw new IOException(path + " is not a language model");
+			}
+
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			int magicNumber = buffer.getInt();
+			int version = buffer.getInt();
+			int order = buffer.getInt();
+
+			if (magicNumber != MAGIC_NUMBER) {
+				throw new IOException(path + " is not a language model");
+			} else if (version != VERSION) {
+				throw new IOException(path + " has the unsupported version " + version);
+			} else if (order < 1 || order > MAXIMUM_ORDER || channel.size() != sizeOfSnapshot(order)) {
+				throw new IOException(path + " is truncated or corrupted");
+			}
+
+			// check the CRC32 of everything but the checksum itself
+			CRC32 crc = new CRC32();
+			ByteBuffer content = buffer.duplicate();
+			content.position(0).limit(buffer.capacity() - Integer.BYTES);
+			crc.update(content);
+			if ((int) crc.getValue() != buffer.getInt(buffer.capacity() - Integer.BYTES)) {
+				throw new IOException(path + " is corrupted (wrong checksum)");
+			}
+
+			long[][] counts = new long[order][];
+			for (int n = 1; n <= order; n++) {
+				counts[n - 1] = new long[NGramAnalyser.numberOfNGrams(n)];
+				buffer.asLongBuffer().get(counts[n - 1]);
+				buffer.position(buffer.position() + counts[n - 1].length * Long.BYTES);
+			}
+
+			return new LanguageModel(counts);
+		}
+	}
+
+	/**
+	 * Save the model to a snapshot.
+	 *
+	 * @param path
+	 *            the file to write, replaced if it exists
+	 * @throws IOException
+	 *             something goes wrong writing the file
+	 */
+	public void save(Path path) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) sizeOfSnapshot(counts.length));
+
+		buffer.putInt(MAGIC_NUMBER);
+		buffer.putInt(VERSION);
+		buffer.putInt(counts.length);
+		for (long[] countsOfOrder : counts) {
+			buffer.asLongBuffer().put(countsOfOrder);
+			buffer.position(buffer.position() + countsOfOrder.length * Long.BYTES);
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int) crc.getValue());
+		buffer.flip();
+
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+	}
+
+	/**
+	 * Load a model from a snapshot if it exists, or build it from a corpus up
+	 * to order 4 and save it to the snapshot, so that the next run loads it.
+	 *
+	 * @param snapshot
+	 *            the snapshot of the model
+	 * @param corpus
+	 *            the corpus to build the model from if there is no snapshot
+	 * @return the model
+	 * @throws IOException
+	 *             something goes wrong reading or writing the files
+	 */
+	public static LanguageModel loadOrBuild(Path snapshot, Path corpus) throws IOException {
+		if (Files.exists(snapshot)) {
+			return load(snapshot);
+		}
+
+		LanguageModel model = new Builder(MAXIMUM_ORDER).add(Util.readFileToBuffer(corpus.toString())).build();
+		model.save(snapshot);
+
+		return model;
+	}
+
+	/**
+	 * Calculate the size of the snapshot of a model.
+	 *
+	 * @param order
+	 *            the order of the model
+	 * @return the size in bytes
+	 */
+	private static long sizeOfSnapshot(int order) {
+		long size = HEADER_SIZE + Integer.BYTES;
+
+		for (int n = 1; n <= order; n++) {
+			size += (long) NGramAnalyser.numberOfNGrams(n) * Long.BYTES;
+		}
+
+		return size;
+	}
+
+	/**
+	 * A builder of language models, which counts the n-grams of the texts
+	 * added to it. The n-grams do not span two texts, and only letters are
+	 * counted: other characters are skipped.
+	 */
+	public static class Builder {
+
+		/**
+		 * The analyser counting the n-grams of the texts
+		 */
+		private final NGramAnalyser analyser;
+
+		/**
+		 * Create a builder of a model of an order.
+		 *
+		 * @param order
+		 *            the length of the longest n-grams counted, between 1 and 4
+		 */
+		public Builder(int order) {
+			this.analyser = new NGramAnalyser(order);
+		}
+
+		/**
+		 * Count the n-grams of a text.
+		 *
+		 * @param text
+		 *            the text to add to the corpus
+		 * @return this builder
+		 */
+		public Builder add(CharSequence text) {
+			analyser.add(text).endOfText();
+
+			return this;
+		}
+
+		/**
+		 * Count the n-grams of a text given as indexes of its letters.
+		 *
+		 * @param letters
+		 *            the indexes of the letters, all between 0 and 25
+		 * @param offset
+		 *            the index of the first letter to add
+		 * @param length
+		 *            the number of letters to add
+		 * @return this builder
+		 */
+		public Builder add(byte[] letters, int offset, int length) {
+			analyser.addLetters(letters, offset, length).endOfText();
+
+			return this;
+		}
+
+		/**
+		 * Build the model of the texts added so far.
+		 *
+		 * @return the model
+		 */
+		public LanguageModel build() {
+			long[][] counts = new long[analyser.getOrder()][];
+
+			for (int n = 1; n <= counts.length; n++) {
+				counts[n - 1] = analyser.getCounts(n);
+			}
+
+			return new LanguageModel(counts);
+		}
+	}
+}
@@ -0,0 +1,525 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.BufferedReader;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * An instance of this class is a mapping of the 26 letters of the English
+ * alphabet to their <strong>absolute</strong> number of occurrences, with the
+ * total number of letters counted.
+ *
+ * <p>
+ * Unlike a {@link FrequencyTable}, counts can be combined exactly: the counts
+ * of the shards of a corpus, analysed independently (e.g. by different
+ * processes), {@link #merge(LetterCounts) merge} into the counts of the whole
+ * corpus, which are only then {@link #normalize() normalized} into a frequency
+ * table. A shard can also be {@link #subtract(LetterCounts) subtracted} again,
+ * e.g. to drop it from a running aggregate.
+ *
+ * <p>
+ * Counts are exchanged in one of two formats:
+ * <ul>
+ * <li>binary: the magic number "LCNT", then each count and the total as
+ * unsigned variable-length integers, seven bits per byte, the least
+ * significant first, i.e. 31 bytes for a short text,
+ * <li>CSV: the header "letter,count", one line per letter and a last line
+ * with the total.
+ * </ul>
+ * Both formats check that the total is the sum of the counts when read.
+ *
+ * @author Oana Ivanovici
+ */
+public class LetterCounts {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The number written at the start of binary counts, to recognise them
+	 * ("LCNT" in ASCII)
+	 */
+	private static final int MAGIC_NUMBER = 0x4C434E54;
+
+	/**
+	 * The header of the CSV format
+	 */
+	private static final String CSV_HEADER = "letter,count";
+
+	/**
+	 * The label of the line of the total in the CSV format
+	 */
+	private static final String CSV_TOTAL = "total";
+
+	/**
+	 * The number of occurrences of each letter, indexed from A = 0 to Z = 25
+	 */
+	private final long[] counts;
+
+	/**
+	 * The sum of the counts
+	 */
+	private long total;
+
+	/**
+	 * Create counts of no letters.
+	 */
+	public LetterCounts() {
+		this.counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+	}
+
+	/**
+	 * Create counts from the number of occurrences of each letter.
+	 *
+	 * @param counts
+	 *            the number of occurrences of each letter, indexed from A = 0
+	 *            to Z = 25, which are copied
+	 */
+	public LetterCounts(long[] counts) {
+		if (counts.length != NUMBER_OF_LETTERS_IN_ALPHABET) {
+			throw new IllegalArgumentException("There must be a count for each letter");
+		}
+
+		this.counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			if (counts[i] < 0) {
+				throw new IllegalArgumentException("Counts must not be negative");
+			}
+			this.counts[i] = counts[i];
+			this.total = Math.addExact(this.total, counts[i]);
+		}
+	}
+
+	/**
+	 * Count the letters of a file, counting memory-mapped segments of it in
+	 * parallel (see {@link FrequencyAnalyser#countOccurrencesOfLetter(Path, int)}).
+	 *
+	 * @param path
+	 *            the file to analyse
+	 * @param parallelism
+	 *            the number of threads to count the segments with
+	 * @return the counts of the letters of the file
+	 * @throws IOException
+	 *             something goes wrong mapping or reading the file
+	 */
+	public static LetterCounts count(Path path, int parallelism) throws IOException {
+		return new LetterCounts(FrequencyAnalyser.countOccurrencesOfLetter(path, parallelism));
+	}
+
+	/**
+	 * Count the letters of a text, skipping any other character.
+	 *
+	 * @param text
+	 *            the text to count
+	 * @return this object
+	 */
+	public LetterCounts add(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			int indexOfLetter = Util.letterIndex(text.charAt(i));
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				counts[indexOfLetter] += 1;
+				total += 1;
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Get the number of occurrences of a letter.
+	 *
+	 * @param letter
+	 *            the letter, in upper or lower case
+	 * @return the number of occurrences of the letter
+	 */
+	public long getCount(char letter) {
+		return counts[Util.charToIndex(letter)];
+	}
+
+	/**
+	 * Get a copy of the number of occurrences of each letter.
+	 *
+	 * @return the counts, indexed from A = 0 to Z = 25
+	 */
+	public long[] getCounts() {
+		return counts.clone();
+	}
+
+	/**
+	 * Get the total number of letters counted.
+	 *
+	 * @return the sum of the counts
+	 */
+	public long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Add other counts to these ones, e.g. the counts of another shard of the
+	 * same corpus.
+	 *
+	 * @param other
+	 *            the counts to add, which are not changed
+	 * @return this object
+	 */
+	public LetterCounts merge(LetterCounts other) {
+		long mergedTotal = Math.addExact(total, other.total);
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			counts[i] += other.counts[i];
+		}
+		total = mergedTotal;
+
+		return this;
+	}
+
+	/**
+	 * Remove other counts from these ones, e.g. the counts of a shard
+	 * previously merged. No count is changed if any would become negative.
+	 *
+	 * @param other
+	 *            the counts to remove, which are not changed
+	 * @return this object
+	 */
+	public LetterCounts subtract(LetterCounts other) {
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			if (other.counts[i] > counts[i]) {
+				throw new IllegalArgumentException("Counts must not become negative");
+			}
+		}
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			counts[i] -= other.counts[i];
+		}
+		total -= other.total;
+
+		return this;
+	}
+
+	/**
+	 * Turn the counts into relative frequencies.
+	 *
+	 * @return a new frequency table of the letters
+	 */
+	public FrequencyTable normalize() {
+		if (total == 0) {
+			throw new IllegalStateException("No letters have been counted");
+		}
+
+		return FrequencyAnalyser.toFrequencyTable(counts);
+	}
+
+	/**
+	 * Write the counts in the binary format.
+	 *
+	 * @param out
+	 *            the output to write to, e.g. a {@link DataOutputStream}
+	 * @throws IOException
+	 *             something goes wrong writing to the output
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		out.writeInt(MAGIC_NUMBER);
+		for (long count : counts) {
+			writeVariableLength(out, count);
+		}
+		writeVariableLength(out, total);
+	}
+
+	/**
+	 * Read counts written in the binary format.
+	 *
+	 * @param in
+	 *            the input to read from, e.g. a {@link DataInputStream}, from
+	 *            which no more than the counts are read
+	 * @return the counts
+	 * @throws IOException
+	 *             the input cannot be read or does not hold valid counts
+	 */
+	public static LetterCounts readFrom(DataInput in) throws IOException {
+		if (in.readInt() != MAGIC_NUMBER) {
+			throw new IOException("Input does not hold letter counts");
+		}
+
+		long[] counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			counts[i] = readVariableLength(in);
+		}
+
+		return checked(counts, readVariableLength(in));
+	}
+
+	/**
+	 * Write the counts in the CSV format.
+	 *
+	 * @param <A>
+	 *            the type of the sink
+	 * @param out
+	 *            the sink to write to, e.g. a writer or a string builder
+	 * @return the sink
+	 * @throws IOException
+	 *             something goes wrong writing to the sink
+	 */
+	public <A extends Appendable> A appendCsvTo(A out) throws IOException {
+		out.append(CSV_HEADER).append('\n');
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			out.append(Util.indexToChar(i)).append(',').append(Long.toString(counts[i])).append('\n');
+		}
+		out.append(CSV_TOTAL).append(',').append(Long.toString(total)).append('\n');
+
+		return out;
+	}
+
+	/**
+	 * Read counts written in the CSV format. The letters may come in any
+	 * order, but each of them must come once.
+	 *
+	 * @param reader
+	 *            the reader to read from, which is consumed but not closed
+	 * @return the counts
+	 * @throws IOException
+	 *             the reader cannot be read or does not hold valid counts
+	 */
+	public static LetterCounts readCsv(Reader reader) throws IOException {
+		BufferedReader lines = new BufferedReader(reader);
+		String line = lines.readLine();
+
+		if (line == null || !line.trim().equals(CSV_HEADER)) {
+			throw new IOException("Input does not hold letter counts");
+		}
+
+		long[] counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		boolean[] read = new boolean[NUMBER_OF_LETTERS_IN_ALPHABET];
+		Long total = null;
+
+		while ((line = lines.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			int comma = line.indexOf(',');
+			if (comma < 0) {
+				throw new IOException("Malformed line: " + line);
+			}
+
+			String label = line.substring(0, comma).trim();
+			long count;
+			try {
+				count = Long.parseLong(line.substring(comma + 1).trim());
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed count: " + line, e);
+			}
+
+			if (label.equals(CSV_TOTAL)) {
+				total = count;
+			} else {
+				int indexOfLetter = label.length() == 1 ? Util.letterIndex(label.charAt(0)) : Util.NOT_A_LETTER;
+
+				if (indexOfLetter == Util.NOT_A_LETTER || read[indexOfLetter]) {
+					throw new IOException("Unexpected or repeated letter: " + line);
+				}
+				read[indexOfLetter] = true;
+				counts[indexOfLetter] = count;
+			}
+		}
+
+		for (boolean letterRead : read) {
+			if (!letterRead) {
+				throw new IOException("Input does not hold a count for each letter");
+			}
+		}
+		if (total == null) {
+			throw new IOException("Input does not hold the total");
+		}
+
+		return checked(counts, total);
+	}
+
+	/**
+	 * Create counts read from an input, checking that they are consistent.
+	 *
+	 * @param counts
+	 *            the counts read
+	 * @param total
+	 *            the total read
+	 * @return the counts
+	 * @throws IOException
+	 *             the counts are negative or do not sum to the total
+	 */
+	private static LetterCounts checked(long[] counts, long total) throws IOException {
+		LetterCounts letterCounts;
+
+		try {
+			letterCounts = new LetterCounts(counts);
+		} catch (IllegalArgumentException | ArithmeticException e) {
+			throw new IOException("Counts are corrupted", e);
+		}
+
+		if (letterCounts.total != total) {
+			throw new IOException("Counts are corrupted (they do not sum to the total)");
+		}
+
+		return letterCounts;
+	}
+
+	/**
+	 * Write a non-negative number seven bits at a time, the least significant
+	 * first, the high bit of each byte telling whether more bytes follow.
+	 *
+	 * @param out
+	 *            the output to write to
+	 * @param value
+	 *            the number to write
+	 * @throws IOException
+	 *             something goes wrong writing to the output
+	 */
+	private static void writeVariableLength(DataOutput out, long value) throws IOException {
+		while ((value & ~0x7FL) != 0) {
+			out.writeByte((int) (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte((int) value);
+	}
+
+	/**
+	 * Read a number written by {@link #writeVariableLength(DataOutput, long)}.
+	 *
+	 * @param in
+	 *            the input to read from
+	 * @return the number read
+	 * @throws IOException
+	 *             the input cannot be read or the number is too long
+	 */
+	private static long readVariableLength(DataInput in) throws IOException {
+		long value = 0;
+
+		for (int shift = 0; shift < Long.SIZE; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (long) (b & 0x7F) << shift;
+
+			if ((b & 0x80) == 0) {
+				return value;
+			}
+		}
+
+		throw new IOException("Counts are corrupted (number too long)");
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof LetterCounts && Arrays.equals(counts, ((LetterCounts) obj).counts);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(counts);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			builder.append('(').append(Util.indexToChar(i)).append(", ").append(counts[i]).append(")\n");
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Count the letters of shards of a corpus, or merge the counts of shards.
+	 * Workers count their shards independently with
+	 *
+	 * <pre>
+	 * count &lt;shard&gt; &lt;counts file&gt;
+	 * </pre>
+	 *
+	 * and a coordinator merges their counts and prints the frequency table of
+	 * the whole corpus with
+	 *
+	 * <pre>
+	 * merge &lt;merged counts file&gt; &lt;counts file&gt;...
+	 * </pre>
+	 *
+	 * Counts files ending in .csv are in the CSV format, the others in the
+	 * binary format.
+	 *
+	 * @param args
+	 *            the command and the files
+	 * @throws IOException
+	 *             something goes wrong reading or writing the files
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length >= 3 && args[0].equals("count")) {
+			LetterCounts counts = count(Paths.get(args[1]), Runtime.getRuntime().availableProcessors());
+			write(counts, Paths.get(args[2]));
+			System.out.println(counts.getTotal() + " letters of " + args[1] + " counted to " + args[2]);
+		} else if (args.length >= 3 && args[0].equals("merge")) {
+			LetterCounts merged = new LetterCounts();
+			for (int i = 2; i < args.length; i++) {
+				merged.merge(read(Paths.get(args[i])));
+			}
+			write(merged, Paths.get(args[1]));
+			merged.normalize().print();
+		} else {
+			System.out.println("Usage: count <shard> <counts file> | merge <merged counts file> <counts file>...");
+		}
+	}
+
+	/**
+	 * Write counts to a file, in the CSV format if its name ends in .csv and
+	 * in the binary format otherwise.
+	 *
+	 * @param counts
+	 *            the counts to write
+	 * @param path
+	 *            the file to write, replaced if it exists
+	 * @throws IOException
+	 *             something goes wrong writing the file
+	 */
+	private static void write(LetterCounts counts, Path path) throws IOException {
+		if (path.toString().endsWith(".csv")) {
+			try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+				counts.appendCsvTo(writer);
+			}
+		} else {
+			try (DataOutputStream out = new DataOutputStream(Files.newOutputStream(path))) {
+				counts.writeTo(out);
+			}
+		}
+	}
+
+	/**
+	 * Read counts from a file written by {@link #write(LetterCounts, Path)}.
+	 *
+	 * @param path
+	 *            the file to read
+	 * @return the counts
+	 * @throws IOException
+	 *             the file cannot be read or does not hold valid counts
+	 */
+	private static LetterCounts read(Path path) throws IOException {
+		if (path.toString().endsWith(".csv")) {
+			try (Reader reader = Files.newBufferedReader(path, StandardCharsets.US_ASCII)) {
+				return readCsv(reader);
+			}
+		} else {
+			try (DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+				return readFrom(in);
+			}
+		}
+	}
+}
@@ -0,0 +1,365 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+
+/**
+ * An instance of this class counts the n-grams of a text, i.e. its sequences
+ * of n consecutive letters, for every n from 1 to an order of at most 4, in a
+ * single pass.
+ *
+ * <p>
+ * The counts of each order are kept in a flat table of 26^n longs indexed by
+ * the value of the n-gram in base 26, the first letter being the most
+ * significant, so counting boxes nothing and does no lookup. Only letters are
+ * counted and any other character is skipped: the index of the n-grams ending
+ * at the last letter rolls over the characters in between, so "TH E" holds
+ * the trigram THE. The text can be added a chunk at a time, e.g. from a file
+ * larger than the memory; n-grams span the chunks until {@link #endOfText()}.
+ *
+ * <p>
+ * Instances are not thread-safe: see {@link ConcurrentNGramAnalyser} to count
+ * from many threads at once.
+ *
+ * @author Oana Ivanovici
+ */
+public class NGramAnalyser {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The highest order of the n-grams counted
+	 */
+	public static final int MAXIMUM_ORDER = 4;
+
+	/**
+	 * Size of the chunks read at a time when analysing a stream, so that the
+	 * memory used does not depend on the size of the input
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The counts of the n-grams of each order, at the index order - 1
+	 */
+	private final long[][] counts;
+
+	/**
+	 * The index of the n-gram ending at the last letter counted, for each
+	 * order, at the index order - 1
+	 */
+	private final int[] indexes;
+
+	/**
+	 * The number of letters counted since the start of the text, up to the
+	 * order: the n-grams ending at the last letter exist for n up to it
+	 */
+	private int run;
+
+	/**
+	 * The number of letters read past the end of a segment by
+	 * {@link #addTail(byte[], int, int)}
+	 */
+	private int lettersOfTail;
+
+	/**
+	 * Create an analyser of the n-grams up to an order.
+	 *
+	 * @param order
+	 *            the length of the longest n-grams counted, between 1 and 4
+	 */
+	public NGramAnalyser(int order) {
+		if (order < 1 || order > MAXIMUM_ORDER) {
+			throw new IllegalArgumentException("Order must be between 1 and " + MAXIMUM_ORDER);
+		}
+
+		this.counts = new long[order][];
+		for (int n = 1; n <= order; n++) {
+			counts[n - 1] = new long[numberOfNGrams(n)];
+		}
+		this.indexes = new int[order];
+	}
+
+	/**
+	 * Get the order of the analyser, i.e. the length of the longest n-grams
+	 * counted.
+	 *
+	 * @return the order, between 1 and 4
+	 */
+	public int getOrder() {
+		return counts.length;
+	}
+
+	/**
+	 * Count the n-grams of a chunk of text. The n-grams ending in the chunk
+	 * may start in the chunks added before it.
+	 *
+	 * @param text
+	 *            the characters to count
+	 * @return this analyser
+	 */
+	public NGramAnalyser add(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			int indexOfLetter = Util.letterIndex(text.charAt(i));
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				count(indexOfLetter);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams of a chunk of characters.
+	 *
+	 * @param chunk
+	 *            the characters to count
+	 * @param offset
+	 *            the index of the first character to count
+	 * @param length
+	 *            the number of characters to count
+	 * @return this analyser
+	 */
+	public NGramAnalyser add(char[] chunk, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			int indexOfLetter = Util.letterIndex(chunk[i]);
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				count(indexOfLetter);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams of a chunk of bytes, in an ASCII-compatible encoding
+	 * (e.g. UTF-8 or ISO-8859-1), where the English letters are single bytes.
+	 *
+	 * @param chunk
+	 *            the bytes to count
+	 * @param offset
+	 *            the index of the first byte to count
+	 * @param length
+	 *            the number of bytes to count
+	 * @return this analyser
+	 */
+	public NGramAnalyser add(byte[] chunk, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			int indexOfLetter = Util.letterIndex(chunk[i]);
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				count(indexOfLetter);
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams of a chunk of text given as indexes of its letters (see
+	 * {@link Util#toLetterIndexes(CharSequence)}).
+	 *
+	 * @param letters
+	 *            the indexes of the letters, all between 0 and 25
+	 * @param offset
+	 *            the index of the first letter to count
+	 * @param length
+	 *            the number of letters to count
+	 * @return this analyser
+	 */
+	public NGramAnalyser addLetters(byte[] letters, int offset, int length) {
+		for (int i = offset; i < offset + length; i++) {
+			count(letters[i]);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams of the characters read from a reader, a chunk at a
+	 * time. The reader is not closed.
+	 *
+	 * @param reader
+	 *            the reader to read the text from
+	 * @return this analyser
+	 * @throws IOException
+	 *             something goes wrong reading from the reader
+	 */
+	public NGramAnalyser add(Reader reader) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		int read;
+
+		while ((read = reader.read(buffer)) != -1) {
+			add(buffer, 0, read);
+		}
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams of the bytes read from a stream, a chunk at a time,
+	 * with the same assumption on the encoding as
+	 * {@link #add(byte[], int, int)}. The stream is not closed.
+	 *
+	 * @param in
+	 *            the stream to read the text from
+	 * @return this analyser
+	 * @throws IOException
+	 *             something goes wrong reading from the stream
+	 */
+	public NGramAnalyser add(InputStream in) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int read;
+
+		while ((read = in.read(buffer)) != -1) {
+			add(buffer, 0, read);
+		}
+
+		return this;
+	}
+
+	/**
+	 * End the current text: the n-grams of the next chunk added do not start
+	 * in the chunks added so far.
+	 *
+	 * @return this analyser
+	 */
+	public NGramAnalyser endOfText() {
+		run = 0;
+		lettersOfTail = 0;
+
+		return this;
+	}
+
+	/**
+	 * Count the n-grams which start in the text added so far and end in the
+	 * given chunk, which follows it, and no other n-gram: the letters of the
+	 * chunk are the beginning of the text of another analyser, which counts
+	 * the n-grams starting there. The tail is complete once order - 1 letters
+	 * have been read past the end; the text is then ended.
+	 *
+	 * @param chunk
+	 *            the bytes following the text, in the same encoding
+	 * @param offset
+	 *            the index of the first byte to read
+	 * @param length
+	 *            the number of bytes to read
+	 * @return <code>true</code> if the tail is complete, and no more bytes are
+	 *         needed
+	 */
+	boolean addTail(byte[] chunk, int offset, int length) {
+		for (int i = offset; i < offset + length && lettersOfTail < counts.length - 1; i++) {
+			int indexOfLetter = Util.letterIndex(chunk[i]);
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				lettersOfTail += 1;
+				if (run < counts.length) {
+					run += 1;
+				}
+
+				// only the n-grams longer than the letters past the end start
+				// before it
+				for (int n = run; n >= 2; n--) {
+					int index = indexes[n - 2] * NUMBER_OF_LETTERS_IN_ALPHABET + indexOfLetter;
+					indexes[n - 1] = index;
+					if (n > lettersOfTail) {
+						counts[n - 1][index] += 1;
+					}
+				}
+				indexes[0] = indexOfLetter;
+			}
+		}
+
+		if (lettersOfTail < counts.length - 1) {
+			return false;
+		}
+
+		endOfText();
+		return true;
+	}
+
+	/**
+	 * Count the n-grams ending at a letter.
+	 *
+	 * @param letter
+	 *            the index of the letter
+	 */
+	private void count(int letter) {
+		if (run < counts.length) {
+			run += 1;
+		}
+
+		// the n-gram ending at this letter is the (n - 1)-gram ending at the
+		// previous letter followed by this letter
+		for (int n = run; n >= 2; n--) {
+			int index = indexes[n - 2] * NUMBER_OF_LETTERS_IN_ALPHABET + letter;
+			indexes[n - 1] = index;
+			counts[n - 1][index] += 1;
+		}
+		indexes[0] = letter;
+		counts[0][letter] += 1;
+	}
+
+	/**
+	 * Add the counts of another analyser to the counts of this one.
+	 *
+	 * @param other
+	 *            an analyser of the same order, which is not changed
+	 * @return this analyser
+	 */
+	public NGramAnalyser merge(NGramAnalyser other) {
+		if (other.counts.length != counts.length) {
+			throw new IllegalArgumentException("Analysers must have the same order");
+		}
+
+		for (int n = 0; n < counts.length; n++) {
+			long[] countsOfOrder = counts[n];
+			long[] otherCountsOfOrder = other.counts[n];
+
+			for (int i = 0; i < countsOfOrder.length; i++) {
+				countsOfOrder[i] += otherCountsOfOrder[i];
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * Get the counts of the n-grams of an order.
+	 *
+	 * @param order
+	 *            the length of the n-grams, between 1 and the order of the
+	 *            analyser
+	 * @return a copy of the number of occurrences of each n-gram, indexed by
+	 *         its value in base 26
+	 */
+	public long[] getCounts(int order) {
+		if (order < 1 || order > counts.length) {
+			throw new IllegalArgumentException("Order must be between 1 and " + counts.length);
+		}
+
+		return counts[order - 1].clone();
+	}
+
+	/**
+	 * Calculate the number of n-grams of an order.
+	 *
+	 * @param order
+	 *            the length of the n-grams
+	 * @return 26^order
+	 */
+	static int numberOfNGrams(int order) {
+		int numberOfNGrams = 1;
+
+		for (int i = 0; i < order; i++) {
+			numberOfNGrams *= NUMBER_OF_LETTERS_IN_ALPHABET;
+		}
+
+		return numberOfNGrams;
+	}
+}
@@ -0,0 +1,351 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * An instance of this class cracks a Vigen&egrave;re ciphertext which is
+ * received a piece at a time, e.g. over a long-lived connection, refining its
+ * estimate of the key as the letters come in, as {@link VigenereCryptanalysis}
+ * does for a whole ciphertext.
+ *
+ * <p>
+ * Each letter received updates the histogram of its column for every key
+ * length up to a maximum, i.e. a constant number of counts per key length
+ * (see {@link ColumnHistogram}), and the letters are not kept: the memory used
+ * is that of the histogram, whatever the length of the stream. The key is
+ * estimated from the counts alone, on demand with {@link #update()} or every
+ * given number of letters: the key lengths are ranked by
+ * {@link KeyLengthScorer#rank(ColumnHistogram)}, and the key of each column of
+ * the best one is the shift whose plaintext has the lowest chi squared.
+ *
+ * <p>
+ * A listener can be told when the key has been the same for a number of
+ * updates in a row, i.e. when the estimate is stable enough to be used.
+ *
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @author Oana Ivanovici
+ */
+public class OnlineVigenereCryptanalysis {
+
+	/**
+	 * The scorer of the shifts against the frequencies of the letters of the
+	 * plaintext
+	 */
+	private final ShiftScorer shiftScorer;
+
+	/**
+	 * The counts of the letters of each column of every key length
+	 */
+	private final ColumnHistogram columnHistogram;
+
+	/**
+	 * The number of letters after which the key is estimated again, or 0 to
+	 * estimate it on demand only
+	 */
+	private long updateInterval;
+
+	/**
+	 * The number of letters received since the key was last estimated
+	 */
+	private long lettersSinceUpdate;
+
+	/**
+	 * The number of updates in a row giving the same key after which the
+	 * listener is told
+	 */
+	private int numberOfStableUpdates;
+
+	/**
+	 * The listener told when the key is stable, if any
+	 */
+	private Consumer<Estimate> stableKeyListener;
+
+	/**
+	 * The last estimate of the key, or null if the key has not been estimated
+	 * yet
+	 */
+	private Estimate estimate;
+
+	/**
+	 * Create a cryptanalysis of a stream of English encrypted with a key of
+	 * at most a given length.
+	 *
+	 * @param maxKeyLength
+	 *            the largest key length looked for
+	 */
+	public OnlineVigenereCryptanalysis(int maxKeyLength) {
+		this(maxKeyLength, ShiftScorer.ENGLISH);
+	}
+
+	/**
+	 * Create a cryptanalysis of a stream encrypted with a key of at most a
+	 * given length.
+	 *
+	 * @param maxKeyLength
+	 *            the largest key length looked for
+	 * @param shiftScorer
+	 *            the scorer holding the distribution of the letters of the
+	 *            language of the plaintext
+	 */
+	public OnlineVigenereCryptanalysis(int maxKeyLength, ShiftScorer shiftScorer) {
+		this.columnHistogram = new ColumnHistogram(maxKeyLength);
+		this.shiftScorer = shiftScorer;
+	}
+
+	/**
+	 * Estimate the key every given number of letters received.
+	 *
+	 * @param numberOfLetters
+	 *            the number of letters between two updates, or 0 to estimate
+	 *            the key on demand only
+	 */
+	public void setUpdateInterval(long numberOfLetters) {
+		if (numberOfLetters < 0) {
+			throw new IllegalArgumentException("Update interval must not be negative");
+		}
+
+		this.updateInterval = numberOfLetters;
+	}
+
+	/**
+	 * Set the listener told when the same key has been estimated for a number
+	 * of updates in a row. It is told once for each key which becomes stable,
+	 * from the thread which updates the estimate.
+	 *
+	 * @param numberOfUpdates
+	 *            the number of updates in a row giving the same key
+	 * @param listener
+	 *            the listener, or null to remove it
+	 */
+	public void setStableKeyListener(int numberOfUpdates, Consumer<Estimate> listener) {
+		if (numberOfUpdates < 1) {
+			throw new IllegalArgumentException("Number of updates must be positive");
+		}
+
+		this.numberOfStableUpdates = numberOfUpdates;
+		this.stableKeyListener = listener;
+	}
+
+	/**
+	 * Receive a character of the ciphertext. Characters that are not letters
+	 * are skipped.
+	 *
+	 * @param character
+	 *            the character
+	 * @return <code>true</code> if the character is a letter, and was received
+	 */
+	public boolean append(char character) {
+		int indexOfLetter = Util.letterIndex(character);
+
+		if (indexOfLetter == Util.NOT_A_LETTER) {
+			return false;
+		}
+
+		appendLetter(indexOfLetter);
+		return true;
+	}
+
+	/**
+	 * Receive the characters of a piece of the ciphertext. Characters that are
+	 * not letters are skipped.
+	 *
+	 * @param text
+	 *            the piece of ciphertext
+	 * @return this cryptanalysis
+	 */
+	public OnlineVigenereCryptanalysis append(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			append(text.charAt(i));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Receive a letter of the ciphertext, and estimate the key if the update
+	 * interval is reached.
+	 *
+	 * @param letter
+	 *            the index of the letter, between 0 and 25
+	 */
+	public void appendLetter(int letter) {
+		columnHistogram.add(letter);
+
+		lettersSinceUpdate += 1;
+		if (updateInterval > 0 && lettersSinceUpdate >= updateInterval) {
+			update();
+		}
+	}
+
+	/**
+	 * Receive a piece of the ciphertext given as indexes of its letters (see
+	 * {@link Util#toLetterIndexes(CharSequence)}), estimating the key each
+	 * time the update interval is reached.
+	 *
+	 * @param letters
+	 *            the indexes of the letters, all between 0 and 25
+	 * @param offset
+	 *            the index of the first letter to receive
+	 * @param length
+	 *            the number of letters to receive
+	 * @return this cryptanalysis
+	 */
+	public OnlineVigenereCryptanalysis appendLetters(byte[] letters, int offset, int length) {
+		int end = offset + length;
+
+		while (offset < end) {
+			int numberOfLetters = end - offset;
+
+			if (updateInterval > 0) {
+				numberOfLetters = (int) Math.min(numberOfLetters, Math.max(1, updateInterval - lettersSinceUpdate));
+			}
+			columnHistogram.add(letters, offset, numberOfLetters);
+			offset += numberOfLetters;
+
+			lettersSinceUpdate += numberOfLetters;
+			if (updateInterval > 0 && lettersSinceUpdate >= updateInterval) {
+				update();
+			}
+		}
+
+		return this;
+	}
+
+	/**
+	 * This method estimates the key from the letters received so far, and
+	 * tells the listener if the key has become stable.
+	 *
+	 * @return the estimate of the key
+	 */
+	public Estimate update() {
+		List<KeyLengthScorer.Candidate> ranking = KeyLengthScorer.rank(columnHistogram);
+		KeyLengthScorer.Candidate best = ranking.get(0);
+		int keyLength = best.getKeyLength();
+		StringBuilder key = new StringBuilder(keyLength);
+
+		for (int column = 0; column < keyLength; column++) {
+			long[] occurrencesInColumn = columnHistogram.getCounts(keyLength, column);
+			key.append(Util.indexToChar(shiftScorer.bestShiftByChiSquared(occurrencesInColumn)));
+		}
+
+		String keyString = key.toString();
+		int numberOfUpdates = estimate != null && estimate.key.equals(keyString) ? estimate.numberOfUpdates + 1 : 1;
+		estimate = new Estimate(keyString, best.getScore(), columnHistogram.getNumberOfLetters(), numberOfUpdates);
+		lettersSinceUpdate = 0;
+
+		if (stableKeyListener != null && numberOfUpdates == numberOfStableUpdates) {
+			stableKeyListener.accept(estimate);
+		}
+
+		return estimate;
+	}
+
+	/**
+	 * Get the last estimate of the key.
+	 *
+	 * @return the last estimate, or null if the key has not been estimated yet
+	 */
+	public Estimate getEstimate() {
+		return estimate;
+	}
+
+	/**
+	 * Get the number of letters received so far.
+	 *
+	 * @return the number of letters received
+	 */
+	public long getNumberOfLetters() {
+		return columnHistogram.getNumberOfLetters();
+	}
+
+	/**
+	 * Forget the letters received and the estimate of the key, e.g. at the
+	 * start of a new stream.
+	 */
+	public void clear() {
+		columnHistogram.clear();
+		lettersSinceUpdate = 0;
+		estimate = null;
+	}
+
+	/**
+	 * An estimate of the key of the stream.
+	 */
+	public static final class Estimate {
+
+		/**
+		 * The key estimated
+		 */
+		private final String key;
+
+		/**
+		 * The score of the length of the key
+		 */
+		private final double score;
+
+		/**
+		 * The number of letters received when the key was estimated
+		 */
+		private final long numberOfLetters;
+
+		/**
+		 * The number of updates in a row which gave the key, including this
+		 * one
+		 */
+		private final int numberOfUpdates;
+
+		Estimate(String key, double score, long numberOfLetters, int numberOfUpdates) {
+			this.key = key;
+			this.score = score;
+			this.numberOfLetters = numberOfLetters;
+			this.numberOfUpdates = numberOfUpdates;
+		}
+
+		/**
+		 * Get the key estimated.
+		 *
+		 * @return the key
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the score of the length of the key (see
+		 * {@link KeyLengthScorer.Candidate#getScore()}).
+		 *
+		 * @return the score, the higher the more likely
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * Get the number of letters received when the key was estimated.
+		 *
+		 * @return the number of letters
+		 */
+		public long getNumberOfLetters() {
+			return numberOfLetters;
+		}
+
+		/**
+		 * Get the number of updates in a row which gave the key, including
+		 * this one.
+		 *
+		 * @return the number of updates, at least 1
+		 */
+		public int getNumberOfUpdates() {
+			return numberOfUpdates;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("key %s (score %.1f, %d letters, %d updates)", key, score, numberOfLetters,
+					numberOfUpdates);
+		}
+	}
+}
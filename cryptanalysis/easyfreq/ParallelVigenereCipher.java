@@ -0,0 +1,220 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * This class encrypts and decrypts files according to the Vigen&egrave;re
+ * cipher in parallel.
+ *
+ * <p>
+ * The position in the key of a letter only depends on the number of letters
+ * before it. The file is split into segments, and the letters of each segment
+ * are counted in parallel first; the position in the key at the start of each
+ * segment is then known from the counts of the segments before it, so the
+ * segments can be transformed in parallel too. The result is identical to
+ * {@link VigenereCipher} on the whole file.
+ *
+ * <p>
+ * Each segment is memory-mapped on its own, so files larger than 2 GB are
+ * supported. The text is assumed to be in an ASCII-compatible encoding.
+ *
+ * @author Oana Ivanovici
+ */
+public class ParallelVigenereCipher {
+
+	/**
+	 * Size of the segments of a file that are memory-mapped and transformed by
+	 * a single task
+	 */
+	private static final long SEGMENT_SIZE = 16L * 1024 * 1024;
+
+	/**
+	 * Size of the chunks copied from a mapped segment to be transformed
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Encrypt a file into another file.
+	 *
+	 * @param source
+	 *            the file with the plaintext
+	 * @param destination
+	 *            the file to write the ciphertext to, replaced if it exists;
+	 *            it must not be the source
+	 * @param key
+	 *            the encryption key
+	 * @param parallelism
+	 *            the number of threads to transform the segments with
+	 * @throws IOException
+	 *             something goes wrong reading or writing the files
+	 */
+	public static void encrypt(Path source, Path destination, String key, int parallelism) throws IOException {
+		transform(source, destination, VigenereCipher.encryptionShifts(key), parallelism);
+	}
+
+	/**
+	 * Decrypt a file into another file.
+	 *
+	 * @param source
+	 *            the file with the ciphertext
+	 * @param destination
+	 *            the file to write the plaintext to, replaced if it exists; it
+	 *            must not be the source
+	 * @param key
+	 *            the encryption key
+	 * @param parallelism
+	 *            the number of threads to transform the segments with
+	 * @throws IOException
+	 *             something goes wrong reading or writing the files
+	 */
+	public static void decrypt(Path source, Path destination, String key, int parallelism) throws IOException {
+		transform(source, destination, VigenereCipher.decryptionShifts(key), parallelism);
+	}
+
+	/**
+	 * Shift the letters of a file into another file, segment by segment in
+	 * parallel.
+	 *
+	 * @param source
+	 *            the file to transform
+	 * @param destination
+	 *            the file to write the result to, which must not be the source
+	 * @param shifts
+	 *            the shifts of the key
+	 * @param parallelism
+	 *            the number of threads to transform the segments with
+	 * @throws IOException
+	 *             something goes wrong reading or writing the files
+	 */
+	private static void transform(Path source, Path destination, int[] shifts, int parallelism) throws IOException {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		} else if (Files.exists(destination) && Files.isSameFile(source, destination)) {
+			// the destination is truncated before the source is read
+			throw new IllegalArgumentException("Source and destination must not be the same file");
+		}
+
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+		try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+				FileChannel out = FileChannel.open(destination, StandardOpenOption.READ, StandardOpenOption.WRITE,
+						StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			long size = in.size();
+			int numberOfSegments = (int) ((size + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+
+			// First pass: count the letters of each segment
+			List<Callable<Long>> counting = new ArrayList<>();
+			for (int i = 0; i < numberOfSegments; i++) {
+				long start = i * SEGMENT_SIZE;
+				long length = Math.min(SEGMENT_SIZE, size - start);
+				counting.add(() -> countLetters(in.map(FileChannel.MapMode.READ_ONLY, start, length)));
+			}
+			List<Long> numberOfLetters = getAll(pool.invokeAll(counting));
+
+			// Prefix sum of the counts: the position in the key at the start of
+			// each segment
+			List<Callable<Void>> transforming = new ArrayList<>();
+			long lettersBefore = 0;
+			for (int i = 0; i < numberOfSegments; i++) {
+				long start = i * SEGMENT_SIZE;
+				long length = Math.min(SEGMENT_SIZE, size - start);
+				int indexOfKey = (int) (lettersBefore % shifts.length);
+				transforming.add(() -> {
+					transform(in.map(FileChannel.MapMode.READ_ONLY, start, length),
+							out.map(FileChannel.MapMode.READ_WRITE, start, length), shifts, indexOfKey);
+					return null;
+				});
+				lettersBefore += numberOfLetters.get(i);
+			}
+
+			// Second pass: transform each segment from its position in the key
+			getAll(pool.invokeAll(transforming));
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Count the letters in a mapped segment.
+	 *
+	 * @param segment
+	 *            the segment to count
+	 * @return the number of letters in the segment
+	 */
+	private static long countLetters(MappedByteBuffer segment) {
+		long[] numberOfOccurrencesOfEachLetter = FrequencyAnalyser.countOccurrencesOfLetter(segment);
+		long numberOfLetters = 0;
+
+		for (long occurrences : numberOfOccurrencesOfEachLetter) {
+			numberOfLetters += occurrences;
+		}
+
+		return numberOfLetters;
+	}
+
+	/**
+	 * Shift the letters of a mapped segment into another one. The bytes are
+	 * copied a chunk at a time into an array, which is much faster to
+	 * transform than the mapped memory directly.
+	 *
+	 * @param source
+	 *            the segment to transform
+	 * @param destination
+	 *            the segment to write the result to
+	 * @param shifts
+	 *            the shifts of the key
+	 * @param indexOfKey
+	 *            the position in the key of the first letter of the segment
+	 */
+	private static void transform(MappedByteBuffer source, MappedByteBuffer destination, int[] shifts,
+			int indexOfKey) {
+		byte[] chunk = new byte[BUFFER_SIZE];
+
+		while (source.hasRemaining()) {
+			int length = Math.min(chunk.length, source.remaining());
+			source.get(chunk, 0, length);
+			indexOfKey = VigenereCipher.transform(chunk, 0, chunk, 0, length, shifts, indexOfKey);
+			destination.put(chunk, 0, length);
+		}
+	}
+
+	/**
+	 * Wait for the results of the tasks, in order.
+	 *
+	 * @param futures
+	 *            the futures of the tasks
+	 * @return the results of the tasks
+	 * @throws IOException
+	 *             a task failed reading or writing a file
+	 */
+	private static <T> List<T> getAll(List<Future<T>> futures) throws IOException {
+		List<T> results = new ArrayList<>(futures.size());
+
+		try {
+			for (Future<T> future : futures) {
+				results.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while transforming the file", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+
+		return results;
+	}
+}
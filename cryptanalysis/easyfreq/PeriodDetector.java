@@ -0,0 +1,268 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.Arrays;
+
+/**
+ * This class finds the likely periods, i.e. key lengths, of a
+ * Vigen&egrave;re ciphertext from the coincidences of its letters with the
+ * letters of the same ciphertext shifted by every possible distance.
+ *
+ * <p>
+ * Two letters of the ciphertext at a distance multiple of the key length are
+ * encrypted with the same letter of the key, so they are the same about as
+ * often as two letters of English (6.7% of the time); at any other distance
+ * they are the same about as often as two random letters (3.8%). The number of
+ * coincidences at the distance s is sum over the letters c of the
+ * autocorrelation of the signal which is 1 where the ciphertext has the letter
+ * c and 0 elsewhere. The autocorrelations of all the distances at once are
+ * computed with fast Fourier transforms, in O(n log n) instead of O(n^2): the
+ * power spectra of the 26 signals (transformed two at a time) are added up, and
+ * a single inverse transform gives the coincidences.
+ *
+ * <p>
+ * Each period p is then scored by the coincidences at all the multiples of p
+ * up to half the length of the text, compared with the number expected by
+ * chance. The true period has the highest score: its multiples have as many
+ * coincidences but fewer distances to count them on, and its divisors only
+ * have the excess at some of their multiples.
+ *
+ * <p>
+ * Only the first {@value #MAXIMUM_SAMPLE_LENGTH} letters are used, which bounds
+ * the memory used by the transforms and is enough for periods of thousands of
+ * letters.
+ *
+ * @author Oana Ivanovici
+ */
+public class PeriodDetector {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The largest number of letters of a ciphertext analysed
+	 */
+	public static final int MAXIMUM_SAMPLE_LENGTH = 1 << 18;
+
+	/**
+	 * The smallest period considered
+	 */
+	private static final int MINIMUM_PERIOD = 2;
+
+	/**
+	 * The largest period considered
+	 */
+	private final int maxPeriod;
+
+	/**
+	 * Create a detector of the periods from 2 to maxPeriod.
+	 *
+	 * @param maxPeriod
+	 *            the largest period considered; a period is only found if the
+	 *            text is several times longer
+	 */
+	public PeriodDetector(int maxPeriod) {
+		if (maxPeriod < MINIMUM_PERIOD) {
+			throw new IllegalArgumentException("Maximum period must be at least " + MINIMUM_PERIOD);
+		}
+
+		this.maxPeriod = maxPeriod;
+	}
+
+	/**
+	 * This method counts the coincidences of a text with itself shifted by
+	 * every distance up to half its length: the element s is the number of
+	 * positions i such that the letters at i and i + s are the same.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters (see
+	 *            {@link Util#toLetterIndexes(CharSequence)})
+	 * @return the number of coincidences at each distance from 0 to half the
+	 *         number of letters analysed
+	 */
+	public long[] countCoincidences(byte[] letters) {
+		int length = Math.min(letters.length, MAXIMUM_SAMPLE_LENGTH);
+		int maxShift = length / 2;
+		// pad to avoid the circular wrap around of the correlation for the
+		// distances up to maxShift
+		int size = Integer.highestOneBit(Math.max(length + maxShift, 1) * 2 - 1);
+		double[] cos = new double[size];
+		double[] sin = new double[size];
+		double[] real = new double[size];
+		double[] imaginary = new double[size];
+		double[] powerSpectrum = new double[size];
+
+		// the twiddle factors of each stage of the transforms, next to each
+		// other: exp(-i pi k / half) for k < half is at half + k
+		for (int half = 1; half < size; half <<= 1) {
+			for (int k = 0; k < half; k++) {
+				cos[half + k] = Math.cos(Math.PI * k / half);
+				sin[half + k] = -Math.sin(Math.PI * k / half);
+			}
+		}
+
+		// Transform the indicator signals of the letters two at a time, one as
+		// the real part and the other as the imaginary part: the sum of their
+		// power spectra at k is (|X(k)|^2 + |X(size - k)|^2) / 2
+		for (int c = 0; c < NUMBER_OF_LETTERS_IN_ALPHABET; c += 2) {
+			Arrays.fill(real, 0.0);
+			Arrays.fill(imaginary, 0.0);
+			for (int i = 0; i < length; i++) {
+				if (letters[i] == c) {
+					real[i] = 1.0;
+				} else if (letters[i] == c + 1) {
+					imaginary[i] = 1.0;
+				}
+			}
+
+			transform(real, imaginary, cos, sin);
+
+			for (int k = 0; k < size; k++) {
+				int mirror = (size - k) & (size - 1);
+				double power = real[k] * real[k] + imaginary[k] * imaginary[k];
+				double mirrorPower = real[mirror] * real[mirror] + imaginary[mirror] * imaginary[mirror];
+				powerSpectrum[k] += 0.5 * (power + mirrorPower);
+			}
+		}
+
+		// The inverse transform of the power spectrum is the autocorrelation;
+		// the spectrum is real and even, so the forward transform gives it as
+		// well, up to the factor 1 / size
+		Arrays.fill(imaginary, 0.0);
+		transform(powerSpectrum, imaginary, cos, sin);
+
+		long[] coincidences = new long[maxShift + 1];
+		for (int s = 0; s <= maxShift; s++) {
+			coincidences[s] = Math.round(powerSpectrum[s] / size);
+		}
+
+		return coincidences;
+	}
+
+	/**
+	 * This method scores every period by the coincidences at its multiples:
+	 * the score is the number of standard deviations by which they exceed the
+	 * number of coincidences expected by chance.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @return the score of each period, at the index of the period (0 for the
+	 *         periods too long for the text)
+	 */
+	public double[] scorePeriods(byte[] letters) {
+		int length = Math.min(letters.length, MAXIMUM_SAMPLE_LENGTH);
+		long[] coincidences = countCoincidences(letters);
+		double[] scores = new double[maxPeriod + 1];
+
+		// the probability that two letters drawn at random from the text are
+		// the same
+		long[] occurrences = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		for (int i = 0; i < length; i++) {
+			occurrences[letters[i]] += 1;
+		}
+		double probabilityOfCoincidence = 0.0;
+		for (long occurrence : occurrences) {
+			probabilityOfCoincidence += (double) occurrence * occurrence / ((double) length * length);
+		}
+
+		for (int p = MINIMUM_PERIOD; p <= maxPeriod && p < coincidences.length; p++) {
+			double observed = 0.0;
+			double pairs = 0.0;
+
+			for (int s = p; s < coincidences.length; s += p) {
+				observed += coincidences[s];
+				pairs += length - s;
+			}
+
+			double expected = pairs * probabilityOfCoincidence;
+			scores[p] = expected > 0.0 ? (observed - expected) / Math.sqrt(expected) : 0.0;
+		}
+
+		return scores;
+	}
+
+	/**
+	 * This method ranks the periods from the most to the least likely. Only
+	 * the periods with more coincidences than expected by chance are returned.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @return the likely periods, the most likely first
+	 */
+	public int[] rankPeriods(byte[] letters) {
+		double[] scores = scorePeriods(letters);
+		Integer[] periods = new Integer[scores.length];
+		int numberOfCandidates = 0;
+
+		for (int p = MINIMUM_PERIOD; p < scores.length; p++) {
+			if (scores[p] > 0.0) {
+				periods[numberOfCandidates++] = p;
+			}
+		}
+
+		Integer[] candidates = Arrays.copyOf(periods, numberOfCandidates);
+		Arrays.sort(candidates, (a, b) -> Double.compare(scores[b], scores[a]));
+
+		int[] ranking = new int[numberOfCandidates];
+		for (int i = 0; i < numberOfCandidates; i++) {
+			ranking[i] = candidates[i];
+		}
+
+		return ranking;
+	}
+
+	/**
+	 * Compute the discrete Fourier transform of a complex signal in place,
+	 * with the iterative radix-2 algorithm.
+	 *
+	 * @param real
+	 *            the real parts of the signal, whose length is a power of 2
+	 * @param imaginary
+	 *            the imaginary parts of the signal
+	 * @param cos
+	 *            the real parts of the twiddle factors, for each stage
+	 * @param sin
+	 *            the imaginary parts of the twiddle factors, for each stage
+	 */
+	private static void transform(double[] real, double[] imaginary, double[] cos, double[] sin) {
+		int size = real.length;
+
+		// reorder the signal by bit-reversed index
+		for (int i = 1, j = 0; i < size; i++) {
+			int bit = size >> 1;
+			for (; (j & bit) != 0; bit >>= 1) {
+				j ^= bit;
+			}
+			j ^= bit;
+
+			if (i < j) {
+				double temporary = real[i];
+				real[i] = real[j];
+				real[j] = temporary;
+				temporary = imaginary[i];
+				imaginary[i] = imaginary[j];
+				imaginary[j] = temporary;
+			}
+		}
+
+		// combine the transforms of the halves, doubling their length each time
+		for (int half = 1; half < size; half <<= 1) {
+			for (int start = 0; start < size; start += 2 * half) {
+				for (int k = 0; k < half; k++) {
+					int even = start + k;
+					int odd = even + half;
+					double twiddleReal = cos[half + k];
+					double twiddleImaginary = sin[half + k];
+					double oddReal = real[odd] * twiddleReal - imaginary[odd] * twiddleImaginary;
+					double oddImaginary = real[odd] * twiddleImaginary + imaginary[odd] * twiddleReal;
+
+					real[odd] = real[even] - oddReal;
+					imaginary[odd] = imaginary[even] - oddImaginary;
+					real[even] += oddReal;
+					imaginary[even] += oddImaginary;
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,217 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+/**
+ * An instance of this class scores how much a text looks like English from
+ * the probabilities of its quadgrams, i.e. its sequences of four consecutive
+ * letters.
+ *
+ * <p>
+ * The fitness of a text is the sum of the base 10 logarithms of the
+ * probabilities of its quadgrams, which is the logarithm of the probability of
+ * the text under a model where each letter depends on the three before it. It
+ * tells English apart from a wrong decryption much better than the frequencies
+ * of the single letters, especially on short texts: the higher, the more
+ * likely.
+ *
+ * <p>
+ * The logarithms are kept in a flat table of 26^4 floats indexed by the value
+ * of the quadgram in base 26. The table is built from a corpus, or from the
+ * quadgram counts of a {@link LanguageModel}. Scoring reads the text as
+ * indexes of its letters (see {@link Util#toLetterIndexes(CharSequence)}),
+ * with a rolling index, and allocates nothing.
+ *
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Oana Ivanovici
+ */
+public class QuadgramScorer {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The number of different trigrams, i.e. the weight in a quadgram of its
+	 * first letter
+	 */
+	private static final int NUMBER_OF_TRIGRAMS = NUMBER_OF_LETTERS_IN_ALPHABET * NUMBER_OF_LETTERS_IN_ALPHABET
+			* NUMBER_OF_LETTERS_IN_ALPHABET;
+
+	/**
+	 * The number of different quadgrams
+	 */
+	public static final int NUMBER_OF_QUADGRAMS = NUMBER_OF_TRIGRAMS * NUMBER_OF_LETTERS_IN_ALPHABET;
+
+	/**
+	 * The count given to the quadgrams that never occur in the corpus, so that
+	 * their logarithm is finite
+	 */
+	private static final double FLOOR_COUNT = 0.01;
+
+	/**
+	 * The base 10 logarithm of the probability of each quadgram
+	 */
+	private final float[] logProbabilities;
+
+	/**
+	 * Create a scorer from the logarithms of the probabilities of the
+	 * quadgrams.
+	 *
+	 * @param logProbabilities
+	 *            the table of the logarithms, which is not copied
+	 */
+	private QuadgramScorer(float[] logProbabilities) {
+		this.logProbabilities = logProbabilities;
+	}
+
+	/**
+	 * Build a scorer from the quadgrams of a corpus. The letters of the corpus
+	 * are taken in order, skipping any other character.
+	 *
+	 * @param corpus
+	 *            a long English text
+	 * @return the scorer
+	 */
+	public static QuadgramScorer build(CharSequence corpus) {
+		byte[] letters = Util.toLetterIndexes(corpus);
+		long[] counts = new long[NUMBER_OF_QUADGRAMS];
+		int index = 0;
+
+		for (int i = 0; i < letters.length; i++) {
+			index = nextIndex(index, letters, i);
+
+			if (i >= 3) {
+				counts[index] += 1;
+			}
+		}
+
+		return fromCounts(counts);
+	}
+
+	/**
+	 * Build a scorer from the counts of the quadgrams of a corpus.
+	 *
+	 * @param counts
+	 *            the number of occurrences of each quadgram, indexed by its
+	 *            value in base 26
+	 * @return the scorer
+	 */
+	public static QuadgramScorer fromCounts(long[] counts) {
+		if (counts.length != NUMBER_OF_QUADGRAMS) {
+			throw new IllegalArgumentException("There must be a count for each quadgram");
+		}
+
+		double total = 0.0;
+		for (long count : counts) {
+			total += count;
+		}
+		total = Math.max(total, 1.0);
+
+		float[] logProbabilities = new float[NUMBER_OF_QUADGRAMS];
+		for (int i = 0; i < NUMBER_OF_QUADGRAMS; i++) {
+			double count = counts[i] == 0 ? FLOOR_COUNT : counts[i];
+			logProbabilities[i] = (float) Math.log10(count / total);
+		}
+
+		return new QuadgramScorer(logProbabilities);
+	}
+
+	/**
+	 * Get the logarithm of the probability of a quadgram.
+	 *
+	 * @param quadgram
+	 *            the value of the quadgram in base 26, the first letter being
+	 *            the most significant
+	 * @return the base 10 logarithm of its probability
+	 */
+	public float logProbability(int quadgram) {
+		return logProbabilities[quadgram];
+	}
+
+	/**
+	 * Calculate the fitness of a text given as indexes of its letters.
+	 *
+	 * @param letters
+	 *            the indexes of the letters, all between 0 and 25
+	 * @param offset
+	 *            the index of the first letter to score
+	 * @param length
+	 *            the number of letters to score
+	 * @return the sum of the logarithms of the probabilities of the quadgrams
+	 */
+	public double score(byte[] letters, int offset, int length) {
+		double score = 0.0;
+		int index = 0;
+
+		for (int i = offset; i < offset + length; i++) {
+			index = nextIndex(index, letters, i);
+
+			if (i >= offset + 3) {
+				score += logProbabilities[index];
+			}
+		}
+
+		return score;
+	}
+
+	/**
+	 * Calculate the fitness of a text given as indexes of its letters once
+	 * shifted by a key, without changing the letters. Each letter is shifted by
+	 * the next element of the shifts, cyclically: with
+	 * {@link VigenereCipher#decryptionShifts(String)} this is the fitness of
+	 * the plaintext of a ciphertext.
+	 *
+	 * @param letters
+	 *            the indexes of the letters, all between 0 and 25
+	 * @param offset
+	 *            the index of the first letter to score
+	 * @param length
+	 *            the number of letters to score
+	 * @param shifts
+	 *            the shifts of the key, between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the sum of the logarithms of the probabilities of the quadgrams
+	 *         of the shifted letters
+	 */
+	public double score(byte[] letters, int offset, int length, int[] shifts, int indexOfKey) {
+		double score = 0.0;
+		int index = 0;
+
+		for (int i = offset; i < offset + length; i++) {
+			int shifted = letters[i] + shifts[indexOfKey];
+			if (shifted >= NUMBER_OF_LETTERS_IN_ALPHABET) {
+				shifted -= NUMBER_OF_LETTERS_IN_ALPHABET;
+			}
+			indexOfKey = indexOfKey + 1 < shifts.length ? indexOfKey + 1 : 0;
+
+			// drop the first letter of the previous quadgram and append the
+			// new one
+			index = (index % NUMBER_OF_TRIGRAMS) * NUMBER_OF_LETTERS_IN_ALPHABET + shifted;
+
+			if (i >= offset + 3) {
+				score += logProbabilities[index];
+			}
+		}
+
+		return score;
+	}
+
+	/**
+	 * Find the index of the quadgram ending at a letter from the index of the
+	 * quadgram ending at the letter before.
+	 *
+	 * @param index
+	 *            the index of the previous quadgram
+	 * @param letters
+	 *            the indexes of the letters
+	 * @param i
+	 *            the position of the last letter of the quadgram
+	 * @return the index of the quadgram
+	 */
+	private static int nextIndex(int index, byte[] letters, int i) {
+		return (index % NUMBER_OF_TRIGRAMS) * NUMBER_OF_LETTERS_IN_ALPHABET + letters[i];
+	}
+}
@@ -0,0 +1,62 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+/**
+ * A kernel shifting letters by the letters of a Vigen&egrave;re key, on which
+ * {@link VigenereCipher} runs its byte and letter-only transformations. There
+ * is a plain Java kernel, and one written with the Vector API (see
+ * {@link VigenereCipher#KERNEL}).
+ *
+ * @author Oana Ivanovici
+ */
+interface ShiftKernel {
+
+	/**
+	 * Shift every letter in a range of bytes, in an ASCII-compatible encoding,
+	 * and write them in upper case; the other bytes are copied as they are and
+	 * do not move the key.
+	 *
+	 * @param source
+	 *            the bytes to shift
+	 * @param sourceOffset
+	 *            the index of the first byte to shift
+	 * @param destination
+	 *            the array to write the shifted bytes to, which may be the
+	 *            source with the same offset
+	 * @param destinationOffset
+	 *            the index where the shifted bytes are written from
+	 * @param length
+	 *            the number of bytes to shift
+	 * @param shifts
+	 *            the shifts of the key, all between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the position in the key of the letter following the range
+	 */
+	int transform(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length,
+			int[] shifts, int indexOfKey);
+
+	/**
+	 * Shift a range of letters given as indexes in the alphabet (see
+	 * {@link Util#toLetterIndexes(CharSequence)}). As there is no character to
+	 * skip, the position in the key of each letter is known in advance.
+	 *
+	 * @param letters
+	 *            the indexes of the letters to shift, all between 0 and 25
+	 * @param offset
+	 *            the index of the first letter to shift
+	 * @param destination
+	 *            the array to write the indexes of the shifted letters to,
+	 *            which may be the letters with the same offset
+	 * @param destinationOffset
+	 *            the index where the shifted letters are written from
+	 * @param length
+	 *            the number of letters to shift
+	 * @param shifts
+	 *            the shifts of the key, all between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the position in the key of the letter following the range
+	 */
+	int shiftLetters(byte[] letters, int offset, byte[] destination, int destinationOffset, int length, int[] shifts,
+			int indexOfKey);
+}
@@ -0,0 +1,281 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+/**
+ * An instance of this class scores the 26 possible keys of a shift cipher
+ * against a reference distribution of the letters, from the counts of the
+ * letters of the ciphertext alone.
+ *
+ * <p>
+ * Decrypting a shift cipher with the key k turns the ciphertext letter i + k
+ * into the plaintext letter i, so the counts of the plaintext are the counts
+ * of the ciphertext rotated by k: no trial decryption is needed, and scoring
+ * all the keys is a 26 &times; 26 loop over the counts, which allocates
+ * nothing. This works for a Caesar ciphertext as a whole as well as for a
+ * column of a Vigen&egrave;re ciphertext.
+ *
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ *
+ * @author Oana Ivanovici
+ */
+public class ShiftScorer {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The standard frequencies (in percent) of the letters of the English
+	 * alphabet
+	 */
+	private static final double[] ENGLISH_LETTER_FREQUENCIES = { 8.167, 1.492, 2.782, 4.253, 12.702, 2.228, 2.015,
+			6.094, 6.966, 0.153, 0.772, 4.025, 2.406, 6.749, 7.507, 1.929, 0.095, 5.987, 6.327, 9.056, 2.758, 0.978,
+			2.360, 0.150, 1.974, 0.074 };
+
+	/**
+	 * A scorer against the standard frequencies of the English letters.
+	 */
+	public static final ShiftScorer ENGLISH = new ShiftScorer(ENGLISH_LETTER_FREQUENCIES);
+
+	/**
+	 * The reference distribution, i.e. the probability of each letter
+	 */
+	private final double[] probabilities;
+
+	/**
+	 * The natural logarithm of the probability of each letter
+	 */
+	private final double[] logProbabilities;
+
+	/**
+	 * Create a scorer against a reference distribution of the letters.
+	 *
+	 * @param frequencies
+	 *            the frequency of each letter, in any unit (e.g. counts,
+	 *            percentages or relative frequencies): they are normalised
+	 */
+	public ShiftScorer(double[] frequencies) {
+		if (frequencies.length != NUMBER_OF_LETTERS_IN_ALPHABET) {
+			throw new IllegalArgumentException("There must be a frequency for each letter");
+		}
+
+		double total = 0.0;
+		for (double frequency : frequencies) {
+			if (!(frequency > 0.0)) {
+				throw new IllegalArgumentException("Frequencies must be positive");
+			}
+			total += frequency;
+		}
+
+		this.probabilities = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
+		this.logProbabilities = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			this.probabilities[i] = frequencies[i] / total;
+			this.logProbabilities[i] = Math.log(this.probabilities[i]);
+		}
+	}
+
+	/**
+	 * Create a scorer against the distribution of a (complete) frequency
+	 * table, e.g. the analysis of a text in the language of the plaintext.
+	 *
+	 * @param table
+	 *            the frequency table of the reference text
+	 */
+	public ShiftScorer(FrequencyTable table) {
+		this(table.getTable());
+	}
+
+	/**
+	 * Get a copy of the reference distribution.
+	 *
+	 * @return the probability of each letter
+	 */
+	public double[] getProbabilities() {
+		return probabilities.clone();
+	}
+
+	/**
+	 * Calculate the chi squared of the plaintext obtained with each key,
+	 * chiSquared = sum (Count i - Expected i)^2/Expected i. The lower, the
+	 * closer to the reference distribution.
+	 *
+	 * @param counts
+	 *            the counts of the letters of the ciphertext
+	 * @param scores
+	 *            the array of 26 elements to write the chi squared of each key
+	 *            to
+	 */
+	public void chiSquared(long[] counts, double[] scores) {
+		double numberOfLetters = sum(counts);
+
+		for (int key = 0; key < NUMBER_OF_LETTERS_IN_ALPHABET; key++) {
+			scores[key] = chiSquared(counts, key, numberOfLetters);
+		}
+	}
+
+	/**
+	 * Calculate the correlation of the plaintext obtained with each key with
+	 * the reference distribution, i.e. sum Count i * Probability i. The
+	 * higher, the closer to the reference distribution.
+	 *
+	 * @param counts
+	 *            the counts of the letters of the ciphertext
+	 * @param scores
+	 *            the array of 26 elements to write the correlation of each key
+	 *            to
+	 */
+	public void correlation(long[] counts, double[] scores) {
+		for (int key = 0; key < NUMBER_OF_LETTERS_IN_ALPHABET; key++) {
+			scores[key] = correlation(counts, key);
+		}
+	}
+
+	/**
+	 * Calculate the log-likelihood of the plaintext obtained with each key,
+	 * i.e. the natural logarithm of the probability of drawing its letters
+	 * from the reference distribution, sum Count i * log Probability i. The
+	 * higher, the more likely. With a uniform prior on the keys, the posterior
+	 * probability of a key is proportional to the exponential of its
+	 * log-likelihood.
+	 *
+	 * @param counts
+	 *            the counts of the letters of the ciphertext
+	 * @param scores
+	 *            the array of 26 elements to write the log-likelihood of each
+	 *            key to
+	 */
+	public void logLikelihood(long[] counts, double[] scores) {
+		for (int key = 0; key < NUMBER_OF_LETTERS_IN_ALPHABET; key++) {
+			double logLikelihood = 0.0;
+
+			for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+				logLikelihood += counts[rotate(i, key)] * logProbabilities[i];
+			}
+			scores[key] = logLikelihood;
+		}
+	}
+
+	/**
+	 * Find the key whose plaintext has the lowest chi squared.
+	 *
+	 * @param counts
+	 *            the counts of the letters of the ciphertext
+	 * @return the best key, between 0 and 25
+	 */
+	public int bestShiftByChiSquared(long[] counts) {
+		double numberOfLetters = sum(counts);
+		double lowestChiSquared = Double.POSITIVE_INFINITY;
+		int bestKey = 0;
+
+		for (int key = 0; key < NUMBER_OF_LETTERS_IN_ALPHABET; key++) {
+			double chiSquared = chiSquared(counts, key, numberOfLetters);
+
+			if (chiSquared < lowestChiSquared) {
+				lowestChiSquared = chiSquared;
+				bestKey = key;
+			}
+		}
+
+		return bestKey;
+	}
+
+	/**
+	 * Find the key whose plaintext has the highest correlation with the
+	 * reference distribution.
+	 *
+	 * @param counts
+	 *            the counts of the letters of the ciphertext
+	 * @return the best key, between 0 and 25
+	 */
+	public int bestShiftByCorrelation(long[] counts) {
+		double highestCorrelation = Double.NEGATIVE_INFINITY;
+		int bestKey = 0;
+
+		for (int key = 0; key < NUMBER_OF_LETTERS_IN_ALPHABET; key++) {
+			double correlation = correlation(counts, key);
+
+			if (correlation > highestCorrelation) {
+				highestCorrelation = correlation;
+				bestKey = key;
+			}
+		}
+
+		return bestKey;
+	}
+
+	/**
+	 * Calculate the chi squared of the plaintext obtained with a key.
+	 *
+	 * @param counts
+	 *            the counts of the letters of the ciphertext
+	 * @param key
+	 *            the key
+	 * @param numberOfLetters
+	 *            the sum of the counts
+	 * @return the chi squared
+	 */
+	private double chiSquared(long[] counts, int key, double numberOfLetters) {
+		double chiSquared = 0.0;
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			double expected = numberOfLetters * probabilities[i];
+			double difference = counts[rotate(i, key)] - expected;
+			chiSquared += difference * difference / expected;
+		}
+
+		return chiSquared;
+	}
+
+	/**
+	 * Calculate the correlation of the plaintext obtained with a key.
+	 *
+	 * @param counts
+	 *            the counts of the letters of the ciphertext
+	 * @param key
+	 *            the key
+	 * @return the correlation
+	 */
+	private double correlation(long[] counts, int key) {
+		double correlation = 0.0;
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			correlation += counts[rotate(i, key)] * probabilities[i];
+		}
+
+		return correlation;
+	}
+
+	/**
+	 * Find the ciphertext letter that the key decrypts to a plaintext letter.
+	 *
+	 * @param indexOfLetter
+	 *            the index of the plaintext letter
+	 * @param key
+	 *            the key
+	 * @return the index of the ciphertext letter
+	 */
+	private static int rotate(int indexOfLetter, int key) {
+		int rotated = indexOfLetter + key;
+
+		return rotated < NUMBER_OF_LETTERS_IN_ALPHABET ? rotated : rotated - NUMBER_OF_LETTERS_IN_ALPHABET;
+	}
+
+	/**
+	 * Add up the counts of the letters.
+	 *
+	 * @param counts
+	 *            the counts of the letters
+	 * @return the total number of letters
+	 */
+	private static double sum(long[] counts) {
+		double total = 0.0;
+
+		for (long count : counts) {
+			total += count;
+		}
+
+		return total;
+	}
+}
@@ -0,0 +1,272 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.Arrays;
+
+/**
+ * An instance of this class keeps the statistics of the last letters of a
+ * stream of text, e.g. intercepted traffic, up to the size of a window.
+ *
+ * <p>
+ * The letters of the window are kept in a ring buffer: appending a letter
+ * when the window is full evicts the oldest one. Together with the count of
+ * each letter, the analyser updates the two sums the statistics are made of,
+ * sum Count i * (Count i - 1) for the index of coincidence and sum Count i^2 /
+ * Probability i for the chi squared against the reference distribution, so
+ * each letter costs a constant number of operations and reading a statistic
+ * never rescans the window. (The second sum is a floating point number; it is
+ * recomputed from the counts each time the ring buffer wraps around, so that
+ * rounding errors do not build up over a long stream.)
+ *
+ * <p>
+ * A window of English has an index of coincidence around 0.067 and a low chi
+ * squared; a segment encrypted with a shift or a substitution keeps the index
+ * but not the chi squared, and a segment encrypted with a polyalphabetic
+ * cipher such as Vigen&egrave;re's has an index closer to 0.038.
+ *
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @author Oana Ivanovici
+ */
+public class SlidingWindowAnalyser {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The indexes of the letters of the window, in the order they were
+	 * appended from {@link #head}, cyclically
+	 */
+	private final byte[] window;
+
+	/**
+	 * The reciprocal of the probability of each letter in the reference
+	 * distribution
+	 */
+	private final double[] inverseProbabilities;
+
+	/**
+	 * The number of occurrences of each letter in the window
+	 */
+	private final int[] counts = new int[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+	/**
+	 * The position in the ring buffer where the next letter is written, i.e.
+	 * of the oldest letter once the window is full
+	 */
+	private int head;
+
+	/**
+	 * The number of letters in the window
+	 */
+	private int numberOfLetters;
+
+	/**
+	 * Sum Count i * (Count i - 1) over the letters
+	 */
+	private long sumOfPairs;
+
+	/**
+	 * Sum Count i^2 / Probability i over the letters
+	 */
+	private double sumOfWeightedSquares;
+
+	/**
+	 * Create an analyser of the last letters of a stream of English text.
+	 *
+	 * @param windowSize
+	 *            the number of letters of the window
+	 */
+	public SlidingWindowAnalyser(int windowSize) {
+		this(windowSize, ShiftScorer.ENGLISH);
+	}
+
+	/**
+	 * Create an analyser of the last letters of a stream.
+	 *
+	 * @param windowSize
+	 *            the number of letters of the window
+	 * @param reference
+	 *            the scorer holding the reference distribution of the letters
+	 *            of the language, to calculate the chi squared against
+	 */
+	public SlidingWindowAnalyser(int windowSize, ShiftScorer reference) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("Window size must be positive");
+		}
+
+		this.window = new byte[windowSize];
+		this.inverseProbabilities = reference.getProbabilities();
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			inverseProbabilities[i] = 1.0 / inverseProbabilities[i];
+		}
+	}
+
+	/**
+	 * Append a character to the stream. Characters that are not letters are
+	 * skipped.
+	 *
+	 * @param character
+	 *            the character
+	 * @return <code>true</code> if the character is a letter, and was appended
+	 */
+	public boolean append(char character) {
+		int indexOfLetter = Util.letterIndex(character);
+
+		if (indexOfLetter == Util.NOT_A_LETTER) {
+			return false;
+		}
+
+		appendLetter(indexOfLetter);
+		return true;
+	}
+
+	/**
+	 * Append the characters of a text to the stream. Characters that are not
+	 * letters are skipped.
+	 *
+	 * @param text
+	 *            the text
+	 * @return this analyser
+	 */
+	public SlidingWindowAnalyser append(CharSequence text) {
+		for (int i = 0; i < text.length(); i++) {
+			append(text.charAt(i));
+		}
+
+		return this;
+	}
+
+	/**
+	 * Append a letter to the stream, evicting the oldest letter of the window
+	 * if it is full.
+	 *
+	 * @param letter
+	 *            the index of the letter, between 0 and 25
+	 */
+	public void appendLetter(int letter) {
+		if (numberOfLetters == window.length) {
+			int evicted = window[head];
+			counts[evicted] -= 1;
+			sumOfPairs -= 2L * counts[evicted];
+			sumOfWeightedSquares -= (2.0 * counts[evicted] + 1.0) * inverseProbabilities[evicted];
+		} else {
+			numberOfLetters += 1;
+		}
+
+		sumOfPairs += 2L * counts[letter];
+		sumOfWeightedSquares += (2.0 * counts[letter] + 1.0) * inverseProbabilities[letter];
+		counts[letter] += 1;
+
+		window[head] = (byte) letter;
+		head += 1;
+		if (head == window.length) {
+			head = 0;
+			recomputeSumOfWeightedSquares();
+		}
+	}
+
+	/**
+	 * Empty the window.
+	 */
+	public void clear() {
+		Arrays.fill(counts, 0);
+		head = 0;
+		numberOfLetters = 0;
+		sumOfPairs = 0;
+		sumOfWeightedSquares = 0.0;
+	}
+
+	/**
+	 * Get the number of letters the window holds when it is full.
+	 *
+	 * @return the size of the window
+	 */
+	public int getWindowSize() {
+		return window.length;
+	}
+
+	/**
+	 * Get the number of letters in the window.
+	 *
+	 * @return the number of letters, at most the size of the window
+	 */
+	public int getNumberOfLetters() {
+		return numberOfLetters;
+	}
+
+	/**
+	 * Get the number of occurrences of each letter in the window.
+	 *
+	 * @return a copy of the counts, indexed from A = 0 to Z = 25, e.g. for
+	 *         {@link ShiftScorer#bestShiftByChiSquared(long[])}
+	 */
+	public long[] getCounts() {
+		long[] copy = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			copy[i] = counts[i];
+		}
+
+		return copy;
+	}
+
+	/**
+	 * Get the frequency table of the letters in the window.
+	 *
+	 * @return a new frequency table
+	 */
+	public FrequencyTable getFrequencyTable() {
+		if (numberOfLetters == 0) {
+			throw new IllegalStateException("The window is empty");
+		}
+
+		return FrequencyAnalyser.toFrequencyTable(getCounts());
+	}
+
+	/**
+	 * Calculate the index of coincidence of the letters in the window, i.e.
+	 * the probability that two of them picked at random are the same.
+	 *
+	 * @return the index of coincidence, or 0 if there are less than two
+	 *         letters
+	 */
+	public double indexOfCoincidence() {
+		if (numberOfLetters < 2) {
+			return 0.0;
+		}
+
+		return sumOfPairs / (numberOfLetters * (numberOfLetters - 1.0));
+	}
+
+	/**
+	 * Calculate the chi squared of the letters in the window against the
+	 * reference distribution, sum (Count i - Expected i)^2 / Expected i, which
+	 * is sum Count i^2 / (N * Probability i) - N for N letters. The lower, the
+	 * closer to the reference distribution.
+	 *
+	 * @return the chi squared, or 0 if the window is empty
+	 */
+	public double chiSquared() {
+		if (numberOfLetters == 0) {
+			return 0.0;
+		}
+
+		return Math.max(0.0, sumOfWeightedSquares / numberOfLetters - numberOfLetters);
+	}
+
+	/**
+	 * Recompute sum Count i^2 / Probability i from the counts.
+	 */
+	private void recomputeSumOfWeightedSquares() {
+		double sum = 0.0;
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			sum += (double) counts[i] * counts[i] * inverseProbabilities[i];
+		}
+
+		sumOfWeightedSquares = sum;
+	}
+}
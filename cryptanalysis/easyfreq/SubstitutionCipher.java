@@ -0,0 +1,136 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+/**
+ * This class encrypts and decrypts according to the monoalphabetic
+ * substitution cipher.
+ *
+ * <p>
+ * The key is a permutation of the 26 letters of the alphabet: its i-th letter
+ * replaces the i-th letter of the alphabet, e.g. with the key
+ * "QWERTYUIOPASDFGHJKLZXCVBNM" A is encrypted as Q and B as W. As with
+ * {@link VigenereCipher}, letters are encrypted in upper case and any other
+ * character is left as it is.
+ *
+ * @author Oana Ivanovici
+ */
+public class SubstitutionCipher {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * Encryption function of the substitution cipher.
+	 *
+	 * @param plaintext
+	 *            the plaintext to encrypt
+	 * @param key
+	 *            the encryption key, a permutation of the alphabet
+	 * @return the ciphertext according with the substitution cipher
+	 */
+	public static String encrypt(String plaintext, String key) {
+		char[] ciphertext = plaintext.toCharArray();
+		substitute(ciphertext, encryptionSubstitutions(key));
+
+		return new String(ciphertext);
+	}
+
+	/**
+	 * Decryption function of the substitution cipher.
+	 *
+	 * @param ciphertext
+	 *            the encrypted text
+	 * @param key
+	 *            the encryption key, a permutation of the alphabet
+	 * @return the plaintext according with the substitution cipher
+	 */
+	public static String decrypt(String ciphertext, String key) {
+		char[] plaintext = ciphertext.toCharArray();
+		substitute(plaintext, decryptionSubstitutions(key));
+
+		return new String(plaintext);
+	}
+
+	/**
+	 * Find the index of the ciphertext letter of each plaintext letter.
+	 *
+	 * @param key
+	 *            the encryption key, a permutation of the alphabet
+	 * @return the index of the letter replacing each letter when encrypting
+	 */
+	public static int[] encryptionSubstitutions(String key) {
+		if (key.length() != NUMBER_OF_LETTERS_IN_ALPHABET) {
+			throw new IllegalArgumentException("Key must have " + NUMBER_OF_LETTERS_IN_ALPHABET + " letters");
+		}
+
+		int[] substitutions = new int[NUMBER_OF_LETTERS_IN_ALPHABET];
+		boolean[] used = new boolean[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			int indexOfLetter = Util.letterIndex(key.charAt(i));
+
+			if (indexOfLetter == Util.NOT_A_LETTER || used[indexOfLetter]) {
+				throw new IllegalArgumentException("Key must be a permutation of the alphabet");
+			}
+			used[indexOfLetter] = true;
+			substitutions[i] = indexOfLetter;
+		}
+
+		return substitutions;
+	}
+
+	/**
+	 * Find the index of the plaintext letter of each ciphertext letter.
+	 *
+	 * @param key
+	 *            the encryption key, a permutation of the alphabet
+	 * @return the index of the letter replacing each letter when decrypting
+	 */
+	public static int[] decryptionSubstitutions(String key) {
+		int[] encryption = encryptionSubstitutions(key);
+		int[] substitutions = new int[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			substitutions[encryption[i]] = i;
+		}
+
+		return substitutions;
+	}
+
+	/**
+	 * Build the encryption key of the substitution cipher given by the
+	 * substitutions that decrypt it.
+	 *
+	 * @param substitutions
+	 *            the index of the plaintext letter of each ciphertext letter
+	 * @return the encryption key
+	 */
+	public static String keyOfDecryption(int[] substitutions) {
+		char[] key = new char[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			key[substitutions[i]] = Util.indexToChar(i);
+		}
+
+		return new String(key);
+	}
+
+	/**
+	 * Replace the letters of a text in place.
+	 *
+	 * @param text
+	 *            the text to transform
+	 * @param substitutions
+	 *            the index of the letter replacing each letter
+	 */
+	static void substitute(char[] text, int[] substitutions) {
+		for (int i = 0; i < text.length; i++) {
+			int indexOfLetter = Util.letterIndex(text[i]);
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				text[i] = (char) (Util.OFFSET + substitutions[indexOfLetter]);
+			}
+		}
+	}
+}
@@ -0,0 +1,651 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+
+/**
+ * This class is for the cryptanalysis of ciphertext encrypted with the
+ * monoalphabetic substitution cipher (see {@link SubstitutionCipher}).
+ *
+ * <p>
+ * The key is searched by simulated annealing on the quadgram fitness of the
+ * plaintext. The search starts from the key mapping the letters of the
+ * ciphertext, ranked by frequency, to the letters of a reference frequency
+ * table ranked the same way, and moves by swapping the plaintext letters of
+ * two ciphertext letters. A move that makes the plaintext worse is still
+ * accepted with a probability decreasing with the temperature, which falls to
+ * 0 during the search, so that it does not get stuck on the first local
+ * optimum.
+ *
+ * <p>
+ * No move decrypts the text: the distinct quadgrams of the ciphertext and
+ * their counts are listed once, along with, for each letter, the quadgrams
+ * containing it. Swapping two letters only changes the plaintext of the
+ * quadgrams containing either of them, so the change of fitness is the sum of
+ * the changes of those quadgrams, weighted by their counts.
+ *
+ * <p>
+ * Several independent searches, with different random moves, run in parallel
+ * on a fork/join pool, and the key of the best plaintext is kept.
+ *
+ * <p>
+ * An instance only holds the model of the language of the plaintext: each
+ * cryptanalysis takes its ciphertext and returns its own immutable
+ * {@link Result}, so a single instance can crack many ciphertexts at once from
+ * different threads.
+ *
+ * @author Oana Ivanovici
+ */
+public class SubstitutionCryptanalysis {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The number of letters at the beginning of the ciphertext whose quadgrams
+	 * are scored
+	 */
+	private static final int SAMPLE_LENGTH = 3000;
+
+	/**
+	 * The number of moves tried by each search
+	 */
+	private static final int ITERATIONS = 100000;
+
+	/**
+	 * The temperature at the start of each search, per 1000 quadgrams of the
+	 * ciphertext
+	 */
+	private static final double INITIAL_TEMPERATURE = 20.0;
+
+	/**
+	 * The scorer of the quadgrams of the plaintext
+	 */
+	private final QuadgramScorer quadgramScorer;
+
+	/**
+	 * The frequency table the letters of the ciphertext are first mapped to
+	 */
+	private final FrequencyTable referenceTable;
+
+	/**
+	 * The number of independent searches
+	 */
+	private final int numberOfSearches;
+
+	/**
+	 * The number of threads the searches run on
+	 */
+	private final int parallelism;
+
+	/**
+	 * Create a new class to cryptanalyse texts, with a search per processor.
+	 *
+	 * @param quadgramScorer
+	 *            the scorer of the quadgrams of the plaintext
+	 */
+	public SubstitutionCryptanalysis(QuadgramScorer quadgramScorer) {
+		this(quadgramScorer, Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a new class to cryptanalyse texts with the model of the language
+	 * of the plaintext, whose quadgrams are scored and whose letter
+	 * frequencies the search starts from, with a search per processor.
+	 *
+	 * @param model
+	 *            the language model, with quadgrams
+	 */
+	public SubstitutionCryptanalysis(LanguageModel model) {
+		this(model.getQuadgramScorer(), model.getFrequencyTable(), Runtime.getRuntime().availableProcessors(),
+				Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a new class to cryptanalyse texts, starting from the frequencies
+	 * of the English letters.
+	 *
+	 * @param quadgramScorer
+	 *            the scorer of the quadgrams of the plaintext
+	 * @param numberOfSearches
+	 *            the number of independent searches
+	 * @param parallelism
+	 *            the number of threads the searches run on
+	 */
+	public SubstitutionCryptanalysis(QuadgramScorer quadgramScorer, int numberOfSearches, int parallelism) {
+		this(quadgramScorer, englishTable(), numberOfSearches, parallelism);
+	}
+
+	/**
+	 * Create a new class to cryptanalyse texts.
+	 *
+	 * @param quadgramScorer
+	 *            the scorer of the quadgrams of the plaintext
+	 * @param referenceTable
+	 *            a complete frequency table the letters of the ciphertext are
+	 *            first mapped to
+	 * @param numberOfSearches
+	 *            the number of independent searches
+	 * @param parallelism
+	 *            the number of threads the searches run on
+	 */
+	public SubstitutionCryptanalysis(QuadgramScorer quadgramScorer, FrequencyTable referenceTable,
+			int numberOfSearches, int parallelism) {
+		if (numberOfSearches < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Number of searches and parallelism must be positive");
+		} else if (quadgramScorer == null) {
+			throw new IllegalArgumentException("Quadgram scorer must not be null");
+		}
+
+		this.quadgramScorer = quadgramScorer;
+		this.referenceTable = referenceTable;
+		this.numberOfSearches = numberOfSearches;
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * This method conducts the cryptanalysis of the ciphertext to retrieve the
+	 * encryption key.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext, with at least a letter
+	 * @return the key and the plaintext as result of the cryptanalysis
+	 */
+	public Result cryptanalysis(CharSequence ciphertext) {
+		long start = System.nanoTime();
+		String text = ciphertext.toString();
+		byte[] letters = Util.toLetterIndexes(text);
+		if (letters.length == 0) {
+			throw new IllegalArgumentException("Ciphertext must contain at least a letter");
+		}
+
+		CiphertextQuadgrams quadgrams = new CiphertextQuadgrams(letters, Math.min(letters.length, SAMPLE_LENGTH));
+		int[] seed = rankBySubstitution(letters);
+
+		List<Callable<Search>> searches = new ArrayList<>();
+		for (int i = 0; i < numberOfSearches; i++) {
+			long randomSeed = i;
+			searches.add(() -> anneal(quadgrams, seed, new SplittableRandom(randomSeed), start));
+		}
+
+		Search best = null;
+		long numberOfIterations = 0;
+
+		for (Search search : Util.invokeAll(searches, parallelism, "cracking the substitution")) {
+			numberOfIterations += search.iterations;
+			if (best == null || search.score > best.score) {
+				best = search;
+			}
+		}
+
+		return new Result(text, SubstitutionCipher.keyOfDecryption(best.substitutions), best.score,
+				numberOfIterations, System.nanoTime() - start, best.timeToBest);
+	}
+
+	/**
+	 * Map the letters of the ciphertext to the letters of the reference table
+	 * of the same rank by frequency.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @return the plaintext letter of each ciphertext letter
+	 */
+	private int[] rankBySubstitution(byte[] letters) {
+		long[] counts = new long[NUMBER_OF_LETTERS_IN_ALPHABET];
+		for (byte letter : letters) {
+			counts[letter] += 1;
+		}
+
+		FrequencyTable ciphertextTable = FrequencyAnalyser.toFrequencyTable(counts);
+		Integer[] ciphertextRanking = rank(ciphertextTable);
+		Integer[] referenceRanking = rank(referenceTable);
+		int[] substitutions = new int[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			substitutions[ciphertextRanking[i]] = referenceRanking[i];
+		}
+
+		return substitutions;
+	}
+
+	/**
+	 * Rank the letters from the most to the least frequent.
+	 *
+	 * @param table
+	 *            the frequency table
+	 * @return the indexes of the letters, the most frequent first
+	 */
+	private static Integer[] rank(FrequencyTable table) {
+		double[] frequencies = table.getTable();
+		Integer[] ranking = new Integer[NUMBER_OF_LETTERS_IN_ALPHABET];
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			ranking[i] = i;
+		}
+		Arrays.sort(ranking, (a, b) -> Double.compare(frequencies[b], frequencies[a]));
+
+		return ranking;
+	}
+
+	/**
+	 * Search the key by simulated annealing from a key.
+	 *
+	 * @param quadgrams
+	 *            the quadgrams of the ciphertext
+	 * @param seed
+	 *            the plaintext letter of each ciphertext letter to start from
+	 * @param random
+	 *            the source of the random moves
+	 * @param start
+	 *            the time the cryptanalysis started, as given by
+	 *            {@link System#nanoTime()}
+	 * @return the best key found
+	 */
+	private Search anneal(CiphertextQuadgrams quadgrams, int[] seed, SplittableRandom random, long start) {
+		int[] substitutions = seed.clone();
+		double score = quadgrams.score(substitutions);
+		int[] bestSubstitutions = substitutions.clone();
+		double bestScore = score;
+		long timeToBest = System.nanoTime() - start;
+		double initialTemperature = INITIAL_TEMPERATURE * quadgrams.total / 1000.0;
+
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			double temperature = initialTemperature * (1.0 - (double) iteration / ITERATIONS);
+			int a = random.nextInt(NUMBER_OF_LETTERS_IN_ALPHABET);
+			int b = random.nextInt(NUMBER_OF_LETTERS_IN_ALPHABET - 1);
+			if (b >= a) {
+				b += 1;
+			}
+
+			double delta = quadgrams.deltaOfSwap(substitutions, a, b);
+
+			if (delta >= 0.0 || random.nextDouble() < Math.exp(delta / temperature)) {
+				int swapped = substitutions[a];
+				substitutions[a] = substitutions[b];
+				substitutions[b] = swapped;
+				score += delta;
+
+				if (score > bestScore) {
+					bestScore = score;
+					System.arraycopy(substitutions, 0, bestSubstitutions, 0, NUMBER_OF_LETTERS_IN_ALPHABET);
+					timeToBest = System.nanoTime() - start;
+				}
+			}
+		}
+
+		return new Search(bestSubstitutions, bestScore, ITERATIONS, timeToBest);
+	}
+
+	/**
+	 * Build the frequency table of the English letters.
+	 *
+	 * @return the frequency table
+	 */
+	private static FrequencyTable englishTable() {
+		FrequencyTable table = new FrequencyTable();
+		double[] probabilities = ShiftScorer.ENGLISH.getProbabilities();
+
+		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
+			table.setFrequency(Util.indexToChar(i), probabilities[i]);
+		}
+
+		return table;
+	}
+
+	/**
+	 * The distinct quadgrams of a ciphertext, with their counts and the
+	 * quadgrams containing each letter, to score a key without decrypting.
+	 */
+	private class CiphertextQuadgrams {
+
+		/**
+		 * The letters of each distinct quadgram, the first letter at index 4
+		 * * i
+		 */
+		private final byte[] quadgramLetters;
+
+		/**
+		 * The number of occurrences of each distinct quadgram
+		 */
+		private final int[] counts;
+
+		/**
+		 * The distinct quadgrams containing each letter, each listed once
+		 */
+		private final int[][] quadgramsOfLetter;
+
+		/**
+		 * The total number of quadgrams
+		 */
+		private final int total;
+
+		CiphertextQuadgrams(byte[] letters, int length) {
+			int[] occurrences = new int[QuadgramScorer.NUMBER_OF_QUADGRAMS];
+			int index = 0;
+			int numberOfDistinctQuadgrams = 0;
+
+			for (int i = 0; i < length; i++) {
+				index = (index % (QuadgramScorer.NUMBER_OF_QUADGRAMS / NUMBER_OF_LETTERS_IN_ALPHABET))
+						* NUMBER_OF_LETTERS_IN_ALPHABET + letters[i];
+
+				if (i >= 3 && occurrences[index]++ == 0) {
+					numberOfDistinctQuadgrams += 1;
+				}
+			}
+
+			this.quadgramLetters = new byte[4 * numberOfDistinctQuadgrams];
+			this.counts = new int[numberOfDistinctQuadgrams];
+			this.total = Math.max(length - 3, 0);
+
+			int[] numberOfQuadgramsOfLetter = new int[NUMBER_OF_LETTERS_IN_ALPHABET];
+			int distinct = 0;
+			for (int quadgram = 0; quadgram < occurrences.length; quadgram++) {
+				if (occurrences[quadgram] > 0) {
+					counts[distinct] = occurrences[quadgram];
+					for (int j = 3, value = quadgram; j >= 0; j--, value /= NUMBER_OF_LETTERS_IN_ALPHABET) {
+						quadgramLetters[4 * distinct + j] = (byte) (value % NUMBER_OF_LETTERS_IN_ALPHABET);
+					}
+					for (int j = 0; j < 4; j++) {
+						if (isFirstOccurrence(distinct, j)) {
+							numberOfQuadgramsOfLetter[quadgramLetters[4 * distinct + j]] += 1;
+						}
+					}
+					distinct += 1;
+				}
+			}
+
+			this.quadgramsOfLetter = new int[NUMBER_OF_LETTERS_IN_ALPHABET][];
+			for (int letter = 0; letter < NUMBER_OF_LETTERS_IN_ALPHABET; letter++) {
+				quadgramsOfLetter[letter] = new int[numberOfQuadgramsOfLetter[letter]];
+				numberOfQuadgramsOfLetter[letter] = 0;
+			}
+			for (int i = 0; i < counts.length; i++) {
+				for (int j = 0; j < 4; j++) {
+					if (isFirstOccurrence(i, j)) {
+						int letter = quadgramLetters[4 * i + j];
+						quadgramsOfLetter[letter][numberOfQuadgramsOfLetter[letter]++] = i;
+					}
+				}
+			}
+		}
+
+		/**
+		 * Calculate the fitness of the plaintext of the quadgrams.
+		 *
+		 * @param substitutions
+		 *            the plaintext letter of each ciphertext letter
+		 * @return the fitness
+		 */
+		double score(int[] substitutions) {
+			double score = 0.0;
+
+			for (int i = 0; i < counts.length; i++) {
+				score += counts[i] * quadgramScorer.logProbability(plaintextQuadgram(i, substitutions));
+			}
+
+			return score;
+		}
+
+		/**
+		 * Calculate the change of fitness if the plaintext letters of two
+		 * ciphertext letters were swapped, from the quadgrams containing them
+		 * only.
+		 *
+		 * @param substitutions
+		 *            the plaintext letter of each ciphertext letter, which is
+		 *            left as it was
+		 * @param a
+		 *            a ciphertext letter
+		 * @param b
+		 *            another ciphertext letter
+		 * @return the change of fitness
+		 */
+		double deltaOfSwap(int[] substitutions, int a, int b) {
+			double before = scoreOfLetters(substitutions, a, b);
+
+			swap(substitutions, a, b);
+			double after = scoreOfLetters(substitutions, a, b);
+			swap(substitutions, a, b);
+
+			return after - before;
+		}
+
+		/**
+		 * Calculate the fitness of the plaintext of the quadgrams containing
+		 * either of two letters.
+		 */
+		private double scoreOfLetters(int[] substitutions, int a, int b) {
+			double score = 0.0;
+
+			for (int i : quadgramsOfLetter[a]) {
+				score += counts[i] * quadgramScorer.logProbability(plaintextQuadgram(i, substitutions));
+			}
+			for (int i : quadgramsOfLetter[b]) {
+				if (!contains(i, a)) {
+					score += counts[i] * quadgramScorer.logProbability(plaintextQuadgram(i, substitutions));
+				}
+			}
+
+			return score;
+		}
+
+		private int plaintextQuadgram(int i, int[] substitutions) {
+			int offset = 4 * i;
+
+			return ((substitutions[quadgramLetters[offset]] * NUMBER_OF_LETTERS_IN_ALPHABET
+					+ substitutions[quadgramLetters[offset + 1]]) * NUMBER_OF_LETTERS_IN_ALPHABET
+					+ substitutions[quadgramLetters[offset + 2]]) * NUMBER_OF_LETTERS_IN_ALPHABET
+					+ substitutions[quadgramLetters[offset + 3]];
+		}
+
+		private boolean contains(int i, int letter) {
+			int offset = 4 * i;
+
+			return quadgramLetters[offset] == letter || quadgramLetters[offset + 1] == letter
+					|| quadgramLetters[offset + 2] == letter || quadgramLetters[offset + 3] == letter;
+		}
+
+		/**
+		 * Check whether the j-th letter of a quadgram does not occur earlier
+		 * in it, so that the quadgram is listed once for each of its letters.
+		 */
+		private boolean isFirstOccurrence(int i, int j) {
+			for (int k = 0; k < j; k++) {
+				if (quadgramLetters[4 * i + k] == quadgramLetters[4 * i + j]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void swap(int[] substitutions, int a, int b) {
+			int swapped = substitutions[a];
+			substitutions[a] = substitutions[b];
+			substitutions[b] = swapped;
+		}
+	}
+
+	/**
+	 * The result of a search.
+	 */
+	private static class Search {
+
+		private final int[] substitutions;
+
+		private final double score;
+
+		private final long iterations;
+
+		private final long timeToBest;
+
+		Search(int[] substitutions, double score, long iterations, long timeToBest) {
+			this.substitutions = substitutions;
+			this.score = score;
+			this.iterations = iterations;
+			this.timeToBest = timeToBest;
+		}
+	}
+
+	/**
+	 * The result of a cryptanalysis: the key, its fitness and how long it
+	 * took to find it. The plaintext is only decrypted the first time it is
+	 * asked for.
+	 */
+	public static final class Result {
+
+		/**
+		 * The ciphertext
+		 */
+		private final String ciphertext;
+
+		/**
+		 * The key found
+		 */
+		private final String key;
+
+		/**
+		 * The fitness of the quadgrams of the plaintext of the sample
+		 */
+		private final double score;
+
+		/**
+		 * The number of moves tried by all the searches
+		 */
+		private final long numberOfIterations;
+
+		/**
+		 * The time taken by the cryptanalysis, in nanoseconds
+		 */
+		private final long elapsedTime;
+
+		/**
+		 * The time after which the key was found, in nanoseconds
+		 */
+		private final long timeToSolution;
+
+		/**
+		 * The plaintext, once decrypted
+		 */
+		private volatile String plaintext;
+
+		Result(String ciphertext, String key, double score, long numberOfIterations, long elapsedTime,
+				long timeToSolution) {
+			this.ciphertext = ciphertext;
+			this.key = key;
+			this.score = score;
+			this.numberOfIterations = numberOfIterations;
+			this.elapsedTime = elapsedTime;
+			this.timeToSolution = timeToSolution;
+		}
+
+		/**
+		 * Get the key found.
+		 *
+		 * @return the key (see {@link SubstitutionCipher})
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the plaintext, i.e. the ciphertext decrypted with the key found.
+		 *
+		 * @return the plaintext
+		 */
+		public String getPlaintext() {
+			String decrypted = plaintext;
+
+			if (decrypted == null) {
+				decrypted = SubstitutionCipher.decrypt(ciphertext, key);
+				plaintext = decrypted;
+			}
+
+			return decrypted;
+		}
+
+		/**
+		 * Get the fitness of the quadgrams of the plaintext of the beginning of
+		 * the ciphertext.
+		 *
+		 * @return the fitness, the higher the better
+		 */
+		public double getScore() {
+			return score;
+		}
+
+		/**
+		 * Get the number of moves tried by all the searches.
+		 *
+		 * @return the number of moves
+		 */
+		public long getNumberOfIterations() {
+			return numberOfIterations;
+		}
+
+		/**
+		 * Get the time taken by the cryptanalysis.
+		 *
+		 * @return the time in nanoseconds
+		 */
+		public long getElapsedTime() {
+			return elapsedTime;
+		}
+
+		/**
+		 * Get the time after which the key was found, i.e. when the search
+		 * that found it first reached it.
+		 *
+		 * @return the time in nanoseconds
+		 */
+		public long getTimeToSolution() {
+			return timeToSolution;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("key %s (%d iterations in %.3f s, %.0f iterations/s, key found after %.3f s)", key,
+					numberOfIterations, elapsedTime / 1e9, numberOfIterations / (elapsedTime / 1e9),
+					timeToSolution / 1e9);
+		}
+	}
+
+	/**
+	 * Cryptanalyse a file encrypted with the substitution cipher.
+	 *
+	 * @param args
+	 *            the ciphertext file, and the snapshot of the language model
+	 *            (see {@link LanguageModel}); by default res/english.model,
+	 *            built from res/pg1661.txt if it does not exist
+	 * @throws IOException
+	 *             something goes wrong reading the files
+	 * @throws URISyntaxException
+	 *             the resources cannot be found
+	 */
+	public static void main(String[] args) throws IOException, URISyntaxException {
+		String mainPath, ciphertextFilePath, modelFilePath;
+		LanguageModel model;
+		SubstitutionCryptanalysis.Result result;
+
+		if (args.length < 1) {
+			System.out.println("Usage: SubstitutionCryptanalysis <ciphertext> [model]");
+			return;
+		}
+
+		mainPath = Paths.get(SubstitutionCryptanalysis.class.getResource("/").toURI()).toString();
+		ciphertextFilePath = args[0];
+		modelFilePath = args.length >= 2 ? args[1] : mainPath + "/res/english.model";
+		model = LanguageModel.loadOrBuild(Paths.get(modelFilePath), Paths.get(mainPath + "/res/pg1661.txt"));
+
+		result = new SubstitutionCryptanalysis(model).cryptanalysis(Util.readFileToBuffer(ciphertextFilePath));
+		System.out.println(result);
+		InteractiveCryptanalysis.showResult(result.getKey(), result.getPlaintext());
+	}
+}
@@ -4,7 +4,14 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 /**
  * This class contains generic methods that can be used throughout the
@@ -36,6 +43,30 @@ public class Util {
      */
     public static final int OFFSET = 'A';
 
+    /**
+     * Value of {@link #letterIndex(char)} for characters that do not belong to
+     * the English alphabet.
+     */
+    public static final int NOT_A_LETTER = -1;
+
+    /**
+     * Index in the alphabet of each character from 0x00 to 0xFF, regardless of
+     * its case, or NOT_A_LETTER if the character is not an English letter.
+     *
+     * Looking the index up in this table is what every loop over a text uses
+     * to classify its characters, so that no object is created per character.
+     */
+    private static final byte[] LETTER_INDEXES = new byte[256];
+
+    static {
+        Arrays.fill(LETTER_INDEXES, (byte) NOT_A_LETTER);
+
+        for (int i = 0; i < 26; i++) {
+            LETTER_INDEXES[OFFSET + i] = (byte) i;
+            LETTER_INDEXES[Character.toLowerCase(OFFSET + i)] = (byte) i;
+        }
+    }
+
     /**
      * This method reads the whole content of a file in a String. It does not
      * support large files (they will likely work slowly).
@@ -78,13 +109,38 @@ public class Util {
      * @return the index corresponding to the given letter
      */
     public static int charToIndex(char letter) {
-        if (!isValidLetter(letter)) {
+        int index = letterIndex(letter);
+
+        if (index == NOT_A_LETTER) {
             throw new IllegalArgumentException("Input charater must be an alphabetic character");
         }
 
-        letter = Character.toUpperCase(letter);
+        return index;
+    }
 
-        return letter - OFFSET;
+    /**
+     * This method finds the index of a character in the alphabet, as
+     * {@link #charToIndex(char)} does, but it does not fail on characters that
+     * are not letters.
+     *
+     * @param character the character to convert
+     * @return the index corresponding to the given character, or NOT_A_LETTER
+     * if the character does not belong to the English alphabet.
+     */
+    public static int letterIndex(char character) {
+        return character < LETTER_INDEXES.length ? LETTER_INDEXES[character] : NOT_A_LETTER;
+    }
+
+    /**
+     * This method finds the index in the alphabet of a byte of a text in an
+     * ASCII-compatible encoding (e.g. UTF-8 or ISO-8859-1).
+     *
+     * @param character the byte to convert
+     * @return the index corresponding to the given byte, or NOT_A_LETTER if the
+     * byte is not an English letter.
+     */
+    public static int letterIndex(byte character) {
+        return LETTER_INDEXES[character & 0xFF];
     }
 
     /**
@@ -105,6 +161,52 @@ public class Util {
         return (char) (index + OFFSET);
     }
 
+    /**
+     * This method strips a text of everything but its letters, and returns the
+     * index in the alphabet of each of them. This is the form of a text that
+     * the kernels for letters only work on.
+     *
+     * @param text the text to convert
+     * @return the indexes of the letters of the text, in order
+     */
+    public static byte[] toLetterIndexes(CharSequence text) {
+        byte[] letters = new byte[text.length()];
+        int numberOfLetters = 0;
+
+        for (int i = 0; i < text.length(); i++) {
+            int index = letterIndex(text.charAt(i));
+
+            if (index != NOT_A_LETTER) {
+                letters[numberOfLetters++] = (byte) index;
+            }
+        }
+
+        return Arrays.copyOf(letters, numberOfLetters);
+    }
+
+    /**
+     * This method strips a text given as bytes, in an ASCII-compatible
+     * encoding, of everything but its letters, as
+     * {@link #toLetterIndexes(CharSequence)} does.
+     *
+     * @param text the bytes of the text to convert
+     * @return the indexes of the letters of the text, in order
+     */
+    public static byte[] toLetterIndexes(byte[] text) {
+        byte[] letters = new byte[text.length];
+        int numberOfLetters = 0;
+
+        for (byte character : text) {
+            int index = letterIndex(character);
+
+            if (index != NOT_A_LETTER) {
+                letters[numberOfLetters++] = (byte) index;
+            }
+        }
+
+        return Arrays.copyOf(letters, numberOfLetters);
+    }
+
     /**
      * A letter is valid if it belongs to the English alphabet.
      *
@@ -112,7 +214,53 @@ public class Util {
      * @return <code>true</code> if the letter belongs to the English alphabet.
      */
     public static boolean isValidLetter(char letter) {
-        return Character.toString(letter).matches("[A-Za-z]");
+        return letterIndex(letter) != NOT_A_LETTER;
+    }
+
+    /**
+     * This method runs tasks on a number of threads and waits for their
+     * results. With a single thread, or a single task, the tasks run one after
+     * the other in the calling thread, so that no thread is started.
+     *
+     * @param <T> the type of the results
+     * @param tasks the tasks to run
+     * @param parallelism the number of threads
+     * @param activity what the tasks do, for the message of the exception
+     *            thrown if the calling thread is interrupted
+     * @return the results of the tasks, in the order of the tasks
+     * @throws IllegalStateException a task fails, or the calling thread is
+     *             interrupted while waiting
+     */
+    static <T> List<T> invokeAll(List<Callable<T>> tasks, int parallelism, String activity) {
+        List<T> results = new ArrayList<>(tasks.size());
+
+        if (parallelism == 1 || tasks.size() <= 1) {
+            for (Callable<T> task : tasks) {
+                try {
+                    results.add(task.call());
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return results;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+
+        try {
+            for (Future<T> future : pool.invokeAll(tasks)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while " + activity, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+
+        return results;
     }
 
 }
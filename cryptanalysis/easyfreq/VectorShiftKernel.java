@@ -0,0 +1,169 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernel of {@link VigenereCipher} written with the Vector API: the
+ * letters are shifted a whole vector at a time, adding the shifts of the key
+ * laid out in lanes and subtracting 26 from the lanes which went past Z.
+ *
+ * <p>
+ * A range of letters only is shifted vector by vector. In a text, the
+ * non-letters make the position in the key of each letter irregular, so only
+ * the vectors made of letters only are shifted at once, and the others go
+ * through the plain Java kernel, with the few vectors after them so that a
+ * text with spaces does not pay for checking every vector: the fast path is
+ * for texts made of letters, e.g. ciphertexts stripped of spaces and
+ * punctuation.
+ *
+ * <p>
+ * This class needs the incubating module jdk.incubator.vector, i.e. javac and
+ * java run with <code>--add-modules jdk.incubator.vector</code>. It is loaded
+ * by reflection only, so that the other classes run without the module, with
+ * the plain Java kernel. Until the JIT compiler has compiled it into vector
+ * instructions, after some hundreds of calls, it is much slower than the
+ * plain Java kernel.
+ *
+ * @author Oana Ivanovici
+ */
+final class VectorShiftKernel implements ShiftKernel {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The fewest lanes worth shifting vectors of, below which the hardware
+	 * is assumed not to have vector instructions
+	 */
+	private static final int MINIMUM_NUMBER_OF_LANES = 16;
+
+	/**
+	 * The number of vectors shifted by the plain Java kernel after a vector
+	 * which is not made of letters only, as the next ones are unlikely to be
+	 * in a text with spaces
+	 */
+	private static final int VECTORS_PER_MIXED_RUN = 8;
+
+	/**
+	 * The widest vectors of bytes the hardware has
+	 */
+	private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+	/**
+	 * The mask clearing the bit which tells a lower case ASCII letter from
+	 * its upper case
+	 */
+	private static final byte UPPER_CASE_MASK = (byte) ~0x20;
+
+	/**
+	 * Create the kernel.
+	 *
+	 * @throws UnsupportedOperationException
+	 *             the vectors of the hardware are too narrow to be worth it
+	 */
+	VectorShiftKernel() {
+		if (SPECIES.length() < MINIMUM_NUMBER_OF_LANES) {
+			throw new UnsupportedOperationException("Vectors of " + SPECIES.length() + " bytes are too narrow");
+		}
+	}
+
+	@Override
+	public int transform(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length,
+			int[] shifts, int indexOfKey) {
+		int lanes = SPECIES.length();
+		if (length < lanes) {
+			return VigenereCipher.SCALAR_KERNEL.transform(source, sourceOffset, destination, destinationOffset,
+					length, shifts, indexOfKey);
+		}
+
+		byte[] repeatedShifts = repeatShifts(shifts, lanes);
+		int i = 0;
+
+		for (; i + lanes <= length; i += lanes) {
+			// clearing the bit of lower case maps the letters, and only them,
+			// onto A-Z
+			ByteVector upperCase = ByteVector.fromArray(SPECIES, source, sourceOffset + i).and(UPPER_CASE_MASK);
+			VectorMask<Byte> letters = upperCase.compare(VectorOperators.GE, (byte) 'A')
+					.and(upperCase.compare(VectorOperators.LE, (byte) 'Z'));
+
+			if (letters.allTrue()) {
+				ByteVector keyLanes = ByteVector.fromArray(SPECIES, repeatedShifts, indexOfKey);
+				addModulo(upperCase.sub((byte) 'A'), keyLanes).add((byte) 'A').intoArray(destination,
+						destinationOffset + i);
+				indexOfKey = (indexOfKey + lanes) % shifts.length;
+			} else {
+				int mixedLength = Math.min(VECTORS_PER_MIXED_RUN * lanes, (length - i) / lanes * lanes);
+				indexOfKey = VigenereCipher.SCALAR_KERNEL.transform(source, sourceOffset + i, destination,
+						destinationOffset + i, mixedLength, shifts, indexOfKey);
+				i += mixedLength - lanes;
+			}
+		}
+
+		return VigenereCipher.SCALAR_KERNEL.transform(source, sourceOffset + i, destination, destinationOffset + i,
+				length - i, shifts, indexOfKey);
+	}
+
+	@Override
+	public int shiftLetters(byte[] letters, int offset, byte[] destination, int destinationOffset, int length,
+			int[] shifts, int indexOfKey) {
+		int lanes = SPECIES.length();
+		if (length < lanes) {
+			return VigenereCipher.SCALAR_KERNEL.shiftLetters(letters, offset, destination, destinationOffset, length,
+					shifts, indexOfKey);
+		}
+
+		byte[] repeatedShifts = repeatShifts(shifts, lanes);
+		int i = 0;
+
+		for (; i + lanes <= length; i += lanes) {
+			ByteVector keyLanes = ByteVector.fromArray(SPECIES, repeatedShifts, indexOfKey);
+			addModulo(ByteVector.fromArray(SPECIES, letters, offset + i), keyLanes).intoArray(destination,
+					destinationOffset + i);
+			indexOfKey = (indexOfKey + lanes) % shifts.length;
+		}
+
+		return VigenereCipher.SCALAR_KERNEL.shiftLetters(letters, offset + i, destination, destinationOffset + i,
+				length - i, shifts, indexOfKey);
+	}
+
+	/**
+	 * Add shifts to indexes of letters, modulo 26.
+	 *
+	 * @param indexesOfLetters
+	 *            the indexes of the letters, between 0 and 25
+	 * @param shifts
+	 *            the shifts, between 0 and 25
+	 * @return the indexes of the shifted letters
+	 */
+	private static ByteVector addModulo(ByteVector indexesOfLetters, ByteVector shifts) {
+		ByteVector shifted = indexesOfLetters.add(shifts);
+
+		return shifted.lanewise(VectorOperators.SUB, (byte) NUMBER_OF_LETTERS_IN_ALPHABET,
+				shifted.compare(VectorOperators.GE, (byte) NUMBER_OF_LETTERS_IN_ALPHABET));
+	}
+
+	/**
+	 * Repeat the shifts of a key so that the shifts of a whole vector starting
+	 * from any position in the key are contiguous.
+	 *
+	 * @param shifts
+	 *            the shifts of the key
+	 * @param lanes
+	 *            the number of lanes of a vector
+	 * @return the shifts repeated to cover the key plus a vector
+	 */
+	private static byte[] repeatShifts(int[] shifts, int lanes) {
+		byte[] repeatedShifts = new byte[shifts.length + lanes];
+
+		for (int i = 0; i < repeatedShifts.length; i++) {
+			repeatedShifts[i] = (byte) shifts[i % shifts.length];
+		}
+
+		return repeatedShifts;
+	}
+}
@@ -1,5 +1,9 @@
 package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+
 /**
  * This class is capable of encrypt and decrypt according to the Vigen&egrave;re
  * cipher.
@@ -16,6 +20,26 @@ public class VigenereCipher {
 	 */
 	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
 
+	/**
+	 * The name of the kernel written with the Vector API, which is only
+	 * loaded by reflection
+	 */
+	private static final String VECTOR_KERNEL = VigenereCipher.class.getPackage().getName() + ".VectorShiftKernel";
+
+	/**
+	 * The kernel written in plain Java
+	 */
+	static final ShiftKernel SCALAR_KERNEL = new ScalarShiftKernel();
+
+	/**
+	 * The kernel the bytes and the letters are shifted with: the one written
+	 * with the Vector API if the Java runtime has the module
+	 * jdk.incubator.vector (i.e. runs with
+	 * <code>--add-modules jdk.incubator.vector</code>) and the hardware has
+	 * wide enough vectors, the plain Java one otherwise
+	 */
+	static final ShiftKernel KERNEL = loadKernel();
+
 	/**
 	 * Encryption function of the Vigen&egrave;re cipher.
 	 *
@@ -33,39 +57,12 @@ public class VigenereCipher {
 		// <editor-fold defaultstate="collapsed" desc="Write your code here
 		// below!">
 
-		String ciphertext = "";
-		// index for ensuring the program iterates through the key to encrypt
-		int indexOfKey = 0;
-
-		for (int i = 0; i < plaintext.length(); i++) {
-			char characterToEncrypt = plaintext.charAt(i);
-
-			if (Util.isValidLetter(characterToEncrypt)) {
-				// ensure the key iteration isn't at the end of the key. If it
-				// is, key should start again from index 0
-				if (indexOfKey >= key.length()) {
-					indexOfKey = 0;
-				}
-
-				int indexOfCurrentLetterInAlphabet = Util.charToIndex(characterToEncrypt);
-				int indexOfCurrentKeyLetterInAlphabet = Util.charToIndex(key.charAt(indexOfKey));
-				// increment the index of the key to step through the chars of
-				// the key
-				indexOfKey += 1;
-
-				// add the index of the letter in the alphabet to the index of
-				// the i-th letter of the key, then mod 26
-				char encryptedLetter = Util
-						.indexToChar(Math.floorMod(indexOfCurrentLetterInAlphabet + indexOfCurrentKeyLetterInAlphabet,
-								NUMBER_OF_LETTERS_IN_ALPHABET));
+		// encrypt a copy of the characters in place, so that the ciphertext
+		// is built in linear time
+		char[] ciphertext = plaintext.toCharArray();
+		encrypt(ciphertext, key);
 
-				ciphertext += encryptedLetter;
-			} else { // maintain non-letter characters
-				ciphertext += characterToEncrypt;
-			}
-		}
-
-		return ciphertext;
+		return new String(ciphertext);
 		// </editor-fold> // END OF YOUR CODE
 	}
 
@@ -86,38 +83,591 @@ public class VigenereCipher {
 		// <editor-fold defaultstate="collapsed" desc="Write your code here
 		// below!">
 
-		String plaintext = "";
-		int indexOfKey = 0;
+		char[] plaintext = ciphertext.toCharArray();
+		decrypt(plaintext, key);
+
+		return new String(plaintext);
+		// </editor-fold> // END OF YOUR CODE
+	}
+
+	/**
+	 * Encrypt the given characters in place.
+	 *
+	 * @param text
+	 *            the plaintext to encrypt, replaced by the ciphertext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void encrypt(char[] text, String key) {
+		transform(text, 0, text, 0, text.length, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Encrypt a range of characters into a destination array, which may be
+	 * the source array itself.
+	 *
+	 * @param source
+	 *            the plaintext to encrypt
+	 * @param sourceOffset
+	 *            the index of the first character to encrypt
+	 * @param destination
+	 *            the array to write the ciphertext to
+	 * @param destinationOffset
+	 *            the index where the ciphertext is written from
+	 * @param length
+	 *            the number of characters to encrypt
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void encrypt(char[] source, int sourceOffset, char[] destination, int destinationOffset, int length,
+			String key) {
+		transform(source, sourceOffset, destination, destinationOffset, length, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Encrypt the given bytes in place. The text is assumed to be in an
+	 * ASCII-compatible encoding (e.g. UTF-8 or ISO-8859-1), where the English
+	 * letters are single bytes.
+	 *
+	 * @param text
+	 *            the plaintext to encrypt, replaced by the ciphertext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void encrypt(byte[] text, String key) {
+		transform(text, 0, text, 0, text.length, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Encrypt a range of bytes into a destination array, which may be the
+	 * source array itself.
+	 *
+	 * @param source
+	 *            the plaintext to encrypt
+	 * @param sourceOffset
+	 *            the index of the first byte to encrypt
+	 * @param destination
+	 *            the array to write the ciphertext to
+	 * @param destinationOffset
+	 *            the index where the ciphertext is written from
+	 * @param length
+	 *            the number of bytes to encrypt
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void encrypt(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length,
+			String key) {
+		transform(source, sourceOffset, destination, destinationOffset, length, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Encrypt the remaining characters of a buffer in place. The position of
+	 * the buffer is advanced to its limit.
+	 *
+	 * @param text
+	 *            the plaintext to encrypt, replaced by the ciphertext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void encrypt(CharBuffer text, String key) {
+		transform(text, text, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Encrypt the remaining characters of a buffer into another buffer. The
+	 * positions of both buffers are advanced by the number of characters
+	 * encrypted.
+	 *
+	 * @param source
+	 *            the plaintext to encrypt
+	 * @param destination
+	 *            the buffer to write the ciphertext to
+	 * @param key
+	 *            the encryption key
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	public static void encrypt(CharBuffer source, CharBuffer destination, String key) {
+		transform(source, destination, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Encrypt the remaining bytes of a buffer in place. The position of the
+	 * buffer is advanced to its limit.
+	 *
+	 * @param text
+	 *            the plaintext to encrypt, replaced by the ciphertext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void encrypt(ByteBuffer text, String key) {
+		transform(text, text, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Encrypt the remaining bytes of a buffer into another buffer. The
+	 * positions of both buffers are advanced by the number of bytes encrypted.
+	 *
+	 * @param source
+	 *            the plaintext to encrypt
+	 * @param destination
+	 *            the buffer to write the ciphertext to
+	 * @param key
+	 *            the encryption key
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	public static void encrypt(ByteBuffer source, ByteBuffer destination, String key) {
+		transform(source, destination, encryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt the given characters in place.
+	 *
+	 * @param text
+	 *            the ciphertext to decrypt, replaced by the plaintext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void decrypt(char[] text, String key) {
+		transform(text, 0, text, 0, text.length, decryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt a range of characters into a destination array, which may be
+	 * the source array itself.
+	 *
+	 * @param source
+	 *            the ciphertext to decrypt
+	 * @param sourceOffset
+	 *            the index of the first character to decrypt
+	 * @param destination
+	 *            the array to write the plaintext to
+	 * @param destinationOffset
+	 *            the index where the plaintext is written from
+	 * @param length
+	 *            the number of characters to decrypt
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void decrypt(char[] source, int sourceOffset, char[] destination, int destinationOffset, int length,
+			String key) {
+		transform(source, sourceOffset, destination, destinationOffset, length, decryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt the given bytes in place, with the same assumption on the
+	 * encoding as {@link #encrypt(byte[], String)}.
+	 *
+	 * @param text
+	 *            the ciphertext to decrypt, replaced by the plaintext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void decrypt(byte[] text, String key) {
+		transform(text, 0, text, 0, text.length, decryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt a range of bytes into a destination array, which may be the
+	 * source array itself.
+	 *
+	 * @param source
+	 *            the ciphertext to decrypt
+	 * @param sourceOffset
+	 *            the index of the first byte to decrypt
+	 * @param destination
+	 *            the array to write the plaintext to
+	 * @param destinationOffset
+	 *            the index where the plaintext is written from
+	 * @param length
+	 *            the number of bytes to decrypt
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void decrypt(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length,
+			String key) {
+		transform(source, sourceOffset, destination, destinationOffset, length, decryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt the remaining characters of a buffer in place. The position of
+	 * the buffer is advanced to its limit.
+	 *
+	 * @param text
+	 *            the ciphertext to decrypt, replaced by the plaintext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void decrypt(CharBuffer text, String key) {
+		transform(text, text, decryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt the remaining characters of a buffer into another buffer. The
+	 * positions of both buffers are advanced by the number of characters
+	 * decrypted.
+	 *
+	 * @param source
+	 *            the ciphertext to decrypt
+	 * @param destination
+	 *            the buffer to write the plaintext to
+	 * @param key
+	 *            the encryption key
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	public static void decrypt(CharBuffer source, CharBuffer destination, String key) {
+		transform(source, destination, decryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt the remaining bytes of a buffer in place. The position of the
+	 * buffer is advanced to its limit.
+	 *
+	 * @param text
+	 *            the ciphertext to decrypt, replaced by the plaintext
+	 * @param key
+	 *            the encryption key
+	 */
+	public static void decrypt(ByteBuffer text, String key) {
+		transform(text, text, decryptionShifts(key), 0);
+	}
+
+	/**
+	 * Decrypt the remaining bytes of a buffer into another buffer. The
+	 * positions of both buffers are advanced by the number of bytes decrypted.
+	 *
+	 * @param source
+	 *            the ciphertext to decrypt
+	 * @param destination
+	 *            the buffer to write the plaintext to
+	 * @param key
+	 *            the encryption key
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	public static void decrypt(ByteBuffer source, ByteBuffer destination, String key) {
+		transform(source, destination, decryptionShifts(key), 0);
+	}
 
-		for (int i = 0; i < ciphertext.length(); i++) {
-			char characterToDecrypt = ciphertext.charAt(i);
+	/**
+	 * This method turns a key into the index in the alphabet of each of its
+	 * letters, i.e. the shift applied to the plaintext letters encrypted with
+	 * it. The key is checked once here, so that the letters of the text can be
+	 * shifted without any further check.
+	 *
+	 * @param key
+	 *            the encryption key
+	 * @return the shift of each letter of the key for encryption
+	 */
+	public static int[] encryptionShifts(String key) {
+		if (key.isEmpty()) {
+			throw new IllegalArgumentException("Key must not be empty");
+		}
+
+		int[] shifts = new int[key.length()];
+
+		for (int i = 0; i < shifts.length; i++) {
+			shifts[i] = Util.charToIndex(key.charAt(i));
+		}
 
-			if (Util.isValidLetter(characterToDecrypt)) {
-				// ensure the key iteration isn't at the end of the key. If it
-				// is, key should start again from index 0
-				if (indexOfKey >= key.length()) {
-					indexOfKey = 0;
+		return shifts;
+	}
+
+	/**
+	 * This method turns a key into the shifts that undo the encryption with
+	 * it, so that decryption is an addition too.
+	 *
+	 * @param key
+	 *            the encryption key
+	 * @return the shift of each letter of the key for decryption
+	 */
+	public static int[] decryptionShifts(String key) {
+		int[] shifts = encryptionShifts(key);
+
+		for (int i = 0; i < shifts.length; i++) {
+			shifts[i] = Math.floorMod(-shifts[i], NUMBER_OF_LETTERS_IN_ALPHABET);
+		}
+
+		return shifts;
+	}
+
+	/**
+	 * This method shifts every letter in a range of characters by the shift
+	 * at the current position of the key, moving to the next position after
+	 * each letter. Other characters are copied unchanged.
+	 *
+	 * @param source
+	 *            the characters to shift
+	 * @param sourceOffset
+	 *            the index of the first character to shift
+	 * @param destination
+	 *            the array to write the shifted characters to
+	 * @param destinationOffset
+	 *            the index where the shifted characters are written from
+	 * @param length
+	 *            the number of characters to shift
+	 * @param shifts
+	 *            the shifts of the key, all between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the position in the key of the letter following the range
+	 */
+	static int transform(char[] source, int sourceOffset, char[] destination, int destinationOffset, int length,
+			int[] shifts, int indexOfKey) {
+		for (int i = 0; i < length; i++) {
+			char character = source[sourceOffset + i];
+			int indexOfCurrentLetterInAlphabet = Util.letterIndex(character);
+
+			if (indexOfCurrentLetterInAlphabet != Util.NOT_A_LETTER) {
+				destination[destinationOffset + i] = (char) (Util.OFFSET
+						+ shift(indexOfCurrentLetterInAlphabet, shifts[indexOfKey]));
+				indexOfKey = nextIndexOfKey(indexOfKey, shifts);
+			} else { // maintain non-letter characters
+				destination[destinationOffset + i] = character;
+			}
+		}
+
+		return indexOfKey;
+	}
+
+	/**
+	 * This method shifts every letter in a range of bytes, as
+	 * {@link #transform(char[], int, char[], int, int, int[], int)} does for
+	 * characters.
+	 *
+	 * @param source
+	 *            the bytes to shift
+	 * @param sourceOffset
+	 *            the index of the first byte to shift
+	 * @param destination
+	 *            the array to write the shifted bytes to
+	 * @param destinationOffset
+	 *            the index where the shifted bytes are written from
+	 * @param length
+	 *            the number of bytes to shift
+	 * @param shifts
+	 *            the shifts of the key, all between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the position in the key of the letter following the range
+	 */
+	static int transform(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length,
+			int[] shifts, int indexOfKey) {
+		return KERNEL.transform(source, sourceOffset, destination, destinationOffset, length, shifts, indexOfKey);
+	}
+
+	/**
+	 * This method shifts a range of letters given as indexes in the alphabet
+	 * (see {@link Util#toLetterIndexes(CharSequence)}), e.g. to decrypt a
+	 * ciphertext stripped of everything but its letters. As there is no
+	 * character to skip, the position in the key of each letter is known in
+	 * advance, and the letters are shifted a whole vector at a time if the
+	 * kernel has the Vector API (see {@link #KERNEL}).
+	 *
+	 * @param letters
+	 *            the indexes of the letters to shift, all between 0 and 25
+	 * @param offset
+	 *            the index of the first letter to shift
+	 * @param destination
+	 *            the array to write the indexes of the shifted letters to,
+	 *            which may be the letters with the same offset
+	 * @param destinationOffset
+	 *            the index where the shifted letters are written from
+	 * @param length
+	 *            the number of letters to shift
+	 * @param shifts
+	 *            the shifts of the key, all between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the position in the key of the letter following the range
+	 */
+	public static int shiftLetters(byte[] letters, int offset, byte[] destination, int destinationOffset, int length,
+			int[] shifts, int indexOfKey) {
+		return KERNEL.shiftLetters(letters, offset, destination, destinationOffset, length, shifts, indexOfKey);
+	}
+
+	/**
+	 * This method shifts every letter in the remaining characters of a buffer
+	 * and writes them to another buffer, which may be the source buffer
+	 * itself. The positions of the buffers are advanced accordingly.
+	 *
+	 * @param source
+	 *            the characters to shift
+	 * @param destination
+	 *            the buffer to write the shifted characters to
+	 * @param shifts
+	 *            the shifts of the key, all between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the position in the key of the letter following the characters
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	static int transform(CharBuffer source, CharBuffer destination, int[] shifts, int indexOfKey) {
+		int length = source.remaining();
+		int sourcePosition = source.position();
+		int destinationPosition = destination.position();
+
+		if (destination.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+
+		if (source.hasArray() && destination.hasArray()) {
+			indexOfKey = transform(source.array(), source.arrayOffset() + sourcePosition, destination.array(),
+					destination.arrayOffset() + destinationPosition, length, shifts, indexOfKey);
+		} else {
+			for (int i = 0; i < length; i++) {
+				char character = source.get(sourcePosition + i);
+				int indexOfCurrentLetterInAlphabet = Util.letterIndex(character);
+
+				if (indexOfCurrentLetterInAlphabet != Util.NOT_A_LETTER) {
+					character = (char) (Util.OFFSET + shift(indexOfCurrentLetterInAlphabet, shifts[indexOfKey]));
+					indexOfKey = nextIndexOfKey(indexOfKey, shifts);
 				}
+				destination.put(destinationPosition + i, character);
+			}
+		}
 
-				int indexOfCurrentLetterInAlphabet = Util.charToIndex(characterToDecrypt);
-				int indexOfCurrentKeyLetterInAlphabet = Util.charToIndex(key.charAt(indexOfKey));
-				// increment the index of the key to step through the chars of
-				// the key
-				indexOfKey += 1;
-
-				// subtract the index of the i-th letter of the key from the
-				// index of the letter in the alphabet to, then mod 26
-				char decryptedLetter = Util
-						.indexToChar(Math.floorMod(indexOfCurrentLetterInAlphabet - indexOfCurrentKeyLetterInAlphabet,
-								NUMBER_OF_LETTERS_IN_ALPHABET));
-				plaintext += decryptedLetter;
-			} else {
-				plaintext += characterToDecrypt;
+		source.position(sourcePosition + length);
+		if (destination != source) {
+			destination.position(destinationPosition + length);
+		}
+
+		return indexOfKey;
+	}
+
+	/**
+	 * This method shifts every letter in the remaining bytes of a buffer and
+	 * writes them to another buffer, which may be the source buffer itself.
+	 * The positions of the buffers are advanced accordingly.
+	 *
+	 * @param source
+	 *            the bytes to shift
+	 * @param destination
+	 *            the buffer to write the shifted bytes to
+	 * @param shifts
+	 *            the shifts of the key, all between 0 and 25
+	 * @param indexOfKey
+	 *            the position in the key of the first letter
+	 * @return the position in the key of the letter following the bytes
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	static int transform(ByteBuffer source, ByteBuffer destination, int[] shifts, int indexOfKey) {
+		int length = source.remaining();
+		int sourcePosition = source.position();
+		int destinationPosition = destination.position();
+
+		if (destination.remaining() < length) {
+			throw new BufferOverflowException();
+		}
+
+		if (source.hasArray() && destination.hasArray()) {
+			indexOfKey = transform(source.array(), source.arrayOffset() + sourcePosition, destination.array(),
+					destination.arrayOffset() + destinationPosition, length, shifts, indexOfKey);
+		} else {
+			for (int i = 0; i < length; i++) {
+				byte character = source.get(sourcePosition + i);
+				int indexOfCurrentLetterInAlphabet = Util.letterIndex(character);
+
+				if (indexOfCurrentLetterInAlphabet != Util.NOT_A_LETTER) {
+					character = (byte) (Util.OFFSET + shift(indexOfCurrentLetterInAlphabet, shifts[indexOfKey]));
+					indexOfKey = nextIndexOfKey(indexOfKey, shifts);
+				}
+				destination.put(destinationPosition + i, character);
 			}
 		}
 
-		return plaintext;
-		// </editor-fold> // END OF YOUR CODE
+		source.position(sourcePosition + length);
+		if (destination != source) {
+			destination.position(destinationPosition + length);
+		}
+
+		return indexOfKey;
+	}
+
+	/**
+	 * Add a shift to the index of a letter, modulo 26. Both are between 0 and
+	 * 25, so a single subtraction replaces the modulus operation.
+	 *
+	 * @param indexOfLetter
+	 *            the index of the letter in the alphabet
+	 * @param shift
+	 *            the shift to add
+	 * @return the index of the shifted letter
+	 */
+	private static int shift(int indexOfLetter, int shift) {
+		int shifted = indexOfLetter + shift;
+
+		return shifted < NUMBER_OF_LETTERS_IN_ALPHABET ? shifted : shifted - NUMBER_OF_LETTERS_IN_ALPHABET;
 	}
 
+	/**
+	 * Step to the next position of the key, starting again from 0 at the end
+	 * of the key.
+	 *
+	 * @param indexOfKey
+	 *            the current position in the key
+	 * @param shifts
+	 *            the shifts of the key
+	 * @return the next position in the key
+	 */
+	private static int nextIndexOfKey(int indexOfKey, int[] shifts) {
+		indexOfKey += 1;
+
+		return indexOfKey < shifts.length ? indexOfKey : 0;
+	}
+
+	/**
+	 * Load the kernel written with the Vector API, or fall back to the plain
+	 * Java one if the Java runtime has not the module or the hardware has not
+	 * wide enough vectors.
+	 *
+	 * @return the kernel
+	 */
+	private static ShiftKernel loadKernel() {
+		try {
+			return (ShiftKernel) Class.forName(VECTOR_KERNEL).getDeclaredConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError e) {
+			return SCALAR_KERNEL;
+		}
+	}
+
+	/**
+	 * The kernel written in plain Java, a letter at a time.
+	 */
+	private static final class ScalarShiftKernel implements ShiftKernel {
+
+		@Override
+		public int transform(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length,
+				int[] shifts, int indexOfKey) {
+			for (int i = 0; i < length; i++) {
+				byte character = source[sourceOffset + i];
+				int indexOfCurrentLetterInAlphabet = Util.letterIndex(character);
+
+				if (indexOfCurrentLetterInAlphabet != Util.NOT_A_LETTER) {
+					destination[destinationOffset + i] = (byte) (Util.OFFSET
+							+ shift(indexOfCurrentLetterInAlphabet, shifts[indexOfKey]));
+					indexOfKey = nextIndexOfKey(indexOfKey, shifts);
+				} else {
+					destination[destinationOffset + i] = character;
+				}
+			}
+
+			return indexOfKey;
+		}
+
+		@Override
+		public int shiftLetters(byte[] letters, int offset, byte[] destination, int destinationOffset, int length,
+				int[] shifts, int indexOfKey) {
+			for (int i = 0; i < length; i++) {
+				destination[destinationOffset + i] = (byte) shift(letters[offset + i], shifts[indexOfKey]);
+				indexOfKey = nextIndexOfKey(indexOfKey, shifts);
+			}
+
+			return indexOfKey;
+		}
+	}
 }
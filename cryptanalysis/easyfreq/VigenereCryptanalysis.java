@@ -5,11 +5,24 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.URISyntaxException;
+import java.nio.charset.Charset;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.function.Function;
 
 /**
  * This class is for frequency cryptanalysis of ciphertext.
  *
+ * <p>
+ * An instance only holds the model of the language of the plaintext: each
+ * cryptanalysis takes its ciphertext and returns its own immutable
+ * {@link Result}, so a single instance can crack many ciphertexts at once from
+ * different threads. Manual adjustment of the key is done by
+ * {@link InteractiveCryptanalysis}.
+ *
  * @author Changyu Dong
  * @author Roberto Metere
  * @author Oana Ivanovici
@@ -17,441 +30,502 @@ import java.nio.file.Paths;
 public class VigenereCryptanalysis {
 
 	/**
-	 * The ciphertext (encryption of the plaintext).
+	 * The scorer of the shifts against the frequencies of the letters of the
+	 * plaintext.
 	 */
-	private String ciphertext;
+	private final ShiftScorer shiftScorer;
 
 	/**
-	 * The plaintext (readable content).
+	 * The scorer of the quadgrams of the plaintext, if any.
 	 */
-	private String plaintext;
+	private final QuadgramScorer quadgramScorer;
 
 	/**
-	 * The key such that the encryption of the plaintext with such key gives the
-	 * ciphertext.
+	 * The number of threads each cryptanalysis runs on.
 	 */
-	private final StringBuffer key = new StringBuffer();
+	private final int parallelism;
 
 	/**
-	 * This variable is just to run the script interactive, that is with manual
-	 * tunes.
+	 * This variable denotes the total number of letters in the English alphabet
+	 * and will be used in the modulus operation
 	 */
-	private boolean interactive;
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
 
 	/**
-	 * INTERACTIVE means that you can manually tune the analysis and/or the
-	 * result.
+	 * This variable will ensure every key length up to 40 is scored.
+	 * Theoretically, we could check the length of the key equal up to the
+	 * length of the ciphetext. However, computationally it is a lengthy
+	 * process so we assume the key length will be within the range 1-40,
+	 * unless the Kasiski examination or the periods suggest a longer one
 	 */
-	public static final boolean INTERACTIVE = true;
+
+	private static final int FINAL_ASSUMED_KEY_LENGTH = 40;
 
 	/**
-	 * AUTOMATIC means that the analysis will not ask any further information.
+	 * The following variable determines the lower bound of the index of
+	 * coincidence. Usually, the index of coincidence is 0.067. However, this
+	 * variable will allow some margin
 	 */
-	public static final boolean AUTOMATIC = false;
+	private static final double LOWER_BOUND_INDEX_OF_COINCIDENCE = 0.062;
 
 	/**
-	 * This variable denotes the total number of letters in the English alphabet
-	 * and will be used in the modulus operation
+	 * The longest key length looked for with the Kasiski examination
 	 */
-	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+	private static final int MAXIMUM_KASISKI_KEY_LENGTH = 200;
 
 	/**
-	 * This variable denotes the inital assumed key length, 2, for the
-	 * ciphertext encrypted with Vigenere cipher.
+	 * The longest period of the coincidences of the ciphertext with itself
+	 * looked for, when no key length up to the final assumed one looks like
+	 * English
 	 */
+	private static final int MAXIMUM_PERIOD = 5000;
 
-	private static final int INITIAL_ASSUMED_KEY_LENGTH = 2;
+	/**
+	 * The number of best key lengths of the Kasiski examination, and of best
+	 * periods, that are scored with the index of coincidence
+	 */
+	private static final int NUMBER_OF_CANDIDATES = 5;
 
 	/**
-	 * This variable will ensure only 20 iterations of finding the key length
-	 * will be done. Theoretically, we could check the length of the key equal
-	 * up to the length of the ciphetext. However, computationally it is a
-	 * lengthy process so we assume the key length will be within the range 1-20
+	 * The number of best scored key lengths whose keys are found, to keep the
+	 * best fitting one
 	 */
+	private static final int NUMBER_OF_RECOVERED_KEY_LENGTHS = 3;
 
-	private static final int FINAL_ASSUMED_KEY_LENGTH = 20;
+	/**
+	 * The number of hill climbs refining the key with the quadgrams
+	 */
+	private static final int NUMBER_OF_REFINEMENT_CLIMBS = 8;
 
 	/**
-	 * The following two variables determine the upper and lower bounds of the
-	 * indexes of coincidence. Usually, the index of coincidence is 0.067.
-	 * However, these variable will allow some margin
+	 * The time after which the hill climbs stop, in milliseconds
 	 */
-	private static final double LOWER_BOUND_INDEX_OF_COINCIDENCE = 0.062;
+	private static final long REFINEMENT_TIME_BUDGET = 2000;
 
-	private static final double HIGHER_BOUND_INDEX_OF_COINCIDENCE = 0.072;
+	/**
+	 * The fewest letters at the beginning of the ciphertext the hill climbs
+	 * score
+	 */
+	private static final int REFINEMENT_SAMPLE_LENGTH = 10000;
 
 	/**
-	 * The following variable is an array with the standard frequencies of the
-	 * English letter alphabets which will be used in calculating the chi
-	 * squared
+	 * The number of letters per column of the key the hill climbs score, when
+	 * the key is too long for the sample length to be enough
 	 */
-	private static final double[] RESULTS_OF_FREQUENCY_ANALYSIS = { 8.167, 1.492, 2.782, 4.253, 12.702, 2.228, 2.015,
-			6.094, 6.966, 0.153, 0.772, 4.025, 2.406, 6.749, 7.507, 1.929, 0.095, 5.987, 6.327, 9.056, 2.758, 0.978,
-			2.360, 0.150, 1.974, 0.074 };
+	private static final int REFINEMENT_LETTERS_PER_COLUMN = 40;
 
 	/**
-	 * Create an new class to cryptanalyze texts.
+	 * The longest key length looked for by the sampling cryptanalysis
+	 */
+	private static final int MAXIMUM_SAMPLED_KEY_LENGTH = 40;
+
+	/**
+	 * The number of letters per column of the key the shifts of the key are
+	 * found from with the chi squared, when the key is too long for the
+	 * sample length to be enough
+	 */
+	private static final int RECOVERY_LETTERS_PER_COLUMN = 1000;
+
+	/**
+	 * Create an new class to cryptanalyze texts, with the standard
+	 * frequencies of the English letters.
 	 */
 	public VigenereCryptanalysis() {
+		this(ShiftScorer.ENGLISH, null, Runtime.getRuntime().availableProcessors());
 	}
 
 	/**
-	 * Constructor with interactive choice.
+	 * Create an new class to cryptanalyze texts with the model of the language
+	 * of the plaintext, whose letter frequencies and quadgrams (if any) are
+	 * used to choose the key of each column.
 	 *
-	 * @param interactive
-	 *            whether it should ask for manual tuning or not
+	 * @param model
+	 *            the language model
 	 */
-	public VigenereCryptanalysis(boolean interactive) {
-		this.interactive = interactive;
+	public VigenereCryptanalysis(LanguageModel model) {
+		this(model.getShiftScorer(), model.getQuadgramScorer(), Runtime.getRuntime().availableProcessors());
 	}
 
 	/**
-	 * Set the ciphertext to analyse.
+	 * Create an new class to cryptanalyze texts.
 	 *
-	 * @param text
-	 *            the text to set as
+	 * @param shiftScorer
+	 *            the scorer of the shifts against the frequencies of the
+	 *            letters of the plaintext
+	 * @param quadgramScorer
+	 *            the scorer of the quadgrams of the plaintext, or null to use
+	 *            the chi squared of the letters only
+	 * @param parallelism
+	 *            the number of threads each cryptanalysis runs on, e.g. 1 when
+	 *            many ciphertexts are cracked at once, in which case it runs
+	 *            in the calling thread only
 	 */
-	public void setCiphertext(String text) {
-		this.ciphertext = text;
+	public VigenereCryptanalysis(ShiftScorer shiftScorer, QuadgramScorer quadgramScorer, int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be positive");
+		}
+
+		this.shiftScorer = shiftScorer;
+		this.quadgramScorer = quadgramScorer;
+		this.parallelism = parallelism;
 	}
 
 	/**
-	 * This method is to allow you to manually set the key can be used as a
-	 * subroutine in your cryptanalysis for manual adjustment
+	 * This method conducts cryptanalysis of the frequency of letters in the
+	 * ciphertext to retrieve the encryption key.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext, with at least a letter
+	 * @return the key and the plaintext as result of the cryptanalysis
 	 */
-	private void manualAdjustment() {
-
-		int answer;
-		int index;
-		char letter;
+	public Result cryptanalysis(CharSequence ciphertext) {
+		String text = ciphertext.toString();
 
-		do {
-			System.out.println("How do you want to change the key (1: insert, 2:replace, 3:delete, 4:nothing)? ");
-			answer = Util.reader.nextInt();
-		} while (answer < 1 || answer > 4);
-
-		switch (answer) {
-		case 1:
-			System.out.println("Enter the index where you want to insert the key charater");
-			index = Util.reader.nextInt();
-			System.out.println("Enter the letter you want to insert");
-			letter = Util.reader.next().charAt(0);
-			if (index < 0 || index > this.key.length()) {
-				System.out.println("Index out of range");
-			} else if (!Util.isValidLetter(letter)) {
-				System.out.println("key character must be a letter");
-			} else {
-				this.key.insert(index, letter);
-
-			}
-			break;
-
-		case 2:
-			System.out.println("Enter the index of the character you want to replace");
-			index = Util.reader.nextInt();
-			System.out.println("Enter the new character");
-			letter = Util.reader.next().charAt(0);
-			if (index < 0 || index >= this.key.length()) {
-				System.out.println("Index out of range");
-			} else if (!Util.isValidLetter(letter)) {
-				System.out.println("key character must be a letter");
-			} else {
-				this.key.replace(index, index, Character.toString(letter));
-			}
-			break;
-
-		case 3:
-			System.out.println("Enter the index of the character you want to delete");
-			index = Util.reader.nextInt();
-			if (index < 0 || index >= this.key.length()) {
-				System.out.println("Index out of range");
-			} else {
-
-				this.key.deleteCharAt(index);
-
-			}
-			break;
+		return cryptanalysis(Util.toLetterIndexes(text), key -> VigenereCipher.decrypt(text, key));
+	}
 
-		default:
-			break;
-		}
+	/**
+	 * This method conducts cryptanalysis of the frequency of letters in a
+	 * ciphertext given as bytes, in an ASCII-compatible encoding (see
+	 * {@link VigenereCipher#decrypt(byte[], String)}). The ciphertext must not
+	 * be changed while the plaintext of the result may be asked for.
+	 *
+	 * @param ciphertext
+	 *            the bytes of the ciphertext, with at least a letter
+	 * @param charset
+	 *            the encoding of the ciphertext, which must be
+	 *            ASCII-compatible, e.g. UTF-8, to decode the plaintext with
+	 * @return the key and the plaintext as result of the cryptanalysis
+	 */
+	public Result cryptanalysis(byte[] ciphertext, Charset charset) {
+		return cryptanalysis(Util.toLetterIndexes(ciphertext), key -> {
+			byte[] plaintext = ciphertext.clone();
+			VigenereCipher.decrypt(plaintext, key);
+			return new String(plaintext, charset);
+		});
 	}
 
 	/**
 	 * This method conducts cryptanalysis of the frequency of letters in the
 	 * ciphertext to retrieve the encryption key.
 	 *
-	 * <p>
-	 * TODO:
-	 * <ul>
-	 * <li>Conduct a frequency analysis of the internal buffer.
-	 * <li>Find the key. You should try your best to find the key based on your
-	 * analysis.
-	 * <li>Store the key in the class variable <code>this.key</code>.
-	 * </ul>
-	 *
-	 * <p>
-	 * Manual adjustment in the method is allowed but needs to be justified in
-	 * your report. You can create methods as you like.
-	 *
-	 * @return the key as result of the cryptanalysis
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param decryption
+	 *            the decryption of the ciphertext with a key
+	 * @return the key and the plaintext as result of the cryptanalysis
 	 */
-	public String cryptanalysis() {
+	private Result cryptanalysis(byte[] letters, Function<String, String> decryption) {
 		// Please, do not remove the editor-fold comments.
 		// <editor-fold defaultstate="collapsed" desc="Write your code here
 		// below!">
 
-		int potentialKeyLength = 0;
-		String[] shiftCiphers = null;
-		double[] expectedCountOfEachLetter = calculateExpectedCountOfLetter(RESULTS_OF_FREQUENCY_ANALYSIS,
-				ciphertext.length());
-		double[] chiSquaredForAllKeys = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
-
-		// Find the key length by iteratively going through each potential key
-		// length up to the final assumed one. For each keylength:
-		// - get all the letters from ciphertext which are encrypted with the
-		// same letter of the key.
-		// - calculate index of coincidence of each element in lettersEncrypted.
-		// - average out the indexes, if the average index of coincidence
-		// calculated is around the 0.067 margin, we can consider we found a
-		// potential key length. If that's not the case, increase the key length
-		// When potential key length is found, the segments of the ciphertext
-		// split given the index of the encryption key which they are encrypted
-		// with will yield a number of shift ciphers
-		for (int h = INITIAL_ASSUMED_KEY_LENGTH; h < FINAL_ASSUMED_KEY_LENGTH; h++) {
-			String[] lettersEncrypted = getLettersEncryptedWithSameKey(h);
-			double[] indexesOfCoincidence = calculateIndexOfCoincidence(h, lettersEncrypted);
-			double averageOfIndexOfCoincidence = calculateAverageIndexOfCoincidence(indexesOfCoincidence);
-
-			if (averageOfIndexOfCoincidence > LOWER_BOUND_INDEX_OF_COINCIDENCE
-					&& averageOfIndexOfCoincidence < HIGHER_BOUND_INDEX_OF_COINCIDENCE) {
-				potentialKeyLength = h;
-				shiftCiphers = lettersEncrypted;
-				break;
-			}
+		long start = System.nanoTime();
+		if (letters.length == 0) {
+			throw new IllegalArgumentException("Ciphertext must contain at least a letter");
 		}
-
-		// Decrypt each shift cipher with every possible key (0-25).
-		// Calculate the chi squared for each plaintext, then store it
-		// to find the minimum chiSquared.
-		// The character with the smallest chi squared is the key for this
-		// segment of the cipher.
-		// the final key is then all the characters with the smallest chi
-		// squared's concatenated
-		for (int i = 0; i < shiftCiphers.length; i++) {
-			for (int j = 0; j < NUMBER_OF_LETTERS_IN_ALPHABET; j++) {
-				String plaintext = decryptShiftCiphers(shiftCiphers[i], j);
-				chiSquaredForAllKeys[j] = calculateChiSquared(plaintext, expectedCountOfEachLetter);
-			}
-			int keyForCurrentCipher = findLowestChiSquared(chiSquaredForAllKeys);
-			this.key.append(Util.indexToChar(keyForCurrentCipher));
+		KeyLengthScorer keyLengthScorer = new KeyLengthScorer(FINAL_ASSUMED_KEY_LENGTH, parallelism);
+
+		// Score every key length up to the final assumed one, and the best
+		// key lengths of the Kasiski examination, which also finds keys
+		// longer than that: the distances between repeated sequences of the
+		// ciphertext are multiples of the key length. If no key length looks
+		// like English, add the periods of the coincidences of the ciphertext
+		// with itself, which finds keys of thousands of letters.
+		int[] otherKeyLengths = best(new KasiskiExamination(MAXIMUM_KASISKI_KEY_LENGTH).rankKeyLengths(letters));
+		List<KeyLengthScorer.Candidate> ranking = keyLengthScorer.rank(letters, otherKeyLengths);
+		if (ranking.get(0).getIndexOfCoincidence() < LOWER_BOUND_INDEX_OF_COINCIDENCE) {
+			int[] periods = best(new PeriodDetector(MAXIMUM_PERIOD).rankPeriods(letters));
+			int[] keyLengths = Arrays.copyOf(otherKeyLengths, otherKeyLengths.length + periods.length);
+			System.arraycopy(periods, 0, keyLengths, otherKeyLengths.length, periods.length);
+			ranking = keyLengthScorer.rank(letters, keyLengths);
 		}
 
-		// </editor-fold> // END OF YOUR CODE
-		// The following code allows you to manually adjust your result.
-		if (this.interactive) {
-			String answer;
-			do {
-
-				do {
-					System.out.println("Do you want to see the plaintext (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
-
-				if (answer.equals("Y")) {
-					this.decrypt();
-					System.out.println(this.plaintext);
-				}
+		long keyLengthFound = System.nanoTime();
 
-				do {
-					System.out.println("Do you want to see the key (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
+		// The columns of the key length are a number of shift ciphers: find
+		// the key of the best candidates at once, and keep the one whose
+		// plaintext fits the language best
+		FittedKey key = bestFittingKey(letters,
+				ranking.subList(0, Math.min(NUMBER_OF_RECOVERED_KEY_LENGTHS, ranking.size())));
 
-				if (answer.equals("Y")) {
-					System.out.println(this.key);
-				}
+		// </editor-fold> // END OF YOUR CODE
 
-				do {
-					System.out.println("Do you want to change the key (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
+		return new Result(toKey(key.shifts), key.candidate.getScore(), Double.NaN, key.fitness, letters.length,
+				keyLengthFound - start, System.nanoTime() - keyLengthFound, decryption);
+	}
 
-				if (answer.equals("Y")) {
-					this.manualAdjustment();
-				}
+	/**
+	 * This method conducts the cryptanalysis of a long ciphertext from samples
+	 * of it, without reading the whole of it: the key length is estimated from
+	 * evenly spread samples until it is certain enough (see
+	 * {@link KeyLengthEstimator}), and the key of each column is then found
+	 * from the beginning of the ciphertext, with enough letters per column.
+	 * Key lengths up to 40 are looked for. The result has the confidence of
+	 * the estimate instead of a key length score. A ciphertext which is not a
+	 * String is copied, so that the plaintext of the result does not change
+	 * with it.
+	 *
+	 * @param ciphertext
+	 *            the ciphertext, with at least a letter
+	 * @return the key and the plaintext as result of the cryptanalysis
+	 */
+	public Result sampledCryptanalysis(CharSequence ciphertext) {
+		String text = ciphertext.toString();
+		long start = System.nanoTime();
+		KeyLengthEstimator.Estimate estimate = new KeyLengthEstimator(MAXIMUM_SAMPLED_KEY_LENGTH).estimate(text);
+		int keyLength = estimate.getKeyLength();
+		long keyLengthFound = System.nanoTime();
+
+		byte[] letters = prefixLetters(text,
+				Math.max(REFINEMENT_SAMPLE_LENGTH, RECOVERY_LETTERS_PER_COLUMN * keyLength));
+		if (letters.length == 0) {
+			throw new IllegalArgumentException("Ciphertext must contain at least a letter");
+		}
+		int[] shifts = recoverShifts(letters, keyLength, countColumns(letters, keyLength), parallelism);
+		double fitness = fitness(Arrays.copyOf(letters, Math.min(letters.length, REFINEMENT_SAMPLE_LENGTH)), shifts);
+
+		// the first block the estimate read starts the text, so the prefix
+		// was read again rather than more
+		return new Result(toKey(shifts), Double.NaN, estimate.getConfidence(), fitness,
+				Math.max(estimate.getLettersRead(), letters.length), keyLengthFound - start,
+				System.nanoTime() - keyLengthFound, key -> VigenereCipher.decrypt(text, key));
+	}
 
-				do {
-					System.out.println("Do you want to stop (Y/N)? ");
-					answer = Util.reader.next().toUpperCase();
-				} while (!(answer.equals("Y") || answer.equals("N")));
+	/**
+	 * Find the decryption shift of each column of a key length. Every possible
+	 * key (0-25) is tried on each column: decrypting a column with a key only
+	 * rotates its counts, so the chi squared of each plaintext is calculated
+	 * from the counts of the column, and the key with the smallest chi squared
+	 * is the key of the column. If there is a quadgram scorer, the chi squared
+	 * of short columns can pick the wrong key, so the key is then refined by
+	 * hill climbing on the quadgrams of the plaintext, which does not need a
+	 * manual adjustment; the beginning of a long ciphertext is enough to do
+	 * so.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param keyLength
+	 *            the key length
+	 * @param columnHistogram
+	 *            the histogram of the columns of the key length
+	 * @param refinementParallelism
+	 *            the number of threads the hill climbs run on
+	 * @return the decryption shifts of the key (see
+	 *         {@link VigenereCipher#decryptionShifts(String)})
+	 */
+	private int[] recoverShifts(byte[] letters, int keyLength, ColumnHistogram columnHistogram,
+			int refinementParallelism) {
+		int[] shifts = new int[keyLength];
+
+		for (int i = 0; i < keyLength; i++) {
+			long[] occurrencesInColumn = columnHistogram.getCounts(keyLength, i);
+			int keyForCurrentCipher = shiftScorer.bestShiftByChiSquared(occurrencesInColumn);
+			shifts[i] = Math.floorMod(-keyForCurrentCipher, NUMBER_OF_LETTERS_IN_ALPHABET);
+		}
 
-			} while (!answer.equals("Y"));
+		if (quadgramScorer != null && keyLength > 0) {
+			int sampleLength = Math.min(letters.length,
+					Math.max(REFINEMENT_SAMPLE_LENGTH, REFINEMENT_LETTERS_PER_COLUMN * keyLength));
+			shifts = new VigenereKeyRefiner(quadgramScorer, NUMBER_OF_REFINEMENT_CLIMBS, refinementParallelism,
+					REFINEMENT_TIME_BUDGET)
+							.refine(Arrays.copyOf(letters, sampleLength), shifts);
 		}
 
-		return this.key.toString();
+		return shifts;
 	}
 
 	/**
-	 * This method splits the ciphertext into an array of size of the assumed
-	 * key length, which when the key length is found, will return shift ciphers
-	 * to decrypt
-	 * 
-	 * @param assumedKeyLength
-	 * @return array of letters encrypted with the same index of the key
+	 * Convert the beginning of a text to indexes of its letters.
+	 *
+	 * @param text
+	 *            the text
+	 * @param numberOfLetters
+	 *            the number of letters to convert, at most
+	 * @return the indexes of the first letters of the text
 	 */
-	private String[] getLettersEncryptedWithSameKey(int assumedKeyLength) {
-		String[] lettersEncrypted = new String[assumedKeyLength];
-		for (int i = 0; i < ciphertext.length(); i++) {
-			int position = i % assumedKeyLength;
-			if (i < assumedKeyLength) {
-				lettersEncrypted[position] = "";
+	private static byte[] prefixLetters(CharSequence text, int numberOfLetters) {
+		byte[] letters = new byte[numberOfLetters];
+		int length = 0;
+
+		for (int i = 0; i < text.length() && length < numberOfLetters; i++) {
+			int indexOfLetter = Util.letterIndex(text.charAt(i));
+
+			if (indexOfLetter != Util.NOT_A_LETTER) {
+				letters[length++] = (byte) indexOfLetter;
 			}
-			lettersEncrypted[position] += (ciphertext.charAt(i));
 		}
-		return lettersEncrypted;
+
+		return Arrays.copyOf(letters, length);
 	}
 
 	/**
-	 * This method calculates the indexes of coincidence for each shift cipher
-	 * obtained from segmenting the ciphertext. The calculation excludes
-	 * occurrences of 0 as they would not affect the sumOfOccurrences
-	 * 
-	 * @param assumedKeyLength
-	 * @param lettersEncrypted
-	 * @return array with indexes of coincidence
-	 */
-	private double[] calculateIndexOfCoincidence(int assumedKeyLength, String[] lettersEncrypted) {
-		double[] indexesOfCoincidence = new double[assumedKeyLength];
-		for (int j = 0; j < lettersEncrypted.length; j++) {
-			double sumOfOccurrences = 0.0;
-			int[] numberOfOccurrences = FrequencyAnalyser.countOccurrencesOfLetter(lettersEncrypted[j]);
-			for (int k = 0; k < NUMBER_OF_LETTERS_IN_ALPHABET; k++) {
-				double occurrenceOfLetter = numberOfOccurrences[k];
-				if (occurrenceOfLetter > 0.0) {
-					sumOfOccurrences += (occurrenceOfLetter * (occurrenceOfLetter - 1.0))
-							/ (double) (lettersEncrypted[j].length() * (lettersEncrypted[j].length() - 1.0));
-				}
+	 * Find the key of each of the candidate key lengths, in parallel, and keep
+	 * the one whose plaintext fits the language best (see
+	 * {@link #fitness(byte[], int[])}), less the log-likelihood of the key if
+	 * there is no quadgram scorer. As the keys are refined with the quadgrams
+	 * if there is a quadgram scorer, the candidates are compared on their
+	 * refined keys. Between candidates which fit as well the first one is
+	 * kept.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param candidates
+	 *            the candidate key lengths, the most likely first
+	 * @return the key of the best fitting candidate
+	 */
+	private FittedKey bestFittingKey(byte[] letters, List<KeyLengthScorer.Candidate> candidates) {
+		byte[] sample = Arrays.copyOf(letters, Math.min(letters.length, REFINEMENT_SAMPLE_LENGTH));
+		int refinementParallelism = Math.max(1, parallelism / candidates.size());
+		List<Callable<FittedKey>> tasks = new ArrayList<>();
+
+		for (KeyLengthScorer.Candidate candidate : candidates) {
+			tasks.add(() -> fitKey(letters, sample, candidate, refinementParallelism));
+		}
+
+		FittedKey best = null;
+		double bestFitness = Double.NEGATIVE_INFINITY;
+
+		for (FittedKey key : Util.invokeAll(tasks, parallelism, "fitting the key lengths")) {
+			double fitness = key.fitness;
+			if (quadgramScorer == null) {
+				// the more columns, the better the letters fit by chance: take
+				// off the log-likelihood of choosing the key at random
+				fitness -= key.candidate.getKeyLength() * Math.log(NUMBER_OF_LETTERS_IN_ALPHABET)
+						/ Math.max(1, sample.length);
+			}
+
+			if (best == null || fitness > bestFitness) {
+				best = key;
+				bestFitness = fitness;
 			}
-			indexesOfCoincidence[j] = sumOfOccurrences;
 		}
-		return indexesOfCoincidence;
+
+		return best;
 	}
 
 	/**
-	 * This method averages out the indexes of coincidence in order to decide
-	 * the final value of it which will be used in assessing whether it is
-	 * within the boundaries LOWER_BOUND_INDEX_OF_COINCIDENCE and
-	 * HIGHER_BOUND_INDEX_OF_COINCIDENCE. If it is, it means we found the key
-	 * length.
-	 * 
-	 * @param indexesOfCoincidence
-	 * @return the average of the indexes of coincidence
+	 * Find the key of a key length from the chi squared of the columns of the
+	 * beginning of the ciphertext, refined with the quadgrams if there is a
+	 * quadgram scorer, once only if it repeats, and calculate how well the
+	 * plaintext of a sample fits the language.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param sample
+	 *            the beginning of the ciphertext the fitness is calculated on
+	 * @param candidate
+	 *            the candidate key length
+	 * @param refinementParallelism
+	 *            the number of threads the hill climbs run on
+	 * @return the key and the fitness of the plaintext of the sample
 	 */
-	private double calculateAverageIndexOfCoincidence(double[] indexesOfCoincidence) {
-		double sumOfCoincidences = 0.0;
-		for (int k = 0; k < indexesOfCoincidence.length; k++) {
-			sumOfCoincidences += indexesOfCoincidence[k];
-		}
-		return sumOfCoincidences / indexesOfCoincidence.length;
+	private FittedKey fitKey(byte[] letters, byte[] sample, KeyLengthScorer.Candidate candidate,
+			int refinementParallelism) {
+		int keyLength = candidate.getKeyLength();
+		byte[] prefix = Arrays.copyOf(letters,
+				Math.min(letters.length, Math.max(REFINEMENT_SAMPLE_LENGTH, RECOVERY_LETTERS_PER_COLUMN * keyLength)));
+		int[] shifts = shortestPeriod(
+				recoverShifts(prefix, keyLength, countColumns(prefix, keyLength), refinementParallelism));
+
+		return new FittedKey(candidate, shifts, fitness(sample, shifts));
 	}
 
 	/**
-	 * In order to calculate the chi squared value to solve each shift cipher,
-	 * we need to calculate how many times we expect a letter to occur in a
-	 * given text of length x, given the known frequency analysis of the letters
-	 * 
-	 * @param resultsOfFreqAnalysis
-	 * @param lengthOfText
-	 * @return array with expected counts of each letter in a text of given
-	 *         length x
+	 * Calculate how well the plaintext of a sample fits the language: the
+	 * fitness of its quadgrams if there is a quadgram scorer, and the
+	 * log-likelihood of its letters otherwise.
+	 *
+	 * @param sample
+	 *            the beginning of the ciphertext as indexes of its letters
+	 * @param shifts
+	 *            the decryption shifts of the key
+	 * @return the fitness per letter of the plaintext of the sample, the
+	 *         higher the better
 	 */
-	private static double[] calculateExpectedCountOfLetter(double[] resultsOfFreqAnalysis, int lengthOfText) {
-		double[] expectedCounts = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
-		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
-			expectedCounts[i] = (lengthOfText * resultsOfFreqAnalysis[i]) / 100;
+	private double fitness(byte[] sample, int[] shifts) {
+		if (quadgramScorer != null) {
+			return quadgramScorer.score(sample, 0, sample.length, shifts, 0) / Math.max(1, sample.length);
 		}
-		return expectedCounts;
-	}
 
-	/**
-	 * This method decrypts the shift ciphers that resulted from the splitting
-	 * of the ciphertext based on key length. It is used in trialing each key
-	 * from 0-25 to decrypt a ciphertext, which will then be used for
-	 * calculating chi squared
-	 * 
-	 * @param ciphertext
-	 * @param key
-	 * @return string with the segment of the ciphertext (shift cipher)
-	 *         decrypted
-	 */
-	private static String decryptShiftCiphers(String ciphertext, int key) {
-		StringBuilder plaintext = new StringBuilder();
-		for (int i = 0; i < ciphertext.length(); i++) {
-			char letter = ciphertext.charAt(i);
-			if (Util.isValidLetter(letter)) {
-				char decryptedLetter = Util
-						.indexToChar(Math.floorMod(Util.charToIndex(letter) - key, NUMBER_OF_LETTERS_IN_ALPHABET));
-				plaintext.append(decryptedLetter);
-			}
+		ColumnHistogram columnsOfSample = countColumns(sample, shifts.length);
+		double[] scores = new double[NUMBER_OF_LETTERS_IN_ALPHABET];
+		double fitness = 0.0;
+
+		for (int i = 0; i < shifts.length; i++) {
+			shiftScorer.logLikelihood(columnsOfSample.getCounts(shifts.length, i), scores);
+			fitness += scores[Math.floorMod(-shifts[i], NUMBER_OF_LETTERS_IN_ALPHABET)];
 		}
-		return plaintext.toString();
+
+		return fitness / Math.max(1, sample.length);
 	}
 
 	/**
-	 * This method returns the chi squared for all letters for a certain
-	 * plaintext. chiSquared = sum (Count i - Expected i)^2/Expected i
-	 * 
-	 * @param text
-	 * @param expectedCountOfEachLetter
-	 * @return the chi squared of all the letters
-	 */
-	private static double calculateChiSquared(String text, double[] expectedCountOfEachLetter) {
-		int[] occurrencesOfEachLetter = FrequencyAnalyser.countOccurrencesOfLetter(text);
-		double chiSquared = 0.0;
-		for (int i = 0; i < NUMBER_OF_LETTERS_IN_ALPHABET; i++) {
-			chiSquared += ((Math.pow(occurrencesOfEachLetter[i] - expectedCountOfEachLetter[i], 2))
-					/ (double) expectedCountOfEachLetter[i]);
+	 * Convert decryption shifts to the key.
+	 *
+	 * @param shifts
+	 *            the decryption shifts of the key (see
+	 *            {@link VigenereCipher#decryptionShifts(String)})
+	 * @return the key
+	 */
+	private static String toKey(int[] shifts) {
+		StringBuilder key = new StringBuilder(shifts.length);
+
+		for (int i = 0; i < shifts.length; i++) {
+			key.append(Util.indexToChar(Math.floorMod(-shifts[i], NUMBER_OF_LETTERS_IN_ALPHABET)));
 		}
-		return chiSquared;
+
+		return key.toString();
 	}
 
 	/**
-	 * This method returns the lowest Chi Squared from all the chi squared's for
-	 * all keys. The lowest chi squared denotes the key for the shift cipher
-	 * 
-	 * @param chiSquaredForAllKeys
-	 * @return index of the character with the lowest chi square, which will
-	 *         denote the key
+	 * Find the shortest key which repeated gives a key, e.g. the key of a
+	 * multiple of the key length.
+	 *
+	 * @param shifts
+	 *            the shifts of the key
+	 * @return the shifts of the shortest key which repeated gives the key
 	 */
-	private static int findLowestChiSquared(double[] chiSquaredForAllKeys) {
-		double lowestChiSquared = Integer.MAX_VALUE;
-		int indexOfLowestChiSquared = 0;
-
-		for (int i = 0; i < chiSquaredForAllKeys.length; i++) {
-			if (chiSquaredForAllKeys[i] < lowestChiSquared && chiSquaredForAllKeys[i] != 0.0) {
-				lowestChiSquared = chiSquaredForAllKeys[i];
-				indexOfLowestChiSquared = i;
+	private static int[] shortestPeriod(int[] shifts) {
+		for (int period = 1; period < shifts.length; period++) {
+			if (shifts.length % period == 0) {
+				int i = period;
+				while (i < shifts.length && shifts[i] == shifts[i - period]) {
+					i++;
+				}
+				if (i == shifts.length) {
+					return Arrays.copyOf(shifts, period);
+				}
 			}
 		}
-		return indexOfLowestChiSquared;
+
+		return shifts;
 	}
 
 	/**
-	 * This method reconstructs the plaintext from the ciphertext with the key.
+	 * Keep the best candidates of a ranking.
+	 *
+	 * @param candidates
+	 *            the candidates, the most likely first
+	 * @return at most the number of candidates first candidates
 	 */
-	public void decrypt() {
-		this.plaintext = VigenereCipher.decrypt(this.ciphertext, this.key.toString());
+	private static int[] best(int[] candidates) {
+		return Arrays.copyOf(candidates, Math.min(NUMBER_OF_CANDIDATES, candidates.length));
 	}
 
 	/**
-	 * Show the results of the complete analysis.
+	 * Count the letters of each column of a single key length.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param keyLength
+	 *            the key length
+	 * @return the histogram of the columns of the key length
 	 */
-	public void showResult() {
-		System.out.println("The key is " + this.key.toString());
-		this.decrypt();
-		System.out.println("The plaintext is:");
-		System.out.println(this.plaintext);
+	private static ColumnHistogram countColumns(byte[] letters, int keyLength) {
+		ColumnHistogram columnHistogram = new ColumnHistogram(keyLength, keyLength);
+		columnHistogram.add(letters, 0, letters.length);
+		return columnHistogram;
 	}
 
 	/**
@@ -463,37 +537,243 @@ public class VigenereCryptanalysis {
 	 *             Errors in retrieving resources
 	 */
 	public static void main(String[] args) throws IOException, URISyntaxException {
-		String mainPath, ciphertextFilePath, ciphertext;
+		String mainPath, plaintextFilePath, ciphertextFilePath, modelFilePath, ciphertext, key, plaintext;
 		VigenereCryptanalysis cryptanalysis;
 		File solutionDirectory;
 		String solutionKeyFilePath, solutionPlaintextFilePath;
 
-		// Add argument -i at run to enable interactive mode (and disable
-		// automatic mode)
-		if (0 < args.length && args[0].equals("-i")) {
-			cryptanalysis = new VigenereCryptanalysis(INTERACTIVE);
-		} else {
-			cryptanalysis = new VigenereCryptanalysis(AUTOMATIC);
-		}
-
 		// Get resources
 		mainPath = Paths.get(FrequencyCryptanalysis.class.getResource("/").toURI()).toString();
 		ciphertextFilePath = mainPath + "/res/Exercise2Ciphertext.txt";
+		plaintextFilePath = mainPath + "/res/pg1661.txt";
+		modelFilePath = mainPath + "/res/english.model";
 		solutionDirectory = new File(mainPath + "/solution2");
 		solutionKeyFilePath = solutionDirectory + "/key.txt";
 		solutionPlaintextFilePath = solutionDirectory + "/plaintext.txt";
 
+		// Load the model of English, which is only built from the readable
+		// text the first time
+		cryptanalysis = new VigenereCryptanalysis(
+				LanguageModel.loadOrBuild(Paths.get(modelFilePath), Paths.get(plaintextFilePath)));
+
 		// Do the job
 		ciphertext = Util.readFileToBuffer(ciphertextFilePath);
-		cryptanalysis.setCiphertext(ciphertext);
-		cryptanalysis.cryptanalysis();
-		cryptanalysis.showResult();
+		key = cryptanalysis.cryptanalysis(ciphertext).getKey();
+
+		// Add argument -i at run to enable interactive mode, that is with
+		// manual tunes of the key
+		if (InteractiveCryptanalysis.isInteractive(args)) {
+			key = InteractiveCryptanalysis.adjustKey(ciphertext, key);
+		}
+		plaintext = VigenereCipher.decrypt(ciphertext, key);
+		InteractiveCryptanalysis.showResult(key, plaintext);
 
 		// Write solution in res path
 		if (!solutionDirectory.exists()) {
 			solutionDirectory.mkdir();
 		}
-		Util.printBufferToFile(cryptanalysis.key.toString(), solutionKeyFilePath);
-		Util.printBufferToFile(cryptanalysis.plaintext, solutionPlaintextFilePath);
+		Util.printBufferToFile(key, solutionKeyFilePath);
+		Util.printBufferToFile(plaintext, solutionPlaintextFilePath);
+	}
+
+	/**
+	 * The key found for a candidate key length.
+	 */
+	private static final class FittedKey {
+
+		/**
+		 * The candidate key length
+		 */
+		private final KeyLengthScorer.Candidate candidate;
+
+		/**
+		 * The decryption shifts of the key, once only if it repeats
+		 */
+		private final int[] shifts;
+
+		/**
+		 * The fitness per letter of the plaintext of the sample
+		 */
+		private final double fitness;
+
+		FittedKey(KeyLengthScorer.Candidate candidate, int[] shifts, double fitness) {
+			this.candidate = candidate;
+			this.shifts = shifts;
+			this.fitness = fitness;
+		}
+	}
+
+	/**
+	 * The result of a cryptanalysis: the key, how it was scored and how long
+	 * it took to find it. The plaintext is only decrypted the first time it
+	 * is asked for.
+	 */
+	public static final class Result {
+
+		/**
+		 * The key found
+		 */
+		private final String key;
+
+		/**
+		 * The score of the length of the key among the candidates, NaN for a
+		 * sampled cryptanalysis
+		 */
+		private final double keyLengthScore;
+
+		/**
+		 * The confidence of the estimate of the length of the key, NaN unless
+		 * the cryptanalysis is sampled
+		 */
+		private final double keyLengthConfidence;
+
+		/**
+		 * The fitness per letter of the beginning of the plaintext
+		 */
+		private final double fitness;
+
+		/**
+		 * The number of letters of the ciphertext read
+		 */
+		private final long lettersRead;
+
+		/**
+		 * The time taken to find the key length, in nanoseconds
+		 */
+		private final long keyLengthTime;
+
+		/**
+		 * The time taken to find the key once its length was known, in
+		 * nanoseconds
+		 */
+		private final long keyTime;
+
+		/**
+		 * The decryption of the ciphertext with a key
+		 */
+		private final Function<String, String> decryption;
+
+		/**
+		 * The plaintext, once decrypted
+		 */
+		private volatile String plaintext;
+
+		Result(String key, double keyLengthScore, double keyLengthConfidence, double fitness, long lettersRead,
+				long keyLengthTime, long keyTime, Function<String, String> decryption) {
+			this.key = key;
+			this.keyLengthScore = keyLengthScore;
+			this.keyLengthConfidence = keyLengthConfidence;
+			this.fitness = fitness;
+			this.lettersRead = lettersRead;
+			this.keyLengthTime = keyLengthTime;
+			this.keyTime = keyTime;
+			this.decryption = decryption;
+		}
+
+		/**
+		 * Get the key found.
+		 *
+		 * @return the key
+		 */
+		public String getKey() {
+			return key;
+		}
+
+		/**
+		 * Get the plaintext, i.e. the ciphertext decrypted with the key found.
+		 *
+		 * @return the plaintext
+		 */
+		public String getPlaintext() {
+			String decrypted = plaintext;
+
+			if (decrypted == null) {
+				decrypted = decryption.apply(key);
+				plaintext = decrypted;
+			}
+
+			return decrypted;
+		}
+
+		/**
+		 * Get the score of the length of the key among the candidate key
+		 * lengths (see {@link KeyLengthScorer.Candidate#getScore()}).
+		 *
+		 * @return the score of the key length, NaN for a sampled
+		 *         cryptanalysis
+		 */
+		public double getKeyLengthScore() {
+			return keyLengthScore;
+		}
+
+		/**
+		 * Get the confidence of the estimate of the length of the key of a
+		 * sampled cryptanalysis (see
+		 * {@link KeyLengthEstimator.Estimate#getConfidence()}).
+		 *
+		 * @return the confidence, between 0 and 1, NaN unless the
+		 *         cryptanalysis is sampled
+		 */
+		public double getKeyLengthConfidence() {
+			return keyLengthConfidence;
+		}
+
+		/**
+		 * Get how well the beginning of the plaintext fits the language: the
+		 * log-probability of its quadgrams if there is a quadgram scorer, and
+		 * the log-likelihood of its letters otherwise, per letter.
+		 *
+		 * @return the fitness, the higher the better
+		 */
+		public double getFitness() {
+			return fitness;
+		}
+
+		/**
+		 * Get the number of letters of the ciphertext read.
+		 *
+		 * @return the number of letters
+		 */
+		public long getLettersRead() {
+			return lettersRead;
+		}
+
+		/**
+		 * Get the time taken to find the key length.
+		 *
+		 * @return the time, in nanoseconds
+		 */
+		public long getKeyLengthTime() {
+			return keyLengthTime;
+		}
+
+		/**
+		 * Get the time taken to find the key once its length was known.
+		 *
+		 * @return the time, in nanoseconds
+		 */
+		public long getKeyTime() {
+			return keyTime;
+		}
+
+		/**
+		 * Get the time taken by the whole cryptanalysis, without decrypting
+		 * the plaintext.
+		 *
+		 * @return the time, in nanoseconds
+		 */
+		public long getElapsedTime() {
+			return keyLengthTime + keyTime;
+		}
+
+		@Override
+		public String toString() {
+			String keyLength = Double.isNaN(keyLengthConfidence)
+					? String.format("key length score %.1f", keyLengthScore)
+					: String.format("key length confidence %.3f", keyLengthConfidence);
+
+			return String.format("key %s (%s, fitness %.3f, %d letters read, %.1f ms)", key, keyLength, fitness,
+					lettersRead, getElapsedTime() / 1e6);
+		}
 	}
 }
@@ -0,0 +1,259 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+
+/**
+ * An instance of this class improves a Vigen&egrave;re key, whose length is
+ * known, by hill climbing on the quadgram fitness of the plaintext.
+ *
+ * <p>
+ * Each climb goes through the positions of the key, tries the 26 letters at
+ * each one and keeps the letter whose plaintext has the best quadgrams, until
+ * no letter changes during a whole pass. The text is decrypted once per climb
+ * (see {@link VigenereCipher#shiftLetters(byte[], int, byte[], int, int, int[], int)}),
+ * and changing the letter of a column of the key only shifts the letters of
+ * the column again and changes the quadgrams containing one of them, i.e. the
+ * seven letters around each of them, so only those are scored: a pass costs a
+ * constant number of quadgrams per letter of the text, whatever the length of
+ * the key. (With keys shorter than four letters every quadgram contains a
+ * letter of each column, and the whole text is scored.)
+ *
+ * <p>
+ * The first climb starts from the given key; the others are independent
+ * restarts from the given key with about a third of its letters replaced at
+ * random, which run in parallel on a fork/join pool, or one after the other
+ * in the calling thread with a parallelism of 1. The climbs stop at the end of
+ * the time budget, and the best key found is returned.
+ *
+ * @author Oana Ivanovici
+ */
+public class VigenereKeyRefiner {
+
+	/**
+	 * This variable denotes the total number of letters in the English alphabet
+	 */
+	private static final int NUMBER_OF_LETTERS_IN_ALPHABET = 26;
+
+	/**
+	 * The key lengths from which the quadgrams containing a letter of a column
+	 * never contain another letter of the same column
+	 */
+	private static final int QUADGRAM_LENGTH = 4;
+
+	/**
+	 * The probability that a letter of the key is replaced at random at the
+	 * start of a restart
+	 */
+	private static final double PERTURBATION = 1.0 / 3.0;
+
+	/**
+	 * The scorer of the quadgrams of the plaintext
+	 */
+	private final QuadgramScorer quadgramScorer;
+
+	/**
+	 * The number of climbs, including the first one from the given key
+	 */
+	private final int numberOfClimbs;
+
+	/**
+	 * The number of threads the climbs run on
+	 */
+	private final int parallelism;
+
+	/**
+	 * The wall-clock time after which no more letters are tried, in
+	 * milliseconds
+	 */
+	private final long timeBudget;
+
+	/**
+	 * Create a refiner.
+	 *
+	 * @param quadgramScorer
+	 *            the scorer of the quadgrams of the plaintext
+	 * @param numberOfClimbs
+	 *            the number of climbs, including the first one from the given
+	 *            key
+	 * @param parallelism
+	 *            the number of threads the climbs run on
+	 * @param timeBudget
+	 *            the wall-clock time after which no more letters are tried, in
+	 *            milliseconds
+	 */
+	public VigenereKeyRefiner(QuadgramScorer quadgramScorer, int numberOfClimbs, int parallelism, long timeBudget) {
+		if (numberOfClimbs < 1 || parallelism < 1) {
+			throw new IllegalArgumentException("Number of climbs and parallelism must be positive");
+		}
+
+		this.quadgramScorer = quadgramScorer;
+		this.numberOfClimbs = numberOfClimbs;
+		this.parallelism = parallelism;
+		this.timeBudget = timeBudget;
+	}
+
+	/**
+	 * This method refines a key.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters (see
+	 *            {@link Util#toLetterIndexes(CharSequence)})
+	 * @param shifts
+	 *            the decryption shifts of the key to start from (see
+	 *            {@link VigenereCipher#decryptionShifts(String)}), which are
+	 *            not changed
+	 * @return the decryption shifts of the best key found
+	 */
+	public int[] refine(byte[] letters, int[] shifts) {
+		long deadline = System.nanoTime() + timeBudget * 1000000L;
+		List<Callable<Climb>> climbs = new ArrayList<>();
+
+		for (int i = 0; i < numberOfClimbs; i++) {
+			int[] start = shifts.clone();
+
+			if (i > 0) {
+				Random random = new Random(i);
+				for (int column = 0; column < start.length; column++) {
+					if (random.nextDouble() < PERTURBATION) {
+						start[column] = random.nextInt(NUMBER_OF_LETTERS_IN_ALPHABET);
+					}
+				}
+			}
+			climbs.add(() -> climb(letters, start, deadline));
+		}
+
+		Climb best = null;
+		for (Climb climb : Util.invokeAll(climbs, parallelism, "refining the key")) {
+			if (best == null || climb.score > best.score) {
+				best = climb;
+			}
+		}
+
+		return best.shifts;
+	}
+
+	/**
+	 * Climb from a key until no letter of the key can be improved, or until
+	 * the deadline.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param shifts
+	 *            the decryption shifts of the key to start from, changed in
+	 *            place
+	 * @param deadline
+	 *            the time, as given by {@link System#nanoTime()}, after which
+	 *            no more letters are tried
+	 * @return the key reached and its fitness
+	 */
+	private Climb climb(byte[] letters, int[] shifts, long deadline) {
+		byte[] plaintext = new byte[letters.length];
+		VigenereCipher.shiftLetters(letters, 0, plaintext, 0, letters.length, shifts, 0);
+		double score = quadgramScorer.score(plaintext, 0, plaintext.length);
+		boolean improved = true;
+
+		while (improved) {
+			improved = false;
+
+			for (int column = 0; column < shifts.length; column++) {
+				if (System.nanoTime() - deadline > 0) {
+					return new Climb(shifts, score);
+				}
+
+				int currentShift = shifts[column];
+				double currentScore = scoreOfColumn(plaintext, shifts.length, column);
+				double bestScore = currentScore;
+				int bestShift = currentShift;
+
+				for (int shift = 0; shift < NUMBER_OF_LETTERS_IN_ALPHABET; shift++) {
+					if (shift != currentShift) {
+						shiftColumn(letters, plaintext, shifts.length, column, shift);
+						double columnScore = scoreOfColumn(plaintext, shifts.length, column);
+
+						if (columnScore > bestScore) {
+							bestScore = columnScore;
+							bestShift = shift;
+						}
+					}
+				}
+
+				shifts[column] = bestShift;
+				shiftColumn(letters, plaintext, shifts.length, column, bestShift);
+				if (bestShift != currentShift) {
+					score += bestScore - currentScore;
+					improved = true;
+				}
+			}
+		}
+
+		return new Climb(shifts, score);
+	}
+
+	/**
+	 * Decrypt the letters of a column again with another shift.
+	 *
+	 * @param letters
+	 *            the ciphertext as indexes of its letters
+	 * @param plaintext
+	 *            the plaintext as indexes of its letters, changed in place
+	 * @param keyLength
+	 *            the length of the key
+	 * @param column
+	 *            the column
+	 * @param shift
+	 *            the decryption shift of the column
+	 */
+	private static void shiftColumn(byte[] letters, byte[] plaintext, int keyLength, int column, int shift) {
+		for (int position = column; position < letters.length; position += keyLength) {
+			int shifted = letters[position] + shift;
+			plaintext[position] = (byte) (shifted < NUMBER_OF_LETTERS_IN_ALPHABET ? shifted
+					: shifted - NUMBER_OF_LETTERS_IN_ALPHABET);
+		}
+	}
+
+	/**
+	 * Calculate the fitness of the quadgrams containing a letter of a column,
+	 * i.e. the part of the fitness of the plaintext that depends on the shift
+	 * of the column.
+	 *
+	 * @param plaintext
+	 *            the plaintext as indexes of its letters
+	 * @param keyLength
+	 *            the length of the key
+	 * @param column
+	 *            the column
+	 * @return the sum of the logarithms of the probabilities of the quadgrams
+	 */
+	private double scoreOfColumn(byte[] plaintext, int keyLength, int column) {
+		if (keyLength < QUADGRAM_LENGTH) {
+			return quadgramScorer.score(plaintext, 0, plaintext.length);
+		}
+
+		double score = 0.0;
+		for (int position = column; position < plaintext.length; position += keyLength) {
+			int start = Math.max(0, position - (QUADGRAM_LENGTH - 1));
+			int end = Math.min(plaintext.length, position + QUADGRAM_LENGTH);
+			score += quadgramScorer.score(plaintext, start, end - start);
+		}
+
+		return score;
+	}
+
+	/**
+	 * The result of a climb.
+	 */
+	private static class Climb {
+
+		private final int[] shifts;
+
+		private final double score;
+
+		Climb(int[] shifts, double score) {
+			this.shifts = shifts;
+			this.score = score;
+		}
+	}
+}
@@ -0,0 +1,499 @@
+package uk.ac.ncl.undergraduate.modules.csc3621.cryptanalysis.easyfreq;
+
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An instance of this class encrypts or decrypts a text according to the
+ * Vigen&egrave;re cipher a chunk at a time. It remembers the position in the
+ * key reached at the end of a chunk, so that feeding a text in chunks of any
+ * size gives the same result as {@link VigenereCipher} on the whole text.
+ *
+ * <p>
+ * The adapters returned by {@link #newReader(Reader)},
+ * {@link #newWriter(Writer)}, {@link #newReadableChannel(ReadableByteChannel)}
+ * and {@link #newWritableChannel(WritableByteChannel)} share the position in
+ * the key with this instance, so a single stream should be wrapped per
+ * instance. Their memory use is bounded by their buffer, whatever the size of
+ * the text.
+ *
+ * @author Oana Ivanovici
+ */
+public class VigenereStreamCipher {
+
+	/**
+	 * ENCRYPT means that the letters are shifted forward by the key.
+	 */
+	public static final boolean ENCRYPT = true;
+
+	/**
+	 * DECRYPT means that the letters are shifted backward by the key.
+	 */
+	public static final boolean DECRYPT = false;
+
+	/**
+	 * Size of the buffers of the adapters
+	 */
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * The shifts applied to the letters, one per letter of the key.
+	 */
+	private final int[] shifts;
+
+	/**
+	 * The position in the key of the next letter to encrypt or decrypt.
+	 */
+	private int indexOfKey;
+
+	/**
+	 * Create a stream cipher with the given key.
+	 *
+	 * @param key
+	 *            the encryption key
+	 * @param mode
+	 *            whether it should encrypt or decrypt
+	 */
+	public VigenereStreamCipher(String key, boolean mode) {
+		this.shifts = mode == ENCRYPT ? VigenereCipher.encryptionShifts(key) : VigenereCipher.decryptionShifts(key);
+	}
+
+	/**
+	 * Get the position in the key of the next letter to encrypt or decrypt.
+	 *
+	 * @return the position in the key
+	 */
+	public int getIndexOfKey() {
+		return indexOfKey;
+	}
+
+	/**
+	 * Start again from the first letter of the key, as for a new text.
+	 */
+	public void reset() {
+		this.indexOfKey = 0;
+	}
+
+	/**
+	 * Encrypt or decrypt the next chunk of characters in place.
+	 *
+	 * @param chunk
+	 *            the characters to transform
+	 * @param offset
+	 *            the index of the first character to transform
+	 * @param length
+	 *            the number of characters to transform
+	 */
+	public void update(char[] chunk, int offset, int length) {
+		update(chunk, offset, chunk, offset, length);
+	}
+
+	/**
+	 * Encrypt or decrypt the next chunk of characters into a destination
+	 * array.
+	 *
+	 * @param source
+	 *            the characters to transform
+	 * @param sourceOffset
+	 *            the index of the first character to transform
+	 * @param destination
+	 *            the array to write the result to
+	 * @param destinationOffset
+	 *            the index where the result is written from
+	 * @param length
+	 *            the number of characters to transform
+	 */
+	public void update(char[] source, int sourceOffset, char[] destination, int destinationOffset, int length) {
+		this.indexOfKey = VigenereCipher.transform(source, sourceOffset, destination, destinationOffset, length,
+				shifts, indexOfKey);
+	}
+
+	/**
+	 * Encrypt or decrypt the next chunk of bytes in place. The text is
+	 * assumed to be in an ASCII-compatible encoding.
+	 *
+	 * @param chunk
+	 *            the bytes to transform
+	 * @param offset
+	 *            the index of the first byte to transform
+	 * @param length
+	 *            the number of bytes to transform
+	 */
+	public void update(byte[] chunk, int offset, int length) {
+		update(chunk, offset, chunk, offset, length);
+	}
+
+	/**
+	 * Encrypt or decrypt the next chunk of bytes into a destination array.
+	 *
+	 * @param source
+	 *            the bytes to transform
+	 * @param sourceOffset
+	 *            the index of the first byte to transform
+	 * @param destination
+	 *            the array to write the result to
+	 * @param destinationOffset
+	 *            the index where the result is written from
+	 * @param length
+	 *            the number of bytes to transform
+	 */
+	public void update(byte[] source, int sourceOffset, byte[] destination, int destinationOffset, int length) {
+		this.indexOfKey = VigenereCipher.transform(source, sourceOffset, destination, destinationOffset, length,
+				shifts, indexOfKey);
+	}
+
+	/**
+	 * Encrypt or decrypt the remaining characters of a buffer in place. The
+	 * position of the buffer is advanced to its limit.
+	 *
+	 * @param chunk
+	 *            the characters to transform
+	 */
+	public void update(CharBuffer chunk) {
+		update(chunk, chunk);
+	}
+
+	/**
+	 * Encrypt or decrypt the remaining characters of a buffer into another
+	 * buffer. The positions of both buffers are advanced accordingly.
+	 *
+	 * @param source
+	 *            the characters to transform
+	 * @param destination
+	 *            the buffer to write the result to
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	public void update(CharBuffer source, CharBuffer destination) {
+		this.indexOfKey = VigenereCipher.transform(source, destination, shifts, indexOfKey);
+	}
+
+	/**
+	 * Encrypt or decrypt the remaining bytes of a buffer in place. The
+	 * position of the buffer is advanced to its limit.
+	 *
+	 * @param chunk
+	 *            the bytes to transform
+	 */
+	public void update(ByteBuffer chunk) {
+		update(chunk, chunk);
+	}
+
+	/**
+	 * Encrypt or decrypt the remaining bytes of a buffer into another buffer.
+	 * The positions of both buffers are advanced accordingly.
+	 *
+	 * @param source
+	 *            the bytes to transform
+	 * @param destination
+	 *            the buffer to write the result to
+	 * @throws BufferOverflowException
+	 *             the destination has not enough space left
+	 */
+	public void update(ByteBuffer source, ByteBuffer destination) {
+		this.indexOfKey = VigenereCipher.transform(source, destination, shifts, indexOfKey);
+	}
+
+	/**
+	 * Wrap a reader so that the characters read from it are encrypted or
+	 * decrypted by this cipher.
+	 *
+	 * @param in
+	 *            the reader to read the text from
+	 * @return a reader of the transformed text
+	 */
+	public Reader newReader(Reader in) {
+		return new CipherReader(in);
+	}
+
+	/**
+	 * Wrap a writer so that the characters written to it are encrypted or
+	 * decrypted by this cipher first.
+	 *
+	 * @param out
+	 *            the writer to write the transformed text to
+	 * @return a writer of the text to transform
+	 */
+	public Writer newWriter(Writer out) {
+		return new CipherWriter(out);
+	}
+
+	/**
+	 * Wrap a channel so that the bytes read from it are encrypted or decrypted
+	 * by this cipher.
+	 *
+	 * @param in
+	 *            the channel to read the text from
+	 * @return a channel of the transformed text
+	 */
+	public ReadableByteChannel newReadableChannel(ReadableByteChannel in) {
+		return new CipherReadableChannel(in);
+	}
+
+	/**
+	 * Wrap a channel so that the bytes written to it are encrypted or
+	 * decrypted by this cipher first.
+	 *
+	 * @param out
+	 *            the channel to write the transformed text to
+	 * @return a channel of the text to transform
+	 */
+	public WritableByteChannel newWritableChannel(WritableByteChannel out) {
+		return new CipherWritableChannel(out);
+	}
+
+	/**
+	 * Encrypt or decrypt everything read from a reader into a writer. Neither
+	 * of them is closed.
+	 *
+	 * @param in
+	 *            the reader to read the text from
+	 * @param out
+	 *            the writer to write the transformed text to
+	 * @return the number of characters transformed
+	 * @throws IOException
+	 *             something goes wrong reading or writing
+	 */
+	public long transfer(Reader in, Writer out) throws IOException {
+		char[] buffer = new char[BUFFER_SIZE];
+		long transferred = 0;
+		int read;
+
+		while ((read = in.read(buffer)) != -1) {
+			update(buffer, 0, read);
+			out.write(buffer, 0, read);
+			transferred += read;
+		}
+
+		return transferred;
+	}
+
+	/**
+	 * Encrypt or decrypt everything read from a channel into another channel.
+	 * Neither of them is closed.
+	 *
+	 * @param in
+	 *            the channel to read the text from
+	 * @param out
+	 *            the channel to write the transformed text to
+	 * @return the number of bytes transformed
+	 * @throws IOException
+	 *             something goes wrong reading or writing
+	 */
+	public long transfer(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		long transferred = 0;
+
+		while (in.read(buffer) != -1) {
+			buffer.flip();
+			transferred += buffer.remaining();
+			update(buffer.duplicate());
+			while (buffer.hasRemaining()) {
+				out.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		return transferred;
+	}
+
+	/**
+	 * A reader transforming the characters as they are read.
+	 */
+	private class CipherReader extends FilterReader {
+
+		CipherReader(Reader in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			char[] character = new char[1];
+
+			return read(character, 0, 1) == -1 ? -1 : character[0];
+		}
+
+		@Override
+		public int read(char[] cbuf, int off, int len) throws IOException {
+			int read = in.read(cbuf, off, len);
+
+			if (read > 0) {
+				update(cbuf, off, read);
+			}
+
+			return read;
+		}
+
+		/**
+		 * The skipped characters are read and transformed, otherwise the
+		 * position in the key would not follow the text. As with any reader, a
+		 * negative number of characters to skip is rejected.
+		 */
+		@Override
+		public long skip(long n) throws IOException {
+			if (n < 0) {
+				throw new IllegalArgumentException("Number of characters to skip must not be negative");
+			}
+
+			char[] buffer = new char[(int) Math.min(n, BUFFER_SIZE)];
+			long skipped = 0;
+
+			while (skipped < n) {
+				int read = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+				if (read == -1) {
+					break;
+				}
+				skipped += read;
+			}
+
+			return skipped;
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void mark(int readAheadLimit) throws IOException {
+			throw new IOException("mark() not supported");
+		}
+
+		@Override
+		public void reset() throws IOException {
+			throw new IOException("reset() not supported");
+		}
+	}
+
+	/**
+	 * A writer transforming the characters before writing them. The
+	 * characters are copied into a buffer, so that the caller's array is left
+	 * untouched.
+	 */
+	private class CipherWriter extends FilterWriter {
+
+		private final char[] buffer = new char[BUFFER_SIZE];
+
+		CipherWriter(Writer out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int c) throws IOException {
+			write(new char[] { (char) c }, 0, 1);
+		}
+
+		@Override
+		public void write(char[] cbuf, int off, int len) throws IOException {
+			while (len > 0) {
+				int length = Math.min(len, buffer.length);
+				update(cbuf, off, buffer, 0, length);
+				out.write(buffer, 0, length);
+				off += length;
+				len -= length;
+			}
+		}
+
+		@Override
+		public void write(String str, int off, int len) throws IOException {
+			while (len > 0) {
+				int length = Math.min(len, buffer.length);
+				str.getChars(off, off + length, buffer, 0);
+				update(buffer, 0, length);
+				out.write(buffer, 0, length);
+				off += length;
+				len -= length;
+			}
+		}
+	}
+
+	/**
+	 * A channel transforming the bytes as they are read.
+	 */
+	private class CipherReadableChannel implements ReadableByteChannel {
+
+		private final ReadableByteChannel in;
+
+		CipherReadableChannel(ReadableByteChannel in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			int position = dst.position();
+			int read = in.read(dst);
+
+			if (read > 0) {
+				ByteBuffer readBytes = dst.duplicate();
+				readBytes.position(position).limit(position + read);
+				update(readBytes);
+			}
+
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return in.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * A channel transforming the bytes before writing them. The bytes are
+	 * copied into a buffer, so that the caller's buffer is left untouched, and
+	 * every byte given is written before returning.
+	 */
+	private class CipherWritableChannel implements WritableByteChannel {
+
+		private final WritableByteChannel out;
+
+		private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		CipherWritableChannel(WritableByteChannel out) {
+			this.out = out;
+		}
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			int written = src.remaining();
+
+			while (src.hasRemaining()) {
+				ByteBuffer chunk = src.duplicate();
+				chunk.limit(chunk.position() + Math.min(chunk.remaining(), buffer.capacity()));
+				buffer.clear();
+				update(chunk, buffer);
+				src.position(chunk.position());
+
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					out.write(buffer);
+				}
+			}
+
+			return written;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return out.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}